@@ -0,0 +1,81 @@
+package br.ufs.gothings.core.message;
+
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+
+/**
+ * Throughput of {@link GwMessageCodec} with a typical request, with the payload shared or copied when decoding.
+ * <p>
+ * Run with {@code gradle jmh -Pbenchmark=br.ufs.gothings.core.message.GwMessageCodecBenchmark}.
+ *
+ * @author Wagner Macedo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GwMessageCodecBenchmark {
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    private GwRequest request;
+    private ByteBuf out;
+    private ByteBuf encoded;
+
+    @Setup
+    public void setUp() {
+        request = new GwRequest();
+        request.setSequence(123456789);
+        final GwHeaders h = request.headers();
+        h.set(GW_OPERATION, Operation.READ);
+        h.set(GW_TARGET, "sensors.example.com:5683");
+        h.set(GW_PATH, "/building/3/room/12/temperature");
+        h.add(GW_EXPECTED_TYPES, "application/json");
+        h.set(GW_QOS, 1);
+        h.set(GW_DEADLINE, System.currentTimeMillis() + 5000);
+        final byte[] payload = new byte[payloadSize];
+        payload[0] = '{';
+        request.payload().set(payload);
+
+        out = Unpooled.directBuffer(payloadSize + 256);
+        encoded = Unpooled.directBuffer(payloadSize + 256);
+        GwMessageCodec.encode(request, encoded);
+    }
+
+    @Benchmark
+    public ByteBuf encode() {
+        out.clear();
+        GwMessageCodec.encode(request, out);
+        return out;
+    }
+
+    @Benchmark
+    public GwMessage decodeShared() {
+        return GwMessageCodec.decode(encoded.duplicate(), false);
+    }
+
+    @Benchmark
+    public GwMessage decodeCopied() {
+        return GwMessageCodec.decode(encoded.duplicate(), true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options opts = new OptionsBuilder()
+                .include(GwMessageCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,51 @@
+package br.ufs.gothings.gateway.common;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of {@link Sequencer} against the former single shared counter.
+ * <p>
+ * Run with {@code gradle jmh -Pbenchmark=br.ufs.gothings.gateway.common.SequencerBenchmark} to repeat the
+ * benchmark from 1 to 64 threads.
+ *
+ * @author Wagner Macedo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequencerBenchmark {
+    private static final long NORMAL_INIT = 1L << 32;
+
+    private final Sequencer sequencer = new Sequencer();
+    private final AtomicLong sharedCounter = new AtomicLong(NORMAL_INIT);
+
+    @Benchmark
+    public long sequencer() {
+        return sequencer.nextNormal();
+    }
+
+    @Benchmark
+    public long sharedCounter() {
+        return sharedCounter.getAndUpdate(seq -> ++seq == 0 ? NORMAL_INIT : seq);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            final Options opts = new OptionsBuilder()
+                    .include(SequencerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(opts).run();
+        }
+    }
+}
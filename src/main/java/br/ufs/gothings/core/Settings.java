@@ -28,6 +28,11 @@ public class Settings {
         return (T) properties.get(name);
     }
 
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(String name, T failValue) {
+        return properties.containsKey(name) ? (T) properties.get(name) : failValue;
+    }
+
     @SuppressWarnings("unchecked")
     public synchronized <T> T get(Key<T> key) {
         return (T) properties.get(key.getKeyId());
@@ -1,6 +1,8 @@
 package br.ufs.gothings.core.common;
 
 /**
+ * The codes are encoded by ordinal, so new codes go to the end.
+ *
  * @author Wagner Macedo
  */
 public enum ErrorCode {
@@ -8,6 +10,9 @@ public enum ErrorCode {
     UNAVAILABLE_PLUGIN,
     TARGET_NOT_FOUND,
     PATH_NOT_FOUND,
+    OVERLOADED,
+    DEADLINE_EXCEEDED,
+    PAYLOAD_TOO_LARGE,
     OTHER,
     INTERNAL_ERROR,
 }
@@ -1,6 +1,7 @@
 package br.ufs.gothings.core.message;
 
 import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.headers.GwHeaders;
 
 /**
  * @author Wagner Macedo
@@ -13,6 +14,11 @@ public class GwError extends GwMessage {
         this.code = code;
     }
 
+    public GwError(final GwHeaders headers, final long sequence, final ErrorCode code) {
+        super(headers.readOnly(), sequence);
+        this.code = code;
+    }
+
     public ErrorCode getCode() {
         return code;
     }
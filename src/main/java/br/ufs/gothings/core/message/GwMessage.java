@@ -38,6 +38,10 @@ public abstract class GwMessage {
         return sequence;
     }
 
+    public final boolean hasSequence() {
+        return sequenceAssigned.get();
+    }
+
     public final void setSequence(final long sequence) {
         if (!sequenceAssigned.compareAndSet(false, true)) {
             throw new IllegalStateException("message sequence already set");
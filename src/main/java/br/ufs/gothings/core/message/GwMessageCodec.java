@@ -0,0 +1,424 @@
+package br.ufs.gothings.core.message;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwMessage.MessageType;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.HKey;
+import br.ufs.gothings.core.message.headers.HKeyMulti;
+import br.ufs.gothings.core.message.headers.HeaderNames;
+import br.ufs.gothings.core.util.Deadline;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_DEADLINE;
+
+/**
+ * Compact binary encoding of the {@link GwMessage}s, for journals, snapshots and wire protocols.
+ * <p>
+ * A message is:
+ * <ul>
+ * <li>the format version, 1 byte;</li>
+ * <li>the flags, 1 byte: the message type in the two low bits, then if the sequence is present and if the deadline
+ * is relative;</li>
+ * <li>the sequence, a varint, if present;</li>
+ * <li>the error code, a varint, in errors;</li>
+ * <li>the headers block;</li>
+ * <li>the payload, a varint length and the bytes, in requests and replies.</li>
+ * </ul>
+ * The headers block is a list of fields ended by a zero byte. A field starts with a varint tag, the key index shifted
+ * left by 3 bits with the wire type in the low bits, followed by the value: a varint for the wire type 0, or a varint
+ * length and the bytes for the wire type 2. Enums are encoded by ordinal, strings in UTF-8, numbers and dates in
+ * zigzag, and a multi-valued header is a field per value. The fields of unknown keys are skipped, so new keys don't
+ * need a new version.
+ * <p>
+ * The deadline is absolute, in milliseconds since the epoch, unless encoded as relative, in the milliseconds
+ * remaining, for peers that don't share the clock.
+ * <p>
+ * Decoding doesn't copy the payload by default, which shares the bytes of the input until changed.
+ *
+ * @author Wagner Macedo
+ */
+public final class GwMessageCodec {
+    public static final int VERSION = 1;
+
+    private static final int TYPE_MASK = 0x03;
+    private static final int FLAG_SEQUENCE = 0x04;
+    private static final int FLAG_RELATIVE_DEADLINE = 0x08;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_BYTES = 2;
+    private static final int WIRE_TYPE_BITS = 3;
+    private static final int END_OF_HEADERS = 0;
+
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final ErrorCode[] CODES = ErrorCode.values();
+
+    // the constants of the enum headers by key index, to decode them without copying the arrays
+    private static final Object[][] ENUMS = new Object[HeaderNames.lastIndex() + 1][];
+
+    static {
+        for (int index = 1; index <= HeaderNames.lastIndex(); index++) {
+            final Class<?> type = HeaderNames.byIndex(index).getClassType();
+            if (type.isEnum()) {
+                ENUMS[index] = type.getEnumConstants();
+            }
+        }
+    }
+
+    private GwMessageCodec() {
+    }
+
+    /**
+     * Encode a message with the deadline absolute.
+     */
+    public static void encode(final GwMessage msg, final ByteBuf out) {
+        encode(msg, out, false);
+    }
+
+    /**
+     * @param relativeDeadline    if the deadline is encoded as the time remaining
+     */
+    public static void encode(final GwMessage msg, final ByteBuf out, final boolean relativeDeadline) {
+        final MessageType type = msg.getType();
+        int flags = type.ordinal();
+        if (msg.hasSequence()) {
+            flags |= FLAG_SEQUENCE;
+        }
+        if (relativeDeadline) {
+            flags |= FLAG_RELATIVE_DEADLINE;
+        }
+        out.writeByte(VERSION);
+        out.writeByte(flags);
+        if (msg.hasSequence()) {
+            writeVarlong(out, msg.getSequence());
+        }
+        if (type == MessageType.ERROR) {
+            writeVarint(out, ((GwError) msg).getCode().ordinal());
+        }
+        writeHeaders(msg.headers(), out, relativeDeadline);
+        if (msg instanceof DataMessage) {
+            final ByteBuf payload = ((DataMessage) msg).payload().buffer();
+            writeVarint(out, payload.readableBytes());
+            out.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+        }
+    }
+
+    /**
+     * Encode a message into the remaining space of a buffer, moving its position.
+     *
+     * @throws IndexOutOfBoundsException if the message doesn't fit.
+     */
+    public static void encode(final GwMessage msg, final ByteBuffer out, final boolean relativeDeadline) {
+        final ByteBuf buf = Unpooled.wrappedBuffer(out).clear();
+        encode(msg, buf, relativeDeadline);
+        out.position(out.position() + buf.writerIndex());
+    }
+
+    /**
+     * Decode a message, sharing the payload with the input.
+     */
+    public static GwMessage decode(final ByteBuf in) {
+        return decode(in, false);
+    }
+
+    /**
+     * @param copyPayload    if the payload is copied, as needed when the input is reused or released after
+     */
+    public static GwMessage decode(final ByteBuf in, final boolean copyPayload) {
+        final int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported message format version " + version);
+        }
+        final int flags = in.readUnsignedByte();
+        final int type = flags & TYPE_MASK;
+        if (type >= TYPES.length) {
+            throw new IllegalArgumentException("unknown message type " + type);
+        }
+        final boolean hasSequence = (flags & FLAG_SEQUENCE) != 0;
+        final long sequence = hasSequence ? readVarlong(in) : 0;
+
+        switch (TYPES[type]) {
+            case ERROR: {
+                final int code = readVarint(in);
+                final GwHeaders h = new GwHeaders();
+                readHeaders(in, h, (flags & FLAG_RELATIVE_DEADLINE) != 0);
+                return new GwError(h, sequence, code < CODES.length ? CODES[code] : ErrorCode.OTHER);
+            }
+            case REPLY: {
+                final GwHeaders h = new GwHeaders();
+                readHeaders(in, h, (flags & FLAG_RELATIVE_DEADLINE) != 0);
+                return new GwReply(h, readPayload(in, copyPayload), sequence);
+            }
+            default: {
+                final GwHeaders h = new GwHeaders();
+                readHeaders(in, h, (flags & FLAG_RELATIVE_DEADLINE) != 0);
+                final GwRequest request = new GwRequest(h, readPayload(in, copyPayload));
+                if (hasSequence) {
+                    request.setSequence(sequence);
+                }
+                return request;
+            }
+        }
+    }
+
+    /**
+     * Decode a message from the remaining bytes of a buffer, moving its position. The payload is shared.
+     */
+    public static GwMessage decode(final ByteBuffer in) {
+        final ByteBuf buf = Unpooled.wrappedBuffer(in);
+        final GwMessage msg = decode(buf, false);
+        in.position(in.position() + buf.readerIndex());
+        return msg;
+    }
+
+    /**
+     * Encode the headers block alone, for protocols with their own envelope.
+     */
+    public static void writeHeaders(final GwHeaders h, final ByteBuf out, final boolean relativeDeadline) {
+        for (int index = 1; index <= HeaderNames.lastIndex(); index++) {
+            final HKey<?> key = HeaderNames.byIndex(index);
+            if (key instanceof HKeyMulti) {
+                for (final Object value : h.getAll((HKeyMulti<?>) key)) {
+                    writeField(out, key, value);
+                }
+            } else if (key == GW_DEADLINE && relativeDeadline) {
+                if (h.get(GW_DEADLINE) != null) {
+                    writeField(out, key, Deadline.remaining(h, TimeUnit.MILLISECONDS));
+                }
+            } else {
+                final Object value = h.get(key);
+                if (value != null) {
+                    writeField(out, key, value);
+                }
+            }
+        }
+        out.writeByte(END_OF_HEADERS);
+    }
+
+    /**
+     * Decode a headers block into the given headers.
+     */
+    @SuppressWarnings("unchecked")
+    public static void readHeaders(final ByteBuf in, final GwHeaders h, final boolean relativeDeadline) {
+        int tag;
+        while ((tag = readVarint(in)) != END_OF_HEADERS) {
+            final int index = tag >>> WIRE_TYPE_BITS;
+            final int wireType = tag & ((1 << WIRE_TYPE_BITS) - 1);
+            final HKey<Object> key = (HKey<Object>) HeaderNames.byIndex(index);
+            if (key == null) {
+                skipField(in, wireType);
+                continue;
+            }
+            if (wireType != wireTypeOf(key)) {
+                throw new IllegalArgumentException("wrong wire type " + wireType + " for header " + index);
+            }
+
+            final Object value = readValue(in, key);
+            if (key instanceof HKeyMulti) {
+                h.add((HKeyMulti<Object>) key, value);
+            } else if (index == GW_DEADLINE.index() && relativeDeadline) {
+                Deadline.set(h, (Long) value, TimeUnit.MILLISECONDS);
+            } else {
+                h.set(key, value);
+            }
+        }
+    }
+
+    private static void writeField(final ByteBuf out, final HKey<?> key, final Object value) {
+        writeVarint(out, key.index() << WIRE_TYPE_BITS | wireTypeOf(key));
+        if (value instanceof String) {
+            writeString(out, (String) value);
+        } else if (value instanceof Enum) {
+            writeVarint(out, ((Enum<?>) value).ordinal());
+        } else if (value instanceof Integer) {
+            writeVarint(out, zigzag((Integer) value));
+        } else if (value instanceof Long) {
+            writeVarlong(out, zigzag((Long) value));
+        } else if (value instanceof Date) {
+            writeVarlong(out, zigzag(((Date) value).getTime()));
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? 1 : 0);
+        } else {
+            throw new IllegalArgumentException("no encoding for " + value.getClass());
+        }
+    }
+
+    private static Object readValue(final ByteBuf in, final HKey<?> key) {
+        final Class<?> type = key.getClassType();
+        if (type == String.class) {
+            return readString(in);
+        } else if (type.isEnum()) {
+            final Object[] constants = ENUMS[key.index()];
+            final int ordinal = readVarint(in);
+            if (ordinal >= constants.length) {
+                throw new IllegalArgumentException("unknown " + type.getSimpleName() + " " + ordinal);
+            }
+            return constants[ordinal];
+        } else if (type == Integer.class) {
+            return unzigzag(readVarint(in));
+        } else if (type == Long.class) {
+            return unzigzag(readVarlong(in));
+        } else if (type == Date.class) {
+            return new Date(unzigzag(readVarlong(in)));
+        } else if (type == Boolean.class) {
+            return readVarint(in) != 0;
+        } else {
+            throw new IllegalArgumentException("no encoding for " + type);
+        }
+    }
+
+    private static int wireTypeOf(final HKey<?> key) {
+        return key.getClassType() == String.class ? WIRE_BYTES : WIRE_VARINT;
+    }
+
+    private static void skipField(final ByteBuf in, final int wireType) {
+        switch (wireType) {
+            case WIRE_VARINT:
+                readVarlong(in);
+                break;
+            case WIRE_BYTES:
+                in.skipBytes(readLength(in));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown wire type " + wireType);
+        }
+    }
+
+    private static Payload readPayload(final ByteBuf in, final boolean copy) {
+        final int length = readLength(in);
+        if (copy) {
+            final Payload payload = new Payload(in.copy(in.readerIndex(), length));
+            in.skipBytes(length);
+            return payload;
+        }
+        return Payload.wrap(in.readSlice(length));
+    }
+
+    /* Strings */
+
+    private static void writeString(final ByteBuf out, final String str) {
+        writeVarint(out, utf8Length(str));
+        // written by hand as the Netty's encoder doesn't join the surrogate pairs
+        final int length = str.length();
+        for (int i = 0; i < length; i++) {
+            final char c = str.charAt(i);
+            if (c < 0x80) {
+                out.writeByte(c);
+            } else if (c < 0x800) {
+                out.writeByte(0xC0 | c >> 6);
+                out.writeByte(0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                out.writeByte(0xE0 | c >> 12);
+                out.writeByte(0x80 | c >> 6 & 0x3F);
+                out.writeByte(0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, str.charAt(++i));
+                out.writeByte(0xF0 | cp >> 18);
+                out.writeByte(0x80 | cp >> 12 & 0x3F);
+                out.writeByte(0x80 | cp >> 6 & 0x3F);
+                out.writeByte(0x80 | cp & 0x3F);
+            } else {
+                // a lone surrogate, replaced like String.getBytes does
+                out.writeByte('?');
+            }
+        }
+    }
+
+    private static int utf8Length(final String str) {
+        final int length = str.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            final char c = str.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                bytes += 2;
+                i++;
+            }
+        }
+        return bytes;
+    }
+
+    private static String readString(final ByteBuf in) {
+        final int length = readLength(in);
+        final String str = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+        in.skipBytes(length);
+        return str;
+    }
+
+    /* Varints */
+
+    private static void writeVarint(final ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static void writeVarlong(final ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int readVarint(final ByteBuf in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    private static long readVarlong(final ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    private static int readLength(final ByteBuf in) {
+        final int length = readVarint(in);
+        if (length < 0 || length > in.readableBytes()) {
+            throw new IllegalArgumentException("length past the end of the input");
+        }
+        return length;
+    }
+
+    private static int zigzag(final int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static long zigzag(final long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static int unzigzag(final int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static long unzigzag(final long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -19,18 +19,32 @@ import static java.lang.Math.min;
 public class Payload {
     public static final Payload EMPTY = new Payload().readOnly();
 
+    private static final int READ_CHUNK = 8192;
+
     private final AtomicReference<ByteBuf> data = new AtomicReference<>();
+    // the buffer belongs to someone else, so it's replaced before changed
+    private volatile boolean shared = false;
 
     public Payload() {
         this.data.set(Unpooled.buffer());
     }
 
-    private Payload(final ByteBuf bb) {
+    Payload(final ByteBuf bb) {
         this.data.set(bb);
     }
 
+    /**
+     * Construct a payload of the readable bytes of a buffer, without copying them. The buffer must not change while
+     * the payload is in use, but the payload can: it gets a buffer of its own at the first change.
+     */
+    public static Payload wrap(final ByteBuf bb) {
+        final Payload payload = new Payload(bb.slice());
+        payload.shared = true;
+        return payload;
+    }
+
     public void set(byte[] bytes) {
-        data.get().clear().writeBytes(bytes);
+        writable().writeBytes(bytes);
     }
 
     public void set(final InputStream in) throws IOException {
@@ -38,7 +52,7 @@ public class Payload {
     }
 
     public void set(final InputStream in, boolean check) throws IOException {
-        data.get().clear();
+        writable();
         final byte[] bytes = new byte[1024];
 
         while (true) {
@@ -52,20 +66,62 @@ public class Payload {
         }
     }
 
+    /**
+     * Read a stream straight into the payload buffer, without intermediate copies.
+     *
+     * @param in          the stream
+     * @param sizeHint    the expected size, to allocate the buffer once, or a negative value if unknown
+     * @param maxSize     the max bytes accepted
+     * @return the number of bytes read, or -1 if the stream has more than {@code maxSize} bytes, in which case the
+     * payload is left empty and the stream isn't read until its end.
+     * @throws IOException if the stream fails
+     */
+    public int set(final InputStream in, final int sizeHint, final int maxSize) throws IOException {
+        final ByteBuf buf = writable();
+        if (sizeHint > maxSize) {
+            return -1;
+        }
+        if (sizeHint > 0) {
+            buf.ensureWritable(sizeHint);
+        }
+
+        int total = 0;
+        while (true) {
+            // one byte more than the max tells if the stream is too large
+            final int room = maxSize + 1 - total;
+            buf.ensureWritable(min(READ_CHUNK, room));
+            final int read = buf.writeBytes(in, min(buf.writableBytes(), room));
+            if (read < 0) {
+                return total;
+            }
+            total += read;
+            if (total > maxSize) {
+                buf.clear();
+                return -1;
+            }
+        }
+    }
+
     public void set(ByteBuffer buffer) {
-        data.get().clear().writeBytes(buffer);
+        writable().writeBytes(buffer);
     }
 
     public void set(String str, Charset charset) {
-        data.get().clear().writeBytes(str.getBytes(charset));
+        writable().writeBytes(str.getBytes(charset));
     }
 
+    /**
+     * @return the readable bytes of the payload, sharing the backing array when it holds exactly them.
+     */
     public byte[] asBytes() {
         final ByteBuf data = this.data.get();
-        if (data instanceof ReadOnlyByteBuf) {
-            return data.copy().array();
+        if (!(data instanceof ReadOnlyByteBuf) && data.hasArray() && data.arrayOffset() == 0
+                && data.readerIndex() == 0 && data.readableBytes() == data.array().length) {
+            return data.array();
         }
-        return data.array();
+        final byte[] bytes = new byte[data.readableBytes()];
+        data.getBytes(data.readerIndex(), bytes);
+        return bytes;
     }
 
     public InputStream asInputStream() {
@@ -80,6 +136,24 @@ public class Payload {
         return data.get().toString(charset);
     }
 
+    /**
+     * @return the buffer of the payload, to read it without copies.
+     */
+    ByteBuf buffer() {
+        return data.get();
+    }
+
+    private ByteBuf writable() {
+        if (shared) {
+            final ByteBuf bb = data.get();
+            if (!(bb instanceof ReadOnlyByteBuf)) {
+                data.compareAndSet(bb, Unpooled.buffer());
+            }
+            shared = false;
+        }
+        return data.get().clear();
+    }
+
     public Payload readOnly() {
         data.updateAndGet(bb -> !(bb instanceof ReadOnlyByteBuf) ? Unpooled.unmodifiableBuffer(bb) : bb);
         return this;
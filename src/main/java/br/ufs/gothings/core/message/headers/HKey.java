@@ -7,14 +7,20 @@ import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 /**
+ * A header key, identified by its index in the binary encodings of the messages.
+ *
  * @author Wagner Macedo
  */
-public class HKey<T> extends AbstractKey<Void, T> {
-    HKey(final Class<T> cls, final Predicate<T> validator) {
-        this(cls, validator, null);
+public class HKey<T> extends AbstractKey<Integer, T> {
+    HKey(final int index, final Class<T> cls, final Predicate<T> validator) {
+        this(index, cls, validator, null);
     }
 
-    HKey(final Class<T> cls, final Predicate<T> validator, final Supplier<Collection<T>> supplier) {
-        super(null, cls, validator, supplier);
+    HKey(final int index, final Class<T> cls, final Predicate<T> validator, final Supplier<Collection<T>> supplier) {
+        super(index, cls, validator, supplier);
+    }
+
+    public final int index() {
+        return getKeyId();
     }
 }
@@ -8,7 +8,9 @@ import java.util.function.Supplier;
  * @author Wagner Macedo
  */
 public class HKeyMulti<T> extends HKey<T> {
-    HKeyMulti(final Class<T> cls, final Predicate<T> validator, final Supplier<Collection<T>> supplier) {
-        super(cls, validator, supplier);
+    HKeyMulti(final int index, final Class<T> cls, final Predicate<T> validator,
+              final Supplier<Collection<T>> supplier)
+    {
+        super(index, cls, validator, supplier);
     }
 }
@@ -7,47 +7,101 @@ import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 /**
+ * The header keys. The index of a key identifies it in the binary encodings of the messages, so it never changes and
+ * is never reused: a new key takes the next index.
+ *
  * @author Wagner Macedo
  */
 public class HeaderNames {
     public static final HKey<Operation>
-            GW_OPERATION = newKey(Operation.class);
+            GW_OPERATION = newKey(1, Operation.class);
 
     public static final HKey<String>
-            GW_TARGET       = newKey(String.class),
-            GW_PATH         = newKey(String.class),
-            GW_CONTENT_TYPE = newKey(String.class);
+            GW_TARGET       = newKey(2, String.class),
+            GW_PATH         = newKey(3, String.class),
+            GW_CONTENT_TYPE = newKey(4, String.class);
 
     public static final HKeyMulti<String>
-            GW_EXPECTED_TYPES = newComplexKey(String.class, LinkedHashSet::new);
+            GW_EXPECTED_TYPES = newComplexKey(5, String.class, LinkedHashSet::new);
 
     public static final HKey<Integer>
-            GW_QOS = newKey(int.class);
+            GW_QOS = newKey(6, int.class);
 
     public static final HKey<String>
-            GW_CACHE_SIGNATURE = newKey(String.class);
+            GW_CLIENT_ID = newKey(7, String.class);
+
+    /** Instant, in milliseconds since the epoch, after which the requester doesn't wait the reply anymore */
+    public static final HKey<Long>
+            GW_DEADLINE = newKey(8, long.class);
+
+    public static final HKey<String>
+            GW_CACHE_SIGNATURE = newKey(9, String.class);
 
     public static final HKey<Date>
-            GW_CACHE_EXPIRATION = newKey(Date.class);
+            GW_CACHE_EXPIRATION = newKey(10, Date.class);
 
     public static final HKey<Boolean>
-            GW_CACHE_MODIFIED = newKey(boolean.class);
+            GW_CACHE_MODIFIED = newKey(11, boolean.class);
+
+    // the keys by index, the position 0 is unused
+    private static final HKey<?>[] KEYS = indexKeys(
+            GW_OPERATION,
+            GW_TARGET,
+            GW_PATH,
+            GW_CONTENT_TYPE,
+            GW_EXPECTED_TYPES,
+            GW_QOS,
+            GW_CLIENT_ID,
+            GW_DEADLINE,
+            GW_CACHE_SIGNATURE,
+            GW_CACHE_EXPIRATION,
+            GW_CACHE_MODIFIED);
+
+    /**
+     * @return the key of the index, or null if unknown.
+     */
+    public static HKey<?> byIndex(final int index) {
+        return (index > 0 && index < KEYS.length) ? KEYS[index] : null;
+    }
+
+    /**
+     * @return the highest index in use.
+     */
+    public static int lastIndex() {
+        return KEYS.length - 1;
+    }
 
     /* Internal use */
 
-    private static <T> HKey<T> newKey(final Class<T> cls) {
-        return newKey(cls, null);
+    private static <T> HKey<T> newKey(final int index, final Class<T> cls) {
+        return newKey(index, cls, null);
+    }
+
+    private static <T> HKey<T> newKey(final int index, final Class<T> cls, Predicate<T> validator) {
+        return new HKey<>(index, cls, validator);
     }
 
-    private static <T> HKey<T> newKey(final Class<T> cls, Predicate<T> validator) {
-        return new HKey<>(cls, validator);
+    private static <T> HKeyMulti<T> newComplexKey(final int index, final Class<T> cls,
+                                                  final Supplier<Collection<T>> supplier)
+    {
+        return newComplexKey(index, cls, null, supplier);
     }
 
-    private static <T> HKeyMulti<T> newComplexKey(final Class<T> cls, final Supplier<Collection<T>> supplier) {
-        return newComplexKey(cls, null, supplier);
+    private static <T> HKeyMulti<T> newComplexKey(final int index, final Class<T> cls, Predicate<T> validator,
+                                                  final Supplier<Collection<T>> supplier)
+    {
+        return new HKeyMulti<>(index, cls, validator, supplier);
     }
 
-    private static <T> HKeyMulti<T> newComplexKey(final Class<T> cls, Predicate<T> validator, final Supplier<Collection<T>> supplier) {
-        return new HKeyMulti<>(cls, validator, supplier);
+    private static HKey<?>[] indexKeys(final HKey<?>... keys) {
+        final HKey<?>[] byIndex = new HKey<?>[keys.length + 1];
+        for (final HKey<?> key : keys) {
+            final int index = key.index();
+            if (index <= 0 || index >= byIndex.length || byIndex[index] != null) {
+                throw new ExceptionInInitializerError("header key index " + index + " is invalid or duplicated");
+            }
+            byIndex[index] = key;
+        }
+        return byIndex;
     }
 }
@@ -1,6 +1,8 @@
 package br.ufs.gothings.core.message.headers;
 
 /**
+ * The operations are encoded by ordinal, so new operations go to the end.
+ *
  * @author Wagner Macedo
  */
 public enum Operation {
@@ -8,5 +8,14 @@ import br.ufs.gothings.core.message.GwRequest;
 public interface PluginClient extends GwPlugin {
     void handleRequest(GwRequest request);
 
+    /**
+     * Abort a request being handled, as nobody waits its reply anymore. This is called from a thread other than
+     * the one handling the request, and no reply nor error should be sent for the aborted request.
+     *
+     * @param sequence    the sequence of the request
+     */
+    default void cancelRequest(long sequence) {
+    }
+
     void setUp(ReplyLink replyLink);
 }
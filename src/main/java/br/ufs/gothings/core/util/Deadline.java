@@ -0,0 +1,43 @@
+package br.ufs.gothings.core.util;
+
+import br.ufs.gothings.core.message.headers.GwHeaders;
+
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_DEADLINE;
+
+/**
+ * Helpers for the {@code GW_DEADLINE} header.
+ * <p>
+ * A message without the header has no deadline, so it never expires.
+ *
+ * @author Wagner Macedo
+ */
+public final class Deadline {
+    private Deadline() {
+    }
+
+    /**
+     * Set the deadline to the given timeout from now.
+     */
+    public static void set(final GwHeaders h, final long timeout, final TimeUnit unit) {
+        h.set(GW_DEADLINE, System.currentTimeMillis() + unit.toMillis(timeout));
+    }
+
+    /**
+     * @return the time remaining until the deadline, 0 if expired or {@link Long#MAX_VALUE} if there is no deadline.
+     */
+    public static long remaining(final GwHeaders h, final TimeUnit unit) {
+        final Long deadline = h.get(GW_DEADLINE);
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        final long millis = deadline - System.currentTimeMillis();
+        return millis > 0 ? unit.convert(millis, TimeUnit.MILLISECONDS) : 0;
+    }
+
+    public static boolean isExpired(final GwHeaders h) {
+        final Long deadline = h.get(GW_DEADLINE);
+        return deadline != null && deadline - System.currentTimeMillis() <= 0;
+    }
+}
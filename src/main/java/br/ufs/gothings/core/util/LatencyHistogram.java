@@ -0,0 +1,120 @@
+package br.ufs.gothings.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies with logarithmic buckets.
+ * <p>
+ * Values are recorded in microseconds. Up to 16us each value has its own bucket, above that every power of two is
+ * split in 8 sub-buckets, so percentiles have a relative error of at most 12.5%.
+ *
+ * @author Wagner Macedo
+ */
+public final class LatencyHistogram {
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int NUM_BUCKETS = LINEAR + (63 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public void record(final long duration, final TimeUnit unit) {
+        final long micros = Math.max(0, unit.toMicros(duration));
+        buckets.incrementAndGet(indexOf(micros));
+        count.increment();
+        sum.add(micros);
+    }
+
+    public void recordNanos(final long nanos) {
+        record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean of the recorded values in microseconds, or 0 if nothing was recorded.
+     */
+    public long mean() {
+        final long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * Estimate a percentile of the recorded values.
+     *
+     * @param p    the percentile, between 0 and 100
+     * @return the upper bound in microseconds of the bucket holding the percentile, or 0 if nothing was recorded.
+     */
+    public long percentile(final double p) {
+        long total = 0;
+        final long[] snapshot = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, p)) / 100));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(NUM_BUCKETS - 1);
+    }
+
+    /**
+     * Halve every bucket, so older values weigh less than the new ones on the following estimates.
+     */
+    public void decay() {
+        long removed = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            final long old = buckets.getAndUpdate(i, n -> n >>> 1);
+            removed += old - (old >>> 1);
+        }
+        count.add(-removed);
+        sum.add(-(sum.sum() / 2));
+    }
+
+    public void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%dus p50=%dus p99=%dus", count(), mean(), percentile(50), percentile(99));
+    }
+
+    static int indexOf(final long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        final int exp = 63 - Long.numberOfLeadingZeros(micros);
+        final int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exp - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(final int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        final int exp = (index - LINEAR) / SUB_BUCKETS + 4;
+        final int sub = (index - LINEAR) % SUB_BUCKETS;
+        final long lower = (1L << exp) + ((long) sub << (exp - SUB_BITS));
+        return lower + (1L << (exp - SUB_BITS)) - 1;
+    }
+}
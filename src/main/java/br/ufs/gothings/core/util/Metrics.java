@@ -0,0 +1,78 @@
+package br.ufs.gothings.core.util;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Process wide registry of named metrics.
+ * <p>
+ * Gateway components and plugins get or create their metrics by name, e.g. {@code "lane.http.client.CONTROL"},
+ * and the gateway periodically reports a {@link #snapshot()} of all of them.
+ *
+ * @author Wagner Macedo
+ */
+public final class Metrics {
+    private static final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram histogram(final String name) {
+        return get(name, LatencyHistogram.class, LatencyHistogram::new);
+    }
+
+    public static LongAdder counter(final String name) {
+        return get(name, LongAdder.class, LongAdder::new);
+    }
+
+    public static void gauge(final String name, final Supplier<?> gauge) {
+        metrics.put(name, new Gauge(gauge));
+    }
+
+    public static void remove(final String name) {
+        metrics.remove(name);
+    }
+
+    /**
+     * Remove all metrics whose names start with the prefix.
+     *
+     * @param prefix    the name prefix
+     */
+    public static void removeAll(final String prefix) {
+        metrics.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /**
+     * @return the current value of every metric, ordered by name.
+     */
+    public static SortedMap<String, String> snapshot() {
+        final SortedMap<String, String> snapshot = new TreeMap<>();
+        metrics.forEach((name, metric) -> snapshot.put(name, String.valueOf(metric)));
+        return snapshot;
+    }
+
+    private static <T> T get(final String name, final Class<T> cls, final Supplier<T> factory) {
+        final Object metric = metrics.computeIfAbsent(name, k -> factory.get());
+        if (!cls.isInstance(metric)) {
+            throw new IllegalArgumentException("metric '" + name + "' is not a " + cls.getSimpleName());
+        }
+        return cls.cast(metric);
+    }
+
+    private static final class Gauge {
+        private final Supplier<?> supplier;
+
+        private Gauge(final Supplier<?> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(supplier.get());
+        }
+    }
+}
@@ -2,47 +2,128 @@ package br.ufs.gothings.core.util;
 
 import br.ufs.gothings.core.message.GwRequest;
 import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.util.TimingWheel.Timer;
 
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static br.ufs.gothings.core.message.headers.HeaderNames.GW_PATH;
 import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
 
 /**
+ * Periodic requests to destinations which can't be observed.
+ * <p>
+ * Each destination has its own interval and is scheduled in a {@link TimingWheel}, with a random phase so the
+ * destinations added together don't poll together. The due destinations are polled by a bounded number of
+ * threads, so a slow destination delays only itself, and a destination is never polled again before its
+ * previous request returns.
+ * <p>
+ * The request logic returns a version of the resource read, such as a validator or a hash of the payload, or null
+ * if the request failed. A failing destination is backed off with the {@link RetryPolicy} of the polling, being
+ * polled again after the greater of its interval and the backoff delay.
+ * <p>
+ * The interval of a destination adapts to how often its resource changes, within the bounds set by
+ * {@link #setIntervalBounds(long, long, TimeUnit)}: it's halved when a poll reads a new version, and grows by half
+ * when the version is the same, so hot resources are polled often and idle ones seldom.
+ * <p>
+ * The polling reports the metrics {@code "polling.<name>.destinations"}, {@code "polling.<name>.polls"},
+ * {@code "polling.<name>.changes"} and {@code "polling.<name>.lag"}, the latter being how late the polls start
+ * compared to when they were due.
+ *
  * @author Wagner Macedo
  */
 public final class Polling {
-    private final int period;
-    private final TimeUnit unit;
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 1024;
+    private static final int DEFAULT_PARALLELISM = 4;
 
-    private ConcurrentSkipListSet<Destination> destinations;
-    private ScheduledExecutorService scheduler;
-    private Runnable runnable;
+    // Settings of the client plugins for the bounds of the adaptive intervals, in seconds
+    public static final String MIN_INTERVAL = "client.polling-min";
+    public static final String MAX_INTERVAL = "client.polling-max";
+    public static final int DEFAULT_MIN_INTERVAL_SECONDS = 10;
+    public static final int DEFAULT_MAX_INTERVAL_SECONDS = 3600;
 
-    private final Consumer<Destination> requestLogic;
+    private final String name;
+    private final long interval;
+    private final int parallelism;
+    private volatile long minInterval;
+    private volatile long maxInterval;
 
-    public Polling(final Consumer<Destination> requestLogic, final int period, final TimeUnit unit) {
+    private Map<Destination, Destination> destinations;
+    private TimingWheel<Destination> wheel;
+    private ScheduledExecutorService ticker;
+    private ExecutorService executor;
+    private long startNanos;
+    private LatencyHistogram lag;
+
+    private final Function<Destination, ?> requestLogic;
+    private final RetryPolicy retryPolicy;
+
+    public Polling(final String name, final Function<Destination, ?> requestLogic, final int period,
+                   final TimeUnit unit)
+    {
+        this(name, requestLogic, period, unit, DEFAULT_PARALLELISM,
+                new RetryPolicy(period, period * 16L, unit, 0, 0, 0));
+    }
+
+    /**
+     * @param name            name of the polling in the metrics
+     * @param requestLogic    makes the request to a destination, returning the version read or null on failure
+     * @param period          default polling interval of the destinations
+     * @param unit            unit of the period
+     * @param parallelism     max destinations polled at once
+     * @param retryPolicy     backoff of failing destinations
+     */
+    public Polling(final String name, final Function<Destination, ?> requestLogic, final int period,
+                   final TimeUnit unit, final int parallelism, final RetryPolicy retryPolicy)
+    {
+        this.name = name;
         this.requestLogic = requestLogic;
-        this.period = period;
-        this.unit = unit;
+        this.interval = unit.toNanos(period);
+        this.minInterval = this.interval;
+        this.maxInterval = this.interval;
+        this.parallelism = parallelism;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Set the bounds of the adaptive intervals. By default the bounds are the polling period, i.e. the intervals
+     * don't adapt.
+     */
+    public void setIntervalBounds(final long min, final long max, final TimeUnit unit) {
+        this.minInterval = unit.toNanos(min);
+        this.maxInterval = Math.max(this.minInterval, unit.toNanos(max));
     }
 
     public void start() {
-        destinations = new ConcurrentSkipListSet<>();
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        runnable = () -> destinations.forEach(requestLogic);
-        scheduler.scheduleAtFixedRate(runnable, 0, period, unit);
+        destinations = new ConcurrentHashMap<>();
+        wheel = new TimingWheel<>(WHEEL_SIZE);
+        startNanos = System.nanoTime();
+        executor = Executors.newFixedThreadPool(parallelism);
+        ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(this::advance, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+        final String prefix = "polling." + name;
+        lag = Metrics.histogram(prefix + ".lag");
+        Metrics.gauge(prefix + ".destinations", destinations::size);
     }
 
     public void stop() {
-        scheduler.shutdown();
+        ticker.shutdown();
+        executor.shutdownNow();
+        Metrics.removeAll("polling." + name + ".");
         destinations = null;
-        scheduler = null;
-        runnable = null;
+        wheel = null;
+        ticker = null;
+        executor = null;
     }
 
     public void add(final GwRequest request) {
@@ -50,26 +131,129 @@ public final class Polling {
     }
 
     public void add(final GwRequest request, final boolean execute) {
-        final Destination dst = new Destination(request);
-        if (execute) scheduler.submit(() -> requestLogic.accept(dst));
+        add(request, execute, interval, TimeUnit.NANOSECONDS);
+    }
 
-        if (!destinations.contains(dst)) {
-            dst.request = new GwRequest(request.headers(), request.payload());
-            dst.request.setSequence(0);
-            destinations.add(dst);
+    /**
+     * Add a destination to be polled.
+     *
+     * @param request     the request to the destination
+     * @param execute     if the request must also be executed right now
+     * @param interval    polling interval of the destination
+     * @param unit        unit of the interval
+     */
+    public void add(final GwRequest request, final boolean execute, final long interval, final TimeUnit unit) {
+        if (execute) {
+            final Destination now = new Destination(request);
+            submit(() -> requestLogic.apply(now));
+        }
+
+        final Destination dst = new Destination(new GwRequest(request.headers(), request.payload()));
+        dst.request.setSequence(0);
+        dst.interval = unit.toNanos(interval);
+        if (destinations.putIfAbsent(dst, dst) == null) {
+            // random phase to spread the polls
+            schedule(dst, ThreadLocalRandom.current().nextLong(dst.interval + 1));
         }
     }
 
     public void del(final GwRequest request) {
-        destinations.remove(new Destination(request));
+        final Destination dst = destinations.remove(new Destination(request));
+        if (dst != null && dst.timer != null) {
+            dst.timer.cancel();
+        }
+    }
+
+    private void schedule(final Destination dst, final long delay) {
+        final TimingWheel<Destination> wheel = this.wheel;
+        if (wheel == null) {
+            return;
+        }
+        final long ticks = (currentNanos() + delay) / TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS) - wheel.tick();
+        dst.dueNanos = System.nanoTime() + delay;
+        dst.timer = wheel.schedule(dst, ticks);
+    }
+
+    private void advance() {
+        final TimingWheel<Destination> wheel = this.wheel;
+        if (wheel != null) {
+            final long tick = currentNanos() / TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+            wheel.advance(tick, timer -> submit(() -> poll(timer)));
+        }
+    }
+
+    private void poll(final Timer<Destination> timer) {
+        final Map<Destination, Destination> destinations = this.destinations;
+        final Destination dst = timer.getItem();
+        // the destination was removed, or removed and added again
+        if (destinations == null || timer.isCancelled() || destinations.get(dst) != dst) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        lag.recordNanos(Math.max(0, now - dst.dueNanos));
+        Metrics.counter("polling." + name + ".polls").increment();
+
+        final Object version = requestLogic.apply(dst);
+        long delay;
+        if (version != null) {
+            dst.failures = 0;
+            // the first version read tells nothing about changes
+            if (dst.version != null) {
+                final boolean changed = !version.equals(dst.version);
+                if (changed) {
+                    Metrics.counter("polling." + name + ".changes").increment();
+                }
+                dst.interval = adapt(dst.interval, changed, minInterval, maxInterval);
+            }
+            dst.version = version;
+            delay = dst.interval;
+        } else {
+            delay = Math.max(dst.interval, retryPolicy.delay(dst.failures, TimeUnit.NANOSECONDS));
+            dst.failures++;
+        }
+
+        if (destinations.get(dst) == dst) {
+            schedule(dst, delay);
+        }
     }
 
-    public static final class Destination implements Comparable {
-        private GwRequest request;
+    /**
+     * @return the next interval of a destination, given if its last poll read a change.
+     */
+    static long adapt(final long interval, final boolean changed, final long min, final long max) {
+        final long next = changed ? interval / 2 : interval + interval / 2;
+        return Math.max(min, Math.min(max, next));
+    }
+
+    private void submit(final Runnable task) {
+        final ExecutorService executor = this.executor;
+        try {
+            if (executor != null) {
+                executor.execute(task);
+            }
+        } catch (RejectedExecutionException ignored) {
+            // polling stopped
+        }
+    }
+
+    private long currentNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public static final class Destination {
+        private final GwRequest request;
 
         private final String target;
         private final String path;
 
+        // accessed by one polling thread at a time
+        private volatile long interval;
+        private volatile int failures = 0;
+        private volatile Object version;
+        private volatile long dueNanos;
+        private volatile Timer<Destination> timer;
+
         public Destination(final GwRequest request) {
             final GwHeaders h = request.headers();
             this.target = h.get(GW_TARGET);
@@ -83,32 +267,15 @@ public final class Polling {
 
         @Override
         public boolean equals(final Object o) {
-            try {
-                return compareTo(o) == 0;
-            } catch (ClassCastException | ArrayIndexOutOfBoundsException e) {
-                return false;
-            }
+            if (this == o) return true;
+            if (!(o instanceof Destination)) return false;
+            final Destination that = (Destination) o;
+            return Objects.equals(target, that.target) && Objects.equals(path, that.path);
         }
 
         @Override
-        public int compareTo(final Object o) {
-            if (o instanceof Destination) {
-                return compareTo((Destination) o);
-            }
-            if (o instanceof GwRequest) {
-                final GwHeaders h = ((GwRequest) o).headers();
-                return compareTo(h.get(GW_TARGET), h.get(GW_PATH));
-            }
-            throw new ClassCastException("Not a Destination nor GwRequest");
-        }
-
-        public int compareTo(final Destination o) {
-            return compareTo(o.target, o.path);
-        }
-
-        private int compareTo(final String... arr) {
-            int cmp = target.compareTo(arr[0]);
-            return cmp != 0 ? cmp : path.compareTo(arr[1]);
+        public int hashCode() {
+            return Objects.hash(target, path);
         }
     }
 }
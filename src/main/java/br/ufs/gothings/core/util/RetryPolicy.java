@@ -0,0 +1,81 @@
+package br.ufs.gothings.core.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponential backoff with full jitter and a retry budget.
+ * <p>
+ * The delay before the retry {@code n} (starting at 0) is a random value between 0 and
+ * {@code min(maxDelay, baseDelay * 2^n)}, so retries of many failed operations don't happen in the same instant.
+ * The budget is a {@link TokenBucket} shared by all the retries using this policy, limiting how many retries per
+ * second can be made when a lot of operations fail at once.
+ *
+ * @author Wagner Macedo
+ */
+public final class RetryPolicy {
+    private final long baseDelay;
+    private final long maxDelay;
+    private final int maxAttempts;
+    private final TokenBucket budget;
+
+    /**
+     * @param baseDelay      the delay cap of the first retry
+     * @param maxDelay       the highest delay cap
+     * @param unit           the unit of the delays
+     * @param maxAttempts    retries allowed for each operation, or 0 for no limit
+     * @param budgetRate     retries per second allowed by the budget, or 0 for no budget
+     * @param budgetBurst    retries that can be made at once by the budget
+     */
+    public RetryPolicy(final long baseDelay, final long maxDelay, final TimeUnit unit, final int maxAttempts,
+                       final double budgetRate, final int budgetBurst)
+    {
+        this.baseDelay = Math.max(1, unit.toNanos(baseDelay));
+        this.maxDelay = Math.max(this.baseDelay, unit.toNanos(maxDelay));
+        this.maxAttempts = maxAttempts;
+        this.budget = (budgetRate > 0) ? new TokenBucket(budgetRate, budgetBurst) : null;
+    }
+
+    /**
+     * Ask for a retry.
+     *
+     * @param attempt    the number of retries already made for the operation
+     * @param unit       the unit of the returned delay
+     * @return the delay before retrying, or -1 if the operation must not be retried, because the attempts are
+     *         exhausted or the budget is spent.
+     */
+    public long nextDelay(final int attempt, final TimeUnit unit) {
+        if (maxAttempts > 0 && attempt >= maxAttempts) {
+            return -1;
+        }
+        if (budget != null && !budget.tryAcquire()) {
+            return -1;
+        }
+        return delay(attempt, unit);
+    }
+
+    /**
+     * @return the highest delay cap, without jitter.
+     */
+    public long maxDelay(final TimeUnit unit) {
+        return unit.convert(maxDelay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Compute the delay of a retry, without consuming budget nor checking the attempts.
+     *
+     * @param attempt    the number of retries already made for the operation
+     * @param unit       the unit of the returned delay
+     * @return a random delay up to the cap of this attempt
+     */
+    public long delay(final int attempt, final TimeUnit unit) {
+        final long cap;
+        if (attempt >= 62 || baseDelay > (maxDelay >> attempt)) {
+            cap = maxDelay;
+        } else {
+            cap = baseDelay << attempt;
+        }
+        final long nanos = ThreadLocalRandom.current().nextLong(cap + 1);
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+}
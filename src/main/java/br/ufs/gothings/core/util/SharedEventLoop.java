@@ -0,0 +1,40 @@
+package br.ufs.gothings.core.util;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Netty event loop shared by the plugins, so their connections are multiplexed on the same few I/O threads
+ * instead of each plugin starting its own.
+ * <p>
+ * Each plugin acquires the event loop on start and releases it on stop. The event loop is created by the first
+ * acquire and shut down by the last release.
+ *
+ * @author Wagner Macedo
+ */
+public final class SharedEventLoop {
+    private static EventLoopGroup group;
+    private static int users = 0;
+
+    private SharedEventLoop() {
+    }
+
+    public static synchronized EventLoopGroup acquire() {
+        if (users++ == 0) {
+            // zero means the Netty default, twice the number of processors
+            group = new NioEventLoopGroup(0, new DefaultThreadFactory("gw-netty", true));
+        }
+        return group;
+    }
+
+    public static synchronized void release() {
+        if (users == 0) {
+            throw new IllegalStateException("shared event loop not acquired");
+        }
+        if (--users == 0) {
+            group.shutdownGracefully();
+            group = null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package br.ufs.gothings.core.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel, to schedule a large number of timers.
+ * <p>
+ * The time is measured in ticks, advanced by the owner of the wheel. A timer goes to the bucket of its due tick,
+ * so scheduling and cancelling are constant time, and advancing one tick only visits the timers of one bucket.
+ * Timers due farther than one revolution of the wheel stay in their bucket until their round comes.
+ *
+ * @param <T> the item of the timers
+ * @author Wagner Macedo
+ */
+public final class TimingWheel<T> {
+    private final ArrayDeque<Timer<T>>[] buckets;
+    private final int mask;
+    private long tick = 0;
+    private int size = 0;
+
+    /**
+     * @param wheelSize    number of buckets, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(final int wheelSize) {
+        final int n = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        buckets = new ArrayDeque[n];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        mask = n - 1;
+    }
+
+    /**
+     * Schedule a timer.
+     *
+     * @param item     the item of the timer
+     * @param ticks    ticks from now to the timer expire, at least one
+     * @return the timer, to be cancelled
+     */
+    public synchronized Timer<T> schedule(final T item, final long ticks) {
+        final Timer<T> timer = new Timer<>(item, tick + Math.max(1, ticks));
+        buckets[(int) (timer.due & mask)].add(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Advance the wheel to the given tick, passing the expired timers to the consumer.
+     *
+     * @param to         the current tick
+     * @param expired    consumer of the expired timers, called without the lock of the wheel
+     */
+    public void advance(final long to, final Consumer<Timer<T>> expired) {
+        final List<Timer<T>> list = new ArrayList<>();
+        synchronized (this) {
+            if (to <= tick) {
+                return;
+            }
+            // a lagged wheel visits each bucket once
+            final long steps = Math.min(to - tick, buckets.length);
+            for (long t = tick + 1; t <= tick + steps; t++) {
+                final Iterator<Timer<T>> it = buckets[(int) (t & mask)].iterator();
+                while (it.hasNext()) {
+                    final Timer<T> timer = it.next();
+                    if (timer.cancelled || timer.due <= to) {
+                        it.remove();
+                        size--;
+                        if (!timer.cancelled) {
+                            list.add(timer);
+                        }
+                    }
+                }
+            }
+            tick = to;
+        }
+        list.forEach(expired);
+    }
+
+    public synchronized long tick() {
+        return tick;
+    }
+
+    /**
+     * @return the number of timers in the wheel, including cancelled timers not yet removed.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public static final class Timer<T> {
+        private final T item;
+        private final long due;
+        private volatile boolean cancelled = false;
+
+        private Timer(final T item, final long due) {
+            this.item = item;
+            this.due = due;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * @return the tick the timer is due.
+         */
+        public long getDue() {
+            return due;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
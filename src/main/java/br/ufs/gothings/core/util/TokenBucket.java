@@ -0,0 +1,70 @@
+package br.ufs.gothings.core.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilled at a constant rate up to a burst capacity.
+ * <p>
+ * Besides taking a token right away, a token can be reserved in advance, in which case the caller is told how long
+ * to wait before using it. This allows to queue work instead of refusing it.
+ *
+ * @author Wagner Macedo
+ */
+public final class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate     tokens per second
+     * @param burst    capacity of the bucket, which starts full
+     */
+    public TokenBucket(final double rate, final int burst) {
+        if (rate <= 0 || burst < 1) {
+            throw new IllegalArgumentException("rate must be positive and burst at least 1");
+        }
+        this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reserve a token, now or in the future.
+     *
+     * @param maxWait    the longest acceptable wait, in nanoseconds
+     * @return the nanoseconds to wait before using the token, or -1 if the wait would be longer than
+     *         {@code maxWait}, in which case nothing is reserved.
+     */
+    public synchronized long reserve(final long maxWait) {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        final long wait = (long) Math.ceil((1 - tokens) / tokensPerNano);
+        if (wait > maxWait) {
+            return -1;
+        }
+        // tokens get negative, so the next reservations wait for this one
+        tokens -= 1;
+        return wait;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
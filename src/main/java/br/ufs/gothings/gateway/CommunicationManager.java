@@ -6,24 +6,41 @@ import br.ufs.gothings.core.common.GatewayException;
 import br.ufs.gothings.core.message.*;
 import br.ufs.gothings.core.message.headers.Operation;
 import br.ufs.gothings.core.plugin.*;
+import br.ufs.gothings.core.util.Deadline;
+import br.ufs.gothings.core.util.Metrics;
 import br.ufs.gothings.gateway.InterconnectionController.ObserveList;
+import br.ufs.gothings.gateway.common.AdaptiveTimeouts;
+import br.ufs.gothings.gateway.common.Bulkhead;
+import br.ufs.gothings.gateway.common.CircuitBreaker;
+import br.ufs.gothings.gateway.common.CircuitBreakers;
+import br.ufs.gothings.gateway.common.CoDelAdmission;
 import br.ufs.gothings.gateway.common.Controller;
+import br.ufs.gothings.gateway.common.HedgedReads;
+import br.ufs.gothings.gateway.common.HedgedReads.Hedge;
+import br.ufs.gothings.gateway.common.InFlight;
+import br.ufs.gothings.gateway.common.LaneExecutor;
+import br.ufs.gothings.gateway.common.LaneExecutor.Lane;
 import br.ufs.gothings.gateway.common.Package;
+import br.ufs.gothings.gateway.common.RateLimiter;
 import br.ufs.gothings.gateway.common.Sequencer;
 import br.ufs.gothings.gateway.common.StopProcessException;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import br.ufs.gothings.gateway.common.TargetGroups;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_CLIENT_ID;
 import static br.ufs.gothings.core.message.headers.HeaderNames.GW_OPERATION;
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
 
 /**
  * @author Wagner Macedo
@@ -31,17 +48,48 @@ import static br.ufs.gothings.core.message.headers.HeaderNames.GW_OPERATION;
 public class CommunicationManager {
     private static final Logger logger = LogManager.getFormatterLogger(CommunicationManager.class);
 
+    // Number of consecutive control tasks run before a waiting bulk task
+    private static final int CONTROL_BURST = 8;
+
+    // Admission control of the client plugins queues
+    private static final long ADMISSION_TARGET_MILLIS = 500;
+    private static final long ADMISSION_INTERVAL_MILLIS = 5000;
+
+    // Default quotas per source protocol, overridden by the settings "bulkhead.<protocol>.*"
+    private static final int DEFAULT_BULKHEAD_CONCURRENCY = 256;
+    private static final int DEFAULT_BULKHEAD_QUEUE = 1024;
+
+    // Draining on stop
+    private static final int DEFAULT_DRAIN_TIMEOUT_MILLIS = 30000;
+    private static final long DRAIN_POLL_MILLIS = 50;
+    private static final long STOP_GRACE_MILLIS = 1000;
+
+    // Period to halve the latencies of the targets, from which their timeouts are derived
+    private static final int LATENCY_DECAY_MINUTES = 5;
+
     private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
     private final ThreadGroup pluginsGroup = new ThreadGroup("GW-plugins");
 
+    private final AtomicBoolean settingsLocked = new AtomicBoolean(false);
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final Settings settings = new Settings(settingsLocked);
+
     private final Sequencer sequencer = new Sequencer();
+    private final RateLimiter rateLimiter = new RateLimiter();
+    private final CircuitBreakers breakers = new CircuitBreakers();
+    private final AdaptiveTimeouts timeouts = new AdaptiveTimeouts();
+    private final HedgedReads hedgedReads = new HedgedReads();
+    private final InFlight<PluginData> inFlight = new InFlight<>();
     private final Map<String, PluginData> pluginsMap = new ConcurrentHashMap<>();
     private final Map<Long, CompletableReply> waitingReplies = new ConcurrentHashMap<>();
+    // timers failing the dispatched requests not answered before their deadline, by sequence
+    private final Map<Long, ScheduledFuture<?>> expiries = new ConcurrentHashMap<>();
 
     private final Controller inputC;
     private final Controller interConnC;
     private final Controller outputC;
     private final ObserveList iccObserving;
+    private final TargetGroups targetGroups;
 
     CommunicationManager() {
         // PackageFactory configuration
@@ -51,6 +99,50 @@ public class CommunicationManager {
 
         // Obtain the Interconnection Controller observing list
         iccObserving = ((InterconnectionController) interConnC).getObserveList();
+        targetGroups = ((InterconnectionController) interConnC).getTargetGroups();
+
+        // Default rate limit of the targets
+        settings.registerKey("ratelimit.rate", Double.class, rate -> rate >= 0);
+        settings.registerKey("ratelimit.burst", Integer.class, burst -> burst >= 1);
+        settings.registerKey("ratelimit.max-delay", Integer.class, millis -> millis >= 0);
+
+        // Circuit breaker of the targets
+        settings.registerKey("breaker.failures", Integer.class, n -> n >= 1);
+        settings.registerKey("breaker.open-time", Integer.class, millis -> millis >= 0);
+
+        // Timeouts of the targets, as the p99 of their latencies times a factor
+        settings.registerKey("timeout.factor", Double.class, factor -> factor >= 1);
+        settings.registerKey("timeout.min", Integer.class, millis -> millis > 0);
+        settings.registerKey("timeout.max", Integer.class, millis -> millis > 0);
+
+        // Hedging of READs to target groups
+        settings.registerKey("hedge.percentile", Double.class, p -> p > 0 && p <= 100);
+        settings.registerKey("hedge.delay", Integer.class, millis -> millis >= 0);
+
+        // Time to drain the requests on stop
+        settings.registerKey("drain.timeout", Integer.class, millis -> millis >= 0);
+    }
+
+    /**
+     * Set the rate limit of a target. It can be changed at any time.
+     *
+     * @param target    the target, as in the {@code GW_TARGET} header
+     * @param rate      requests per second, or 0 for no limit
+     * @param burst     number of requests that can be sent at once
+     */
+    public void setRateLimit(final String target, final double rate, final int burst) {
+        rateLimiter.setLimit(target, rate, burst);
+    }
+
+    /**
+     * Set the members of a target group, a logical target replicated by several authorities. READs to the group
+     * are hedged: if the first member doesn't answer in time, a copy is sent to the second member.
+     *
+     * @param group      the logical target
+     * @param members    the authorities, the primary first
+     */
+    public void setTargetGroup(final String group, final List<String> members) {
+        targetGroups.set(group, members);
     }
 
     public void register(final PluginClient client) {
@@ -65,6 +157,10 @@ public class CommunicationManager {
         client.setUp(new ReplyLink() {
             @Override
             public void ack(final long sequence) {
+                disarmDeadline(sequence);
+                breakers.onAck(sequence);
+                timeouts.completed(sequence);
+                rateLimiter.completed(sequence);
                 final CompletableReply future = waitingReplies.remove(sequence);
                 if (future != null) {
                     future.complete(GwReply.EMPTY.withSequence(sequence));
@@ -73,6 +169,13 @@ public class CommunicationManager {
 
             @Override
             public void send(final GwReply reply) {
+                disarmDeadline(reply.getSequence());
+                breakers.onReply(reply.getSequence(), reply.headers().get(GW_TARGET));
+                timeouts.completed(reply.getSequence());
+                hedgedReads.replied(reply.getSequence());
+                // coalesced requests are replied along with this one, by the observing list
+                rateLimiter.completed(reply.getSequence());
+
                 final Package pkg = new Package();
                 pkg.setMessage(reply);
                 pkg.setSourceProtocol(protocol);
@@ -81,7 +184,8 @@ public class CommunicationManager {
 
             @Override
             public void sendError(final GwError error) {
-                sendFutureException(new GatewayException(error));
+                disarmDeadline(error.getSequence());
+                failRequest(error);
             }
         });
 
@@ -91,6 +195,33 @@ public class CommunicationManager {
 
     }
 
+    /**
+     * Fail a dispatched request, and the requests coalesced into it, with the error of the client plugin.
+     */
+    private void failRequest(final GwError error) {
+        breakers.onError(error.getSequence(), error.headers().get(GW_TARGET), error.getCode());
+        // the latency of a target which didn't answer is unknown, but at least its timeout if it was timed out
+        switch (error.getCode()) {
+            case TARGET_NOT_FOUND:
+                if (Deadline.isExpired(error.headers())) {
+                    timeouts.timedOut(error.getSequence());
+                } else {
+                    timeouts.abandoned(error.getSequence());
+                }
+                break;
+            case DEADLINE_EXCEEDED:
+                timeouts.abandoned(error.getSequence());
+                break;
+            default:
+                timeouts.completed(error.getSequence());
+        }
+        sendFutureException(new GatewayException(error));
+        for (final GwRequest follower : rateLimiter.completed(error.getSequence())) {
+            iccObserving.remove(follower.getSequence());
+            sendFutureException(new GatewayException(follower, error.getCode()));
+        }
+    }
+
     public void register(final PluginServer server) {
         final String protocol = server.getProtocol();
         final PluginData pd = pluginsMap.computeIfAbsent(protocol, k -> new PluginData(protocol));
@@ -100,6 +231,11 @@ public class CommunicationManager {
             throw new IllegalStateException(protocol + " server plugin is already set");
         }
 
+        // Quotas of this protocol as a tenant
+        settings.registerKey(bulkheadKey(protocol, "concurrency"), Integer.class, n -> n >= 0);
+        settings.registerKey(bulkheadKey(protocol, "queue"), Integer.class, n -> n >= 0);
+        settings.registerKey(bulkheadKey(protocol, "client-queue"), Integer.class, n -> n >= 0);
+
         server.setUp(request -> {
             switch (request.headers().get(GW_OPERATION)) {
                 case CREATE:
@@ -117,16 +253,29 @@ public class CommunicationManager {
                     break;
             }
 
+            // UNOBSERVE request don't wait for a reply. The future is added before processing, so errors
+            // found while processing can be sent to it.
+            final FutureReply future;
+            if (request.headers().get(GW_OPERATION) != Operation.UNOBSERVE) {
+                future = pd.addFuture(request);
+                // no new work while draining, the requester should try again elsewhere
+                if (draining.get()) {
+                    rejectRequest("drain", request);
+                    return future;
+                }
+            } else {
+                future = null;
+            }
+
             final Package pkg = new Package();
             pkg.setMessage(request);
             pkg.setSourceProtocol(protocol);
-            processRequest(pkg);
-
-            // UNOBSERVE request don't wait for a reply
-            if (request.headers().get(GW_OPERATION) != Operation.UNOBSERVE) {
-                return pd.addFuture(request);
+            try {
+                processRequest(pkg);
+            } catch (StopProcessException ignored) {
+                // any error was already sent to the future
             }
-            return null;
+            return future;
         });
 
         if (logger.isDebugEnabled()) {
@@ -139,7 +288,31 @@ public class CommunicationManager {
         register(server);
     }
 
+    public Settings settings() {
+        return settings;
+    }
+
     public void start() {
+        settingsLocked.set(true);
+
+        rateLimiter.setDefaultLimit(settings.get("ratelimit.rate", 0.0), settings.get("ratelimit.burst", 1));
+        rateLimiter.setMaxDelay(settings.get("ratelimit.max-delay", 10000), TimeUnit.MILLISECONDS);
+        breakers.configure(settings.get("breaker.failures", 5),
+                settings.get("breaker.open-time", 30000), TimeUnit.MILLISECONDS);
+        hedgedReads.configure(settings.get("hedge.percentile", 95.0),
+                settings.get("hedge.delay", 1000), TimeUnit.MILLISECONDS);
+        timeouts.configure(settings.get("timeout.factor", 3.0),
+                settings.get("timeout.min", 1000), settings.get("timeout.max", 60000), TimeUnit.MILLISECONDS);
+
+        for (final PluginData pd : pluginsMap.values()) {
+            if (pd.server != null) {
+                pd.bulkhead = new Bulkhead(pd.getProtocol(),
+                        settings.get(bulkheadKey(pd.getProtocol(), "concurrency"), DEFAULT_BULKHEAD_CONCURRENCY),
+                        settings.get(bulkheadKey(pd.getProtocol(), "queue"), DEFAULT_BULKHEAD_QUEUE),
+                        settings.get(bulkheadKey(pd.getProtocol(), "client-queue"), 0));
+            }
+        }
+
         for (final PluginData pd : pluginsMap.values()) {
             final Thread pluginThread;
             if (pd.client == pd.server) {
@@ -174,21 +347,84 @@ public class CommunicationManager {
         }
 
         timer.scheduleAtFixedRate(this::sweepWaitingReplies, 1, 1, TimeUnit.MINUTES);
+        timer.scheduleAtFixedRate(this::logMetrics, 1, 1, TimeUnit.MINUTES);
+        timer.scheduleAtFixedRate(() -> {
+            timeouts.decay();
+            hedgedReads.decay();
+        }, LATENCY_DECAY_MINUTES, LATENCY_DECAY_MINUTES, TimeUnit.MINUTES);
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
     }
 
-    private static ExecutorService newExecutorService(final String name) {
-        return Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
-                .namingPattern(name)
-                .build());
+    private static String bulkheadKey(final String protocol, final String quota) {
+        return "bulkhead." + protocol + "." + quota;
+    }
+
+    private static LaneExecutor newExecutorService(final String name) {
+        return new LaneExecutor(name, CONTROL_BURST);
     }
 
+    private void logMetrics() {
+        if (logger.isDebugEnabled()) {
+            Metrics.snapshot().forEach((name, value) -> logger.debug("metric %s: %s", name, value));
+        }
+    }
+
+    /**
+     * Stop the gateway, draining the requests within the time of the setting {@code drain.timeout}.
+     */
     public void stop() {
+        stop(settings.get("drain.timeout", DEFAULT_DRAIN_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the gateway, draining the requests.
+     * <p>
+     * New requests are rejected as overloaded, while the requests already accepted have until the timeout to be
+     * answered. The ones still waiting after that are aborted. Then the client plugins are stopped, and the server
+     * plugins are stopped after the replies queued for them, as the observe notifications, are sent.
+     *
+     * @param timeout    the time to drain the requests
+     * @param unit       the unit of the timeout
+     */
+    public void stop(final long timeout, final TimeUnit unit) {
         // don't continue if stop was already called
-        synchronized (timer) {
-            if (timer.isShutdown()) return;
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final long pending = countPendingRequests();
+        logger.info("draining %d requests", pending);
+        try {
+            while (countPendingRequests() > 0 && System.nanoTime() - deadline < 0) {
+                Thread.sleep(DRAIN_POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
+        // Abort the requests that couldn't be drained
+        long aborted = 0;
+        for (final Long sequence : waitingReplies.keySet()) {
+            if (!Sequencer.isObserve(sequence)) {
+                final CompletableReply future = waitingReplies.remove(sequence);
+                if (future != null) {
+                    aborted++;
+                    final GwRequest request = new GwRequest();
+                    request.setSequence(sequence);
+                    future.completeExceptionally(new GatewayException(request, ErrorCode.OVERLOADED));
+                    abortRequest(sequence);
+                }
+            }
+        }
+        Metrics.counter("drain.drained").add(Math.max(0, pending - aborted));
+        Metrics.counter("drain.aborted").add(aborted);
+        logger.info("drained %d requests, aborted %d", Math.max(0, pending - aborted), aborted);
+
+        // the deadlines of the aborted requests don't hold the timer
+        for (final Long sequence : expiries.keySet()) {
+            disarmDeadline(sequence);
+        }
         timer.shutdown();
 
         final Iterator<PluginData> it = pluginsMap.values().iterator();
@@ -203,6 +439,7 @@ public class CommunicationManager {
                     pd.client = null;
                 });
                 pd.clientExecutor.shutdown();
+                awaitTermination(pd.clientExecutor, deadline);
                 pd.clientExecutor = null;
             }
 
@@ -212,6 +449,7 @@ public class CommunicationManager {
                     pd.server = null;
                 });
                 pd.serverExecutor.shutdown();
+                awaitTermination(pd.serverExecutor, deadline);
                 pd.serverExecutor = null;
             }
         }
@@ -219,6 +457,25 @@ public class CommunicationManager {
         pluginsGroup.interrupt();
     }
 
+    private long countPendingRequests() {
+        return waitingReplies.keySet().stream().filter(sequence -> !Sequencer.isObserve(sequence)).count();
+    }
+
+    /**
+     * Wait the executor to run its queued tasks, for at least a grace period even if the drain deadline has
+     * passed, so the plugins have the chance to stop.
+     */
+    private static void awaitTermination(final LaneExecutor executor, final long deadline) {
+        final long nanos = Math.max(deadline - System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(STOP_GRACE_MILLIS));
+        try {
+            if (!executor.awaitTermination(nanos, TimeUnit.NANOSECONDS)) {
+                logger.warn("%d tasks not run on stop", executor.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void processRequest(final Package pkg) {
         // Input controller processing
         try {
@@ -236,7 +493,8 @@ public class CommunicationManager {
         // If ICC left a request, then it's a work for a plugin
         if (message instanceof GwRequest) {
             final GwRequest request = (GwRequest) message;
-            if (!requestToPlugin(request.readOnly(), pkg.getTargetProtocol())) {
+            startHedge(pkg, request);
+            if (!requestToPlugin(request.readOnly(), pkg.getTargetProtocol(), pkg.getSourceProtocol())) {
                 sendFutureException(new GatewayException(request, ErrorCode.UNAVAILABLE_PLUGIN));
             }
         }
@@ -276,20 +534,198 @@ public class CommunicationManager {
         replyToPlugin(reply.readOnly(), pkg.getReplyTo());
     }
 
-    private boolean requestToPlugin(final GwRequest request, final String targetProtocol) {
+    private boolean requestToPlugin(final GwRequest request, final String targetProtocol, final String sourceProtocol) {
         final PluginData pd = pluginsMap.get(targetProtocol);
         if (pd != null && pd.client != null) {
-            pd.clientExecutor.execute(() -> pd.client.handleRequest(request));
+            // UNOBSERVE only releases resources, so it's never shed nor limited
+            if (request.headers().get(GW_OPERATION) == Operation.UNOBSERVE) {
+                pd.clientExecutor.execute(Lane.of(request), () -> pd.client.handleRequest(request));
+                return true;
+            }
+
+            // The requester gave up already
+            if (Deadline.isExpired(request.headers())) {
+                expireRequest(request);
+                return true;
+            }
+
+            // Fail fast while the target is unreachable
+            final String target = request.headers().get(GW_TARGET);
+            final CircuitBreaker breaker = breakers.get(target);
+            if (!breaker.allow()) {
+                Metrics.counter("breaker." + target + ".rejected").increment();
+                sendFutureException(new GatewayException(request, breaker.getLastError()));
+                return true;
+            }
+
+            if (!pd.admission.admit(pd.clientExecutor.size())) {
+                rejectRequest("admission." + pd.getProtocol(), request);
+                return true;
+            }
+
+            // Bulkhead of the tenant, i.e. the source protocol
+            final PluginData source = pluginsMap.get(sourceProtocol);
+            final Bulkhead bulkhead = (source != null) ? source.bulkhead : null;
+            final String client = request.headers().get(GW_CLIENT_ID);
+            if (bulkhead != null && !bulkhead.tryEnqueue(client)) {
+                rejectRequest("bulkhead." + bulkhead.getName(), request);
+                return true;
+            }
+
+            final Runnable enqueue = () -> {
+                rateLimiter.dispatched(request);
+                final long queued = System.nanoTime();
+                pd.clientExecutor.execute(Lane.of(request), () -> {
+                    if (bulkhead != null) {
+                        bulkhead.dequeued(client);
+                    }
+                    // a hedged READ was answered by the other copy
+                    if (hedgedReads.isLost(request.getSequence())) {
+                        return;
+                    }
+                    // nobody waits the reply anymore, unless requests were coalesced into it
+                    if (!inFlight.dispatching(request.getSequence(), pd)
+                            && !rateLimiter.hasFollowers(request.getSequence())) {
+                        Metrics.counter("cancel.dropped").increment();
+                        return;
+                    }
+                    // from here the request is registered as in flight, until it's dispatched or dropped
+                    try {
+                        // expired while queued: requests coalesced into it are dispatched by themselves
+                        if (Deadline.isExpired(request.headers())) {
+                            expireRequest(request);
+                            for (final GwRequest follower : rateLimiter.completed(request.getSequence())) {
+                                requestToPlugin(follower, targetProtocol, sourceProtocol);
+                            }
+                            return;
+                        }
+                        if (!pd.admission.onDequeue(System.nanoTime() - queued)) {
+                            rejectRequest("admission." + pd.getProtocol(), request);
+                            return;
+                        }
+                        if (bulkhead != null && !acquireConcurrency(bulkhead, request)) {
+                            rejectRequest("bulkhead." + bulkhead.getName(), request);
+                            return;
+                        }
+                        if (Sequencer.isObserve(request.getSequence())) {
+                            pd.client.handleRequest(request);
+                        } else {
+                            breakers.dispatched(request.getSequence(), target);
+                            timeouts.dispatched(request.getSequence(), target);
+                            final GwRequest dispatched = withTargetTimeout(request, target);
+                            armDeadline(dispatched);
+                            pd.client.handleRequest(dispatched);
+                        }
+                    } finally {
+                        inFlight.dispatched(request.getSequence());
+                    }
+                });
+            };
+
+            // Rate limit of the target
+            final long delay = rateLimiter.acquire(request);
+            if (delay == 0) {
+                enqueue.run();
+            } else if (delay > 0) {
+                timer.schedule(enqueue, delay, TimeUnit.NANOSECONDS);
+            } else {
+                if (bulkhead != null) {
+                    bulkhead.dequeued(client);
+                }
+                if (delay == RateLimiter.REJECTED) {
+                    rejectRequest("ratelimit", request);
+                }
+                // a coalesced request is replied along with the request it was coalesced into
+            }
             return true;
         }
         return false;
     }
 
+    /**
+     * Shorten the deadline of a request being dispatched to the timeout of its target. The timeout starts at the
+     * dispatch, so the time spent queued or delayed by the rate limit isn't taken from it, and it never extends
+     * the deadline set by the requester.
+     *
+     * @return the request, or a copy of it with the deadline of the target.
+     */
+    private GwRequest withTargetTimeout(final GwRequest request, final String target) {
+        final long timeout = timeouts.timeout(target, TimeUnit.MILLISECONDS);
+        if (Deadline.remaining(request.headers(), TimeUnit.MILLISECONDS) <= timeout) {
+            return request;
+        }
+        final GwRequest copy = new GwRequest(request.headers().copy(), request.payload());
+        copy.setSequence(request.getSequence());
+        Deadline.set(copy.headers(), timeout, TimeUnit.MILLISECONDS);
+        return copy.readOnly();
+    }
+
+    /**
+     * Fail the request with {@link ErrorCode#TARGET_NOT_FOUND} if it isn't answered before its deadline, as not
+     * every client plugin enforces the deadline, and a server plugin listening the reply doesn't wait on its own.
+     * Once dispatched, the deadline is the time the target has to answer, so missing it is a failure of the target.
+     */
+    private void armDeadline(final GwRequest request) {
+        final long remaining = Deadline.remaining(request.headers(), TimeUnit.MILLISECONDS);
+        if (remaining == Long.MAX_VALUE) {
+            return;
+        }
+        final long sequence = request.getSequence();
+        try {
+            // scheduled inside compute, so the timer can't remove the entry before it's set
+            expiries.compute(sequence, (k, v) -> timer.schedule(() -> {
+                if (expiries.remove(sequence) != null) {
+                    Metrics.counter("timeout.expired").increment();
+                    abortRequest(sequence);
+                    failRequest(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
+                }
+            }, remaining, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException ignored) {
+            // stopped, the request is aborted by the drain
+        }
+    }
+
+    private void disarmDeadline(final long sequence) {
+        final ScheduledFuture<?> expiry = expiries.remove(sequence);
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+    }
+
+    /**
+     * Take a concurrency slot of the bulkhead for a normal request, released when its reply arrives. Observe
+     * requests wait for replies indefinitely, so they don't use concurrency slots.
+     */
+    private boolean acquireConcurrency(final Bulkhead bulkhead, final GwRequest request) {
+        if (Sequencer.isObserve(request.getSequence())) {
+            return true;
+        }
+        final CompletableReply future = waitingReplies.get(request.getSequence());
+        if (future == null) {
+            return true;
+        }
+        if (!bulkhead.tryAcquire()) {
+            return false;
+        }
+        future.whenDone(bulkhead::release);
+        return true;
+    }
+
+    private void rejectRequest(final String reason, final GwRequest request) {
+        Metrics.counter(reason + ".shed").increment();
+        sendFutureException(new GatewayException(request, ErrorCode.OVERLOADED));
+    }
+
+    private void expireRequest(final GwRequest request) {
+        Metrics.counter("deadline.expired").increment();
+        sendFutureException(new GatewayException(request, ErrorCode.DEADLINE_EXCEEDED));
+    }
+
     private void replyToPlugin(final GwReply reply, final Map<String, long[]> replyTo) {
         replyTo.forEach((protocol, sequences) -> {
             final PluginData pd = pluginsMap.get(protocol);
             if (pd.server != null) {
-                pd.serverExecutor.execute(() -> {
+                pd.serverExecutor.execute(Lane.of(reply), () -> {
                     for (final long sequence : sequences) {
                         pd.provideReply(reply.withSequence(sequence));
                     }
@@ -314,13 +750,17 @@ public class CommunicationManager {
         private final String protocol;
 
         private PluginClient client;
-        private ExecutorService clientExecutor;
+        private LaneExecutor clientExecutor;
+        private final CoDelAdmission admission = new CoDelAdmission(
+                ADMISSION_TARGET_MILLIS, ADMISSION_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
 
         private PluginServer server;
-        private ExecutorService serverExecutor;
+        private LaneExecutor serverExecutor;
+        private Bulkhead bulkhead;
 
         private PluginData(final String protocol) {
             this.protocol = protocol;
+            Metrics.gauge("admission." + protocol + ".overloaded", admission::isOverloaded);
         }
 
         public FutureReply addFuture(final GwRequest request) {
@@ -329,6 +769,8 @@ public class CommunicationManager {
                 future = new AsynchronousReply();
             } else {
                 future = new SynchronousReply();
+                final long sequence = request.getSequence();
+                future.onCancel(() -> cancelRequest(sequence));
             }
             waitingReplies.put(request.getSequence(), future);
             return future;
@@ -357,6 +799,7 @@ public class CommunicationManager {
 
     private abstract static class CompletableReply implements FutureReply {
         protected final AtomicReference<CompletableFuture<GwReply>> future = new AtomicReference<>();
+        private volatile Runnable cancelAction;
 
         public CompletableReply() {
             future.set(new CompletableFuture<>());
@@ -370,13 +813,28 @@ public class CommunicationManager {
             return future.get().completeExceptionally(ex);
         }
 
+        public void whenDone(final Runnable action) {
+            future.get().whenComplete((reply, throwable) -> action.run());
+        }
+
+        /**
+         * Set the action to run when this future is cancelled.
+         */
+        public void onCancel(final Runnable action) {
+            cancelAction = action;
+        }
+
         public int getNumberOfDependents() {
             return future.get().getNumberOfDependents();
         }
 
         @Override
         public boolean cancel(final boolean mayInterruptIfRunning) {
-            return future.get().cancel(mayInterruptIfRunning);
+            final boolean cancelled = future.get().cancel(mayInterruptIfRunning);
+            if (cancelled && cancelAction != null) {
+                cancelAction.run();
+            }
+            return cancelled;
         }
 
         @Override
@@ -417,9 +875,19 @@ public class CommunicationManager {
             return future.get().get(timeout, unit);
         }
 
+        /**
+         * Call the listener once the reply arrives, for the servers not blocking a thread per request. The listener
+         * isn't called if the future is cancelled.
+         */
         @Override
         public void setListener(final ReplyListener replyListener) {
-            throw new UnsupportedOperationException();
+            // the listener is a dependent, so the future isn't swept while waiting the reply
+            future.get().whenComplete((reply, throwable) -> {
+                if (throwable == null)
+                    replyListener.onReply(reply);
+                else if (throwable instanceof GatewayException)
+                    replyListener.onError(((GatewayException) throwable).getErrorMessage());
+            });
         }
     }
 
@@ -472,7 +940,86 @@ public class CommunicationManager {
         }
     }
 
+    /**
+     * Hedge a READ to a target group with a replica, sending a copy to it after the hedge delay of the group.
+     */
+    private void startHedge(final Package pkg, final GwRequest request) {
+        final String group = pkg.getTargetGroup();
+        if (group == null || request.headers().get(GW_OPERATION) != Operation.READ) {
+            return;
+        }
+        final List<String> members = targetGroups.members(group);
+        if (members == null || members.size() < 2) {
+            return;
+        }
+        final Hedge hedge = hedgedReads.start(request, group, members.get(1),
+                pkg.getTargetProtocol(), pkg.getSourceProtocol());
+        hedge.setTimer(timer.schedule(() -> sendHedge(hedge),
+                hedgedReads.delay(group, TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS));
+    }
+
+    private void sendHedge(final Hedge hedge) {
+        final GwRequest copy = hedgedReads.copy(hedge, sequencer.nextNormal());
+        if (copy != null && !requestToPlugin(copy.readOnly(), hedge.getTargetProtocol(), hedge.getSourceProtocol())) {
+            sendFutureException(new GatewayException(copy, ErrorCode.UNAVAILABLE_PLUGIN));
+        }
+    }
+
+    /**
+     * Cancel a request whose future was cancelled, as nobody waits its reply anymore. If still queued the request
+     * isn't dispatched, otherwise the client plugin is asked to abort it.
+     */
+    private void cancelRequest(final long sequence) {
+        Metrics.counter("cancel.requests").increment();
+        waitingReplies.remove(sequence);
+        disarmDeadline(sequence);
+        iccObserving.remove(sequence);
+        breakers.abandoned(sequence);
+        timeouts.abandoned(sequence);
+
+        abortRequest(sequence);
+        final long copy = hedgedReads.cancel(sequence);
+        if (copy != 0) {
+            abortRequest(copy);
+        }
+    }
+
+    private void abortRequest(final long sequence) {
+        // requests coalesced into it still wait the reply
+        if (rateLimiter.hasFollowers(sequence)) {
+            return;
+        }
+        final PluginData pd = inFlight.cancel(sequence);
+        if (pd != null && pd.client != null) {
+            Metrics.counter("cancel.aborted").increment();
+            pd.client.cancelRequest(sequence);
+        }
+    }
+
     private void sendFutureException(final GatewayException gatewayException) {
+        final long sequence = gatewayException.getErrorMessage().getSequence();
+
+        // An error of a hedged READ fails it only when no copy can answer anymore
+        final Hedge hedge = hedgedReads.get(sequence);
+        if (hedge != null) {
+            switch (hedgedReads.failed(hedge, sequence)) {
+                case WAIT:
+                    return;
+                case HEDGE_NOW:
+                    sendHedge(hedge);
+                    return;
+                case FAIL:
+                    final GwRequest request = hedge.getRequest();
+                    iccObserving.remove(request.getSequence());
+                    completeExceptionally(new GatewayException(request,
+                            gatewayException.getErrorMessage().getCode()));
+                    return;
+            }
+        }
+        completeExceptionally(gatewayException);
+    }
+
+    private void completeExceptionally(final GatewayException gatewayException) {
         final CompletableReply future = waitingReplies.remove(gatewayException.getErrorMessage().getSequence());
         if (future != null) {
             future.completeExceptionally(gatewayException);
@@ -480,6 +1027,7 @@ public class CommunicationManager {
     }
 
     private void sweepWaitingReplies() {
+        inFlight.purge(timeouts.maxTimeout(TimeUnit.SECONDS), TimeUnit.SECONDS);
         waitingReplies.entrySet().removeIf(e -> {
             final SynchronousReply future;
             if (e.getValue() instanceof SynchronousReply)
@@ -489,10 +1037,15 @@ public class CommunicationManager {
 
             // If the future hasn't getters this usually means it's been discarded...
             if (future.getNumberOfDependents() < 1) {
-                // ...but we double check by verifying if has passed more than 40 seconds since threshold adjust.
-                // This is done to don't remove a just created future or a still wanted reply.
-                if (Duration.between(future.threshold, Instant.now()).getSeconds() > 40) {
+                // ...but we double check by verifying if has passed more than the longest timeout since threshold
+                // adjust. This is done to don't remove a just created future or a still wanted reply.
+                final long grace = timeouts.maxTimeout(TimeUnit.SECONDS);
+                if (Duration.between(future.threshold, Instant.now()).getSeconds() > grace) {
                     iccObserving.remove(e.getKey());
+                    rateLimiter.completed(e.getKey());
+                    breakers.abandoned(e.getKey());
+                    timeouts.abandoned(e.getKey());
+                    hedgedReads.abandoned(e.getKey());
                     future.cancel(true);
                     return true;
                 }
@@ -50,6 +50,15 @@ public final class Gateway {
         for (final PluginBundle bundle : map.values()) {
             registerPlugin(manager, bundle);
         }
+        // gateway properties are applied after plugins registering as some keys are registered per plugin
+        applyProperties(manager.settings(), cfg.properties, "gateway");
+        for (final Entry<String, TargetConfig> entry : cfg.targets.entrySet()) {
+            final TargetConfig t = entry.getValue();
+            manager.setRateLimit(entry.getKey(), t.rate, t.burst);
+            if (!t.members.isEmpty()) {
+                manager.setTargetGroup(entry.getKey(), t.members);
+            }
+        }
         manager.start();
     }
 
@@ -108,17 +117,22 @@ public final class Gateway {
             throw new GatewayConfigException("the class %s does not implement %s protocol", plugin.getClass().getName(), cfg.protocol);
         }
 
-        final Settings settings = plugin.settings();
-        for (final Entry<String, String> entry : cfg.properties.entrySet()) {
+        applyProperties(plugin.settings(), cfg.properties, cfg.protocol + " plugin");
+        return plugin;
+    }
+
+    private static void applyProperties(final Settings settings, final Map<String, String> properties,
+                                        final String owner) throws GatewayConfigException {
+        for (final Entry<String, String> entry : properties.entrySet()) {
             final String name = entry.getKey();
-            final Key<?> key = settings.getKey(name);
-            if (key == null) {
-                throw new GatewayConfigException("property '%s' not registered for %s plugin", name, cfg.protocol);
+            final Key<?> key;
+            try {
+                key = settings.getKey(name);
+            } catch (IllegalArgumentException e) {
+                throw new GatewayConfigException("property '%s' not registered for %s", name, owner);
             }
             settings.put(name, convert(entry.getValue(), key));
         }
-
-        return plugin;
     }
 
     @SuppressWarnings("unchecked")
@@ -157,6 +171,8 @@ public final class Gateway {
 
             final YamlReader yaml = new YamlReader(new FileReader(configFileName));
             yaml.getConfig().setPropertyElementType(GatewayConfig.class, "plugins", PluginConfig.class);
+            yaml.getConfig().setPropertyElementType(GatewayConfig.class, "targets", TargetConfig.class);
+            yaml.getConfig().setPropertyElementType(TargetConfig.class, "members", String.class);
 
             try {
                 config = yaml.read(GatewayConfig.class);
@@ -181,11 +197,13 @@ public final class Gateway {
     }
 
     protected static class GatewayConfig {
+        public Map<String, String> properties = Collections.emptyMap();
         public List<PluginConfig> plugins;
+        public Map<String, TargetConfig> targets = Collections.emptyMap();
 
         @Override
         public String toString() {
-            return String.format("{plugins=%s}", plugins);
+            return String.format("{properties=%s, plugins=%s, targets=%s}", properties, plugins, targets);
         }
     }
 
@@ -201,6 +219,17 @@ public final class Gateway {
         }
     }
 
+    protected static class TargetConfig {
+        public double rate;
+        public int burst = 1;
+        public List<String> members = Collections.emptyList();
+
+        @Override
+        public String toString() {
+            return String.format("(rate=%s, burst=%s, members=%s)", rate, burst, members);
+        }
+    }
+
     private static class GatewayConfigException extends Exception {
         public GatewayConfigException() {
             super("malformed configuration file");
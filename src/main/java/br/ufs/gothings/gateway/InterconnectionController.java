@@ -11,6 +11,8 @@ import br.ufs.gothings.gateway.common.Controller;
 import br.ufs.gothings.gateway.common.Package;
 import br.ufs.gothings.gateway.common.Sequencer;
 import br.ufs.gothings.gateway.common.StopProcessException;
+import br.ufs.gothings.gateway.common.TargetGroups;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URIBuilder;
@@ -36,6 +38,7 @@ public class InterconnectionController implements Controller {
     private static final Logger logger = LogManager.getFormatterLogger(InterconnectionController.class);
 
     private final ObserveList observeList = new ObserveList();
+    private final TargetGroups targetGroups = new TargetGroups();
 
     @Override
     public void process(final Package pkg) throws Exception {
@@ -59,8 +62,15 @@ public class InterconnectionController implements Controller {
             final String targetProtocol = uri.getScheme();
             pkg.setTargetProtocol(targetProtocol);
 
+            // A group is observed by its logical uri, but requests are sent to its primary member
             final String target = uri.getRawAuthority();
-            headers.set(GW_TARGET, target);
+            final List<String> members = targetGroups.members(target);
+            if (members != null) {
+                pkg.setTargetGroup(target);
+                headers.set(GW_TARGET, members.get(0));
+            } else {
+                headers.set(GW_TARGET, target);
+            }
 
             final String targetAndPath = uri.getRawSchemeSpecificPart();
             final String path = StringUtils.replaceOnce(targetAndPath, "//" + target, "");
@@ -94,10 +104,24 @@ public class InterconnectionController implements Controller {
 
             try {
                 // Make uri and reply path
-                final URI uri = createURI(reply, sourceProtocol);
-                reply.headers().set(GW_PATH, "/" + uri.toString().replaceFirst(":/", ""));
+                URI uri = createURI(reply, sourceProtocol);
+                Map<String, long[]> observers = getObservers(uri);
+
+                // A reply of a group member is a reply of the group too
+                final String group = targetGroups.groupOf(reply.headers().get(GW_TARGET));
+                if (group != null) {
+                    final URI groupUri = createURI(reply, sourceProtocol, group);
+                    final Map<String, long[]> groupObservers = getObservers(groupUri);
+                    if (groupObservers != null) {
+                        observers = merge(groupObservers, observers);
+                        uri = groupUri;
+                    }
+                }
+                if (observers == null) {
+                    throw new NoSuchElementException("no sequence observing " + uri);
+                }
 
-                final Map<String, long[]> observers = observeList.get(uri.toString());
+                reply.headers().set(GW_PATH, "/" + uri.toString().replaceFirst(":/", ""));
                 pkg.setReplyTo(observers);
             } catch (URISyntaxException e) {
                 if (logger.isErrorEnabled()) {
@@ -111,6 +135,21 @@ public class InterconnectionController implements Controller {
         }
     }
 
+    private Map<String, long[]> getObservers(final URI uri) {
+        try {
+            return observeList.get(uri.toString());
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, long[]> merge(final Map<String, long[]> observers, final Map<String, long[]> other) {
+        if (other != null) {
+            other.forEach((protocol, sequences) -> observers.merge(protocol, sequences, ArrayUtils::addAll));
+        }
+        return observers;
+    }
+
     private void setCache(final GwReply reply, final String protocol) {
 
     }
@@ -140,7 +179,12 @@ public class InterconnectionController implements Controller {
     }
 
     private URI createURI(final GwReply msg, final String sourceProtocol) throws URISyntaxException {
-        final String target = msg.headers().get(GW_TARGET);
+        return createURI(msg, sourceProtocol, msg.headers().get(GW_TARGET));
+    }
+
+    private URI createURI(final GwReply msg, final String sourceProtocol, final String target)
+            throws URISyntaxException
+    {
         final String path = msg.headers().get(GW_PATH).replaceFirst("^/+", "");
 
         return new URI(String.format("%s://%s/%s", sourceProtocol, target, path));
@@ -150,6 +194,10 @@ public class InterconnectionController implements Controller {
         return observeList;
     }
 
+    public TargetGroups getTargetGroups() {
+        return targetGroups;
+    }
+
     /**
      * Mapping of observing sequences to reply
      * <p>
@@ -0,0 +1,108 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.util.LatencyHistogram;
+import br.ufs.gothings.core.util.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeouts of each target derived from the latencies observed for it.
+ * <p>
+ * The latency of every answered request is recorded in the histogram {@code "latency.<target>"}, and the timeout of
+ * a target is its p99 multiplied by a factor, clamped between a minimum and a maximum. While a target has too few
+ * samples the maximum is used, so a slow link is never cut off before it's known. The histograms are decayed
+ * periodically, so the timeouts follow the changes of the targets.
+ *
+ * @author Wagner Macedo
+ */
+public class AdaptiveTimeouts {
+    static final int MIN_SAMPLES = 20;
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    // start of the dispatched requests
+    private final Map<Long, Dispatch> dispatched = new ConcurrentHashMap<>();
+
+    private volatile double factor = 3;
+    private volatile long minTimeout = TimeUnit.SECONDS.toMicros(1);
+    private volatile long maxTimeout = TimeUnit.MINUTES.toMicros(1);
+
+    public void configure(final double factor, final long minTimeout, final long maxTimeout, final TimeUnit unit) {
+        this.factor = factor;
+        this.minTimeout = unit.toMicros(minTimeout);
+        this.maxTimeout = Math.max(this.minTimeout, unit.toMicros(maxTimeout));
+    }
+
+    /**
+     * @return the timeout of requests to the target.
+     */
+    public long timeout(final String target, final TimeUnit unit) {
+        final LatencyHistogram histogram = (target != null) ? latencies.get(target) : null;
+        if (histogram == null || histogram.count() < MIN_SAMPLES) {
+            return unit.convert(maxTimeout, TimeUnit.MICROSECONDS);
+        }
+        final long timeout = (long) (histogram.percentile(99) * factor);
+        return unit.convert(Math.max(minTimeout, Math.min(maxTimeout, timeout)), TimeUnit.MICROSECONDS);
+    }
+
+    public long maxTimeout(final TimeUnit unit) {
+        return unit.convert(maxTimeout, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Notify a request with a reply to be waited is being dispatched to the target.
+     */
+    public void dispatched(final long sequence, final String target) {
+        if (target != null) {
+            dispatched.put(sequence, new Dispatch(target, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Notify the target answered the request, recording its latency.
+     */
+    public void completed(final long sequence) {
+        final Dispatch dispatch = dispatched.remove(sequence);
+        if (dispatch != null) {
+            histogram(dispatch.target).recordNanos(System.nanoTime() - dispatch.start);
+        }
+    }
+
+    /**
+     * Notify the target didn't answer the request within its timeout. The time waited is recorded as its latency,
+     * as the latency is at least that, so the timeout of a target slower than it grows instead of cutting every
+     * request off.
+     */
+    public void timedOut(final long sequence) {
+        completed(sequence);
+    }
+
+    /**
+     * Forget a dispatched request whose latency is unknown, because it was abandoned or failed.
+     */
+    public void abandoned(final long sequence) {
+        dispatched.remove(sequence);
+    }
+
+    /**
+     * Halve the samples of every target, so the older latencies weigh less.
+     */
+    public void decay() {
+        latencies.values().forEach(LatencyHistogram::decay);
+    }
+
+    private LatencyHistogram histogram(final String target) {
+        return latencies.computeIfAbsent(target, k -> Metrics.histogram("latency." + target));
+    }
+
+    private static final class Dispatch {
+        private final String target;
+        private final long start;
+
+        private Dispatch(final String target, final long start) {
+            this.target = target;
+            this.start = start;
+        }
+    }
+}
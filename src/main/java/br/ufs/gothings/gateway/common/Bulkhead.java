@@ -0,0 +1,130 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.util.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Quotas of requests a tenant, i.e. a source protocol, can have inside the gateway.
+ * <p>
+ * Each tenant has a limit of requests waiting in client plugins queues, optionally also per client identity, and a
+ * limit of dispatched requests still waiting for a reply. A value of 0 means no limit. The saturation of each quota
+ * is published in the metrics {@code "bulkhead.<name>.*"}.
+ *
+ * @author Wagner Macedo
+ */
+public class Bulkhead {
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final int maxQueuedPerClient;
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Map<String, Integer> queuedPerClient = new ConcurrentHashMap<>();
+    private final LongAdder rejected;
+
+    public Bulkhead(final String name, final int maxConcurrent, final int maxQueued, final int maxQueuedPerClient) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxQueuedPerClient = maxQueuedPerClient;
+
+        final String prefix = "bulkhead." + name;
+        rejected = Metrics.counter(prefix + ".rejected");
+        Metrics.gauge(prefix + ".concurrent", concurrent::get);
+        Metrics.gauge(prefix + ".queued", queued::get);
+        Metrics.gauge(prefix + ".saturation", () -> String.format("%.2f", saturation()));
+    }
+
+    /**
+     * Take a queue slot.
+     *
+     * @param client    the client identity, or null if unknown
+     * @return true if the slot was taken, false if the quota is exhausted
+     */
+    public boolean tryEnqueue(final String client) {
+        if (!tryIncrement(queued, maxQueued)) {
+            rejected.increment();
+            return false;
+        }
+        if (client != null && maxQueuedPerClient > 0) {
+            final boolean[] taken = {false};
+            queuedPerClient.compute(client, (k, n) -> {
+                final int current = (n == null) ? 0 : n;
+                if (current >= maxQueuedPerClient) {
+                    return n;
+                }
+                taken[0] = true;
+                return current + 1;
+            });
+            if (!taken[0]) {
+                queued.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Release the queue slot taken by {@link #tryEnqueue(String)}.
+     *
+     * @param client    the same client identity used to take the slot
+     */
+    public void dequeued(final String client) {
+        queued.decrementAndGet();
+        if (client != null && maxQueuedPerClient > 0) {
+            queuedPerClient.computeIfPresent(client, (k, n) -> n > 1 ? n - 1 : null);
+        }
+    }
+
+    /**
+     * Take a concurrency slot for a dispatched request.
+     *
+     * @return true if the slot was taken, false if the quota is exhausted
+     */
+    public boolean tryAcquire() {
+        if (!tryIncrement(concurrent, maxConcurrent)) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public void release() {
+        concurrent.decrementAndGet();
+    }
+
+    /**
+     * @return the highest used fraction of the quotas, or 0 if there is no limit.
+     */
+    public double saturation() {
+        final double c = maxConcurrent > 0 ? (double) concurrent.get() / maxConcurrent : 0;
+        final double q = maxQueued > 0 ? (double) queued.get() / maxQueued : 0;
+        return Math.max(c, q);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private static boolean tryIncrement(final AtomicInteger counter, final int max) {
+        if (max <= 0) {
+            counter.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            final int current = counter.get();
+            if (current >= max) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+}
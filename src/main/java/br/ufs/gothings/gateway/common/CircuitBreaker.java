@@ -0,0 +1,90 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.common.ErrorCode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker of a target.
+ * <p>
+ * The breaker opens after a number of consecutive failures, and while open every request is answered right away
+ * with the error of the last failure. After the open time, the breaker is half-open and lets a single probe
+ * request pass: if it succeeds the breaker closes, otherwise it opens again.
+ *
+ * @author Wagner Macedo
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    private final int failureThreshold;
+    private final long openTime;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openUntil;
+    private long probeSent;
+    private boolean probing = false;
+    private ErrorCode lastError = ErrorCode.TARGET_NOT_FOUND;
+
+    public CircuitBreaker(final int failureThreshold, final long openTime, final TimeUnit unit) {
+        this.failureThreshold = failureThreshold;
+        this.openTime = unit.toNanos(openTime);
+    }
+
+    /**
+     * @return true if a request can be sent to the target, false if it must fail fast.
+     */
+    public synchronized boolean allow() {
+        final long now = System.nanoTime();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openUntil < 0) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = false;
+            case HALF_OPEN:
+                // a new probe is sent if the previous one was lost
+                if (!probing || now - probeSent >= openTime) {
+                    probing = true;
+                    probeSent = now;
+                    return true;
+                }
+                return false;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    public synchronized void onFailure(final ErrorCode code) {
+        lastError = code;
+        failures++;
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openUntil = System.nanoTime() + openTime;
+            probing = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the error of the last failure, to be sent to the requests failing fast.
+     */
+    public synchronized ErrorCode getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,79 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.util.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The circuit breakers of all targets.
+ * <p>
+ * Only {@link ErrorCode#TARGET_NOT_FOUND} counts as a failure and {@link ErrorCode#DEADLINE_EXCEEDED} is not
+ * conclusive, any other outcome means the target is reachable. The state of each breaker is published in the metric
+ * {@code "breaker.<target>.state"}.
+ *
+ * @author Wagner Macedo
+ */
+public class CircuitBreakers {
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    // targets of the dispatched requests, to account the acks
+    private final Map<Long, String> dispatched = new ConcurrentHashMap<>();
+
+    private volatile int failureThreshold = 5;
+    private volatile long openTime = TimeUnit.SECONDS.toNanos(30);
+
+    public void configure(final int failureThreshold, final long openTime, final TimeUnit unit) {
+        this.failureThreshold = failureThreshold;
+        this.openTime = unit.toNanos(openTime);
+    }
+
+    public CircuitBreaker get(final String target) {
+        return breakers.computeIfAbsent(target, k -> {
+            final CircuitBreaker breaker = new CircuitBreaker(failureThreshold, openTime, TimeUnit.NANOSECONDS);
+            Metrics.gauge("breaker." + target + ".state", breaker::getState);
+            return breaker;
+        });
+    }
+
+    /**
+     * Notify a request with a reply to be waited is being dispatched to the target.
+     */
+    public void dispatched(final long sequence, final String target) {
+        dispatched.put(sequence, target);
+    }
+
+    public void onAck(final long sequence) {
+        final String target = dispatched.remove(sequence);
+        if (target != null) {
+            get(target).onSuccess();
+        }
+    }
+
+    public void onReply(final long sequence, final String target) {
+        dispatched.remove(sequence);
+        if (target != null) {
+            get(target).onSuccess();
+        }
+    }
+
+    public void onError(final long sequence, final String target, final ErrorCode code) {
+        dispatched.remove(sequence);
+        if (target == null) {
+            return;
+        }
+        if (code == ErrorCode.TARGET_NOT_FOUND) {
+            get(target).onFailure(code);
+        } else if (code != ErrorCode.DEADLINE_EXCEEDED) {
+            get(target).onSuccess();
+        }
+    }
+
+    /**
+     * Forget a dispatched request that won't be answered anymore.
+     */
+    public void abandoned(final long sequence) {
+        dispatched.remove(sequence);
+    }
+}
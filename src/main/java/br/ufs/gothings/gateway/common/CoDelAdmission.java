@@ -0,0 +1,76 @@
+package br.ufs.gothings.gateway.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control based on the controlled delay (CoDel) algorithm.
+ * <p>
+ * The queue sojourn time of every dispatched task is tracked. If during a whole {@code interval} no task waited
+ * less than {@code target}, then the queue is standing and considered overloaded: new tasks are not admitted, and
+ * queued tasks that already waited more than twice the target are shed instead of dispatched. The overload ends
+ * as soon as an interval has a sojourn below the target or the queue is found empty.
+ * <p>
+ * The sojourns are only known as the tasks leave the queue, so a worker stuck on a slow task would never find the
+ * queue standing. Thus the queue is overloaded too if it isn't empty and no task left it during a whole interval.
+ *
+ * @author Wagner Macedo
+ */
+public class CoDelAdmission {
+    private final long target;
+    private final long interval;
+
+    private long minSojourn = Long.MAX_VALUE;
+    private long intervalEnd;
+    // last time a task left the queue or the queue was found empty
+    private volatile long lastProgress;
+    private volatile boolean overloaded = false;
+
+    public CoDelAdmission(final long target, final long interval, final TimeUnit unit) {
+        this.target = unit.toNanos(target);
+        this.interval = unit.toNanos(interval);
+        this.lastProgress = System.nanoTime();
+        this.intervalEnd = this.lastProgress + this.interval;
+    }
+
+    /**
+     * Check if a new task can be queued.
+     *
+     * @param queueLength    number of tasks currently queued
+     * @return true if the task is admitted, false if it must fail fast
+     */
+    public boolean admit(final int queueLength) {
+        final long now = System.nanoTime();
+        if (queueLength == 0) {
+            overloaded = false;
+            lastProgress = now;
+            return true;
+        }
+        // the queued tasks waited at least since the last progress
+        if (!overloaded && now - lastProgress > interval) {
+            overloaded = true;
+        }
+        return !overloaded;
+    }
+
+    /**
+     * Account the sojourn of a task leaving the queue.
+     *
+     * @param sojourn    time the task waited in the queue, in nanoseconds
+     * @return true if the task must be dispatched, false if it must be shed
+     */
+    public synchronized boolean onDequeue(final long sojourn) {
+        final long now = System.nanoTime();
+        lastProgress = now;
+        minSojourn = Math.min(minSojourn, sojourn);
+        if (now - intervalEnd >= 0) {
+            overloaded = minSojourn > target;
+            minSojourn = Long.MAX_VALUE;
+            intervalEnd = now + interval;
+        }
+        return !(overloaded && sojourn > 2 * target);
+    }
+
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+}
@@ -0,0 +1,266 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.util.LatencyHistogram;
+import br.ufs.gothings.core.util.Metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
+
+/**
+ * READs to target groups which are hedged.
+ * <p>
+ * A READ is sent to the primary member of the group and, if it isn't answered after a percentile of the group
+ * latency, a copy is sent to a replica. The first reply wins and the other copy is lost: it's dropped if still
+ * queued, and its late reply is ignored. When a copy fails while the other can still answer, the error is
+ * swallowed, so the READ fails only if both copies fail. The latency of each group, from the READ to the winning
+ * reply, is recorded in the histogram {@code "latency.group.<group>"}.
+ *
+ * @author Wagner Macedo
+ */
+public class HedgedReads {
+    /** What to do with an error of a copy */
+    public enum Outcome {
+        /** the error is swallowed, the other copy may still answer */
+        WAIT,
+        /** the error is swallowed, but the copy to the replica must be sent right away */
+        HEDGE_NOW,
+        /** the READ failed */
+        FAIL,
+    }
+
+    static final int MIN_SAMPLES = 20;
+
+    private final Map<Long, Hedge> bySequence = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    // copies which lost the race, to be dropped before dispatch
+    private final Set<Long> lost = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private volatile double percentile = 95;
+    private volatile long defaultDelay = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * @param percentile      percentile of the group latency after which a READ is hedged
+     * @param defaultDelay    delay to hedge while the group latency is unknown
+     * @param unit            unit of the default delay
+     */
+    public void configure(final double percentile, final long defaultDelay, final TimeUnit unit) {
+        this.percentile = percentile;
+        this.defaultDelay = unit.toNanos(defaultDelay);
+    }
+
+    /**
+     * @return the delay to send the copy of a READ to the group.
+     */
+    public long delay(final String group, final TimeUnit unit) {
+        final LatencyHistogram histogram = latencies.get(group);
+        if (histogram == null || histogram.count() < MIN_SAMPLES) {
+            return unit.convert(defaultDelay, TimeUnit.NANOSECONDS);
+        }
+        return unit.convert(histogram.percentile(percentile), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Start hedging a READ, which is being sent to the primary member.
+     *
+     * @param request           the READ
+     * @param group             the target group
+     * @param replica           the member to send the copy
+     * @param targetProtocol    the protocol of the group
+     * @param sourceProtocol    the protocol of the requester
+     */
+    public Hedge start(final GwRequest request, final String group, final String replica,
+                       final String targetProtocol, final String sourceProtocol)
+    {
+        final Hedge hedge = new Hedge(request, group, replica, targetProtocol, sourceProtocol);
+        bySequence.put(request.getSequence(), hedge);
+        return hedge;
+    }
+
+    /**
+     * Create the copy of a READ to the replica.
+     *
+     * @param hedge       the hedged READ
+     * @param sequence    the sequence of the copy
+     * @return the copy, or null if the READ is done or the copy was already created.
+     */
+    public GwRequest copy(final Hedge hedge, final long sequence) {
+        final GwRequest copy;
+        synchronized (hedge) {
+            if (hedge.done || hedge.copySequence != 0) {
+                return null;
+            }
+            copy = new GwRequest(hedge.request.headers().copy(), null);
+            copy.headers().set(GW_TARGET, hedge.replica);
+            copy.setSequence(sequence);
+            hedge.copySequence = sequence;
+            hedge.inFlight++;
+            bySequence.put(sequence, hedge);
+        }
+        Metrics.counter("hedge." + hedge.group + ".sent").increment();
+        return copy;
+    }
+
+    public Hedge get(final long sequence) {
+        return bySequence.get(sequence);
+    }
+
+    /**
+     * Notify a copy of a READ was answered.
+     */
+    public void replied(final long sequence) {
+        if (lost.remove(sequence)) {
+            return;
+        }
+        final Hedge hedge = bySequence.get(sequence);
+        if (hedge == null) {
+            return;
+        }
+        synchronized (hedge) {
+            if (hedge.done) {
+                return;
+            }
+            finish(hedge);
+            final long other = (sequence == hedge.request.getSequence()) ? hedge.copySequence
+                                                                         : hedge.request.getSequence();
+            if (other != 0) {
+                lost.add(other);
+            }
+            if (sequence == hedge.copySequence) {
+                Metrics.counter("hedge." + hedge.group + ".won").increment();
+            }
+        }
+        latencies.computeIfAbsent(hedge.group, k -> Metrics.histogram("latency.group." + k))
+                .recordNanos(System.nanoTime() - hedge.start);
+    }
+
+    /**
+     * Notify a copy of a READ failed.
+     *
+     * @return what to do with the error.
+     */
+    public Outcome failed(final Hedge hedge, final long sequence) {
+        if (lost.remove(sequence)) {
+            return Outcome.WAIT;
+        }
+        synchronized (hedge) {
+            if (hedge.done) {
+                return Outcome.WAIT;
+            }
+            hedge.inFlight--;
+            if (hedge.copySequence == 0) {
+                return Outcome.HEDGE_NOW;
+            }
+            if (hedge.inFlight > 0) {
+                return Outcome.WAIT;
+            }
+            finish(hedge);
+            return Outcome.FAIL;
+        }
+    }
+
+    /**
+     * @return true if the copy of a READ lost the race, so it must not be dispatched.
+     */
+    public boolean isLost(final long sequence) {
+        return lost.remove(sequence);
+    }
+
+    /**
+     * Forget a READ that won't be answered anymore.
+     */
+    public void abandoned(final long sequence) {
+        lost.remove(sequence);
+        final Hedge hedge = bySequence.get(sequence);
+        if (hedge != null) {
+            synchronized (hedge) {
+                finish(hedge);
+            }
+        }
+    }
+
+    /**
+     * Finish a READ whose requester gave up.
+     *
+     * @param sequence    the sequence of the READ
+     * @return the sequence of its copy, to be cancelled too, or 0 if there is no copy.
+     */
+    public long cancel(final long sequence) {
+        final Hedge hedge = bySequence.get(sequence);
+        if (hedge == null) {
+            return 0;
+        }
+        synchronized (hedge) {
+            finish(hedge);
+            return hedge.copySequence;
+        }
+    }
+
+    public void decay() {
+        latencies.values().forEach(LatencyHistogram::decay);
+    }
+
+    private void finish(final Hedge hedge) {
+        hedge.done = true;
+        if (hedge.timer != null) {
+            hedge.timer.cancel(false);
+        }
+        bySequence.remove(hedge.request.getSequence());
+        if (hedge.copySequence != 0) {
+            bySequence.remove(hedge.copySequence);
+        }
+    }
+
+    public static final class Hedge {
+        private final GwRequest request;
+        private final String group;
+        private final String replica;
+        private final String targetProtocol;
+        private final String sourceProtocol;
+        private final long start = System.nanoTime();
+
+        private long copySequence = 0;
+        private int inFlight = 1;
+        private boolean done = false;
+        private Future<?> timer;
+
+        private Hedge(final GwRequest request, final String group, final String replica,
+                      final String targetProtocol, final String sourceProtocol)
+        {
+            this.request = request;
+            this.group = group;
+            this.replica = replica;
+            this.targetProtocol = targetProtocol;
+            this.sourceProtocol = sourceProtocol;
+        }
+
+        public GwRequest getRequest() {
+            return request;
+        }
+
+        public String getTargetProtocol() {
+            return targetProtocol;
+        }
+
+        public String getSourceProtocol() {
+            return sourceProtocol;
+        }
+
+        /**
+         * Set the timer which sends the copy, cancelled when the READ is done.
+         */
+        public synchronized void setTimer(final Future<?> timer) {
+            if (done) {
+                timer.cancel(false);
+            } else {
+                this.timer = timer;
+            }
+        }
+    }
+}
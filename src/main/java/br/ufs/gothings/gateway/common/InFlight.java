@@ -0,0 +1,71 @@
+package br.ufs.gothings.gateway.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests being dispatched to client plugins, for cancellation.
+ * <p>
+ * A request cancelled while queued is marked, so it's dropped when its turn to be dispatched comes. A request
+ * cancelled while dispatched has its owner returned, to abort it. Marks of requests that never reach the dispatch
+ * are purged after a while.
+ *
+ * @param <T> the owner of the dispatched requests
+ * @author Wagner Macedo
+ */
+public class InFlight<T> {
+    private final Map<Long, Object> requests = new ConcurrentHashMap<>();
+
+    /**
+     * Notify the request is being dispatched.
+     *
+     * @param sequence    the sequence of the request
+     * @param owner       where the request is being dispatched
+     * @return true if the request can be dispatched, false if it was cancelled.
+     */
+    public boolean dispatching(final long sequence, final T owner) {
+        final Object prev = requests.putIfAbsent(sequence, owner);
+        if (prev instanceof Cancelled) {
+            requests.remove(sequence);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Notify the dispatch of the request returned.
+     */
+    public void dispatched(final long sequence) {
+        requests.computeIfPresent(sequence, (k, v) -> (v instanceof Cancelled) ? v : null);
+    }
+
+    /**
+     * Cancel a request.
+     *
+     * @param sequence    the sequence of the request
+     * @return the owner of the request if it's being dispatched, or null if it's marked to not be dispatched.
+     */
+    @SuppressWarnings("unchecked")
+    public T cancel(final long sequence) {
+        final Object prev = requests.putIfAbsent(sequence, new Cancelled());
+        if (prev != null && !(prev instanceof Cancelled)) {
+            requests.remove(sequence, prev);
+            return (T) prev;
+        }
+        return null;
+    }
+
+    /**
+     * Remove the marks of cancelled requests older than the given age.
+     */
+    public void purge(final long age, final TimeUnit unit) {
+        final long now = System.nanoTime();
+        final long nanos = unit.toNanos(age);
+        requests.values().removeIf(v -> v instanceof Cancelled && now - ((Cancelled) v).time > nanos);
+    }
+
+    private static final class Cancelled {
+        private final long time = System.nanoTime();
+    }
+}
@@ -0,0 +1,223 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.message.GwMessage;
+import br.ufs.gothings.core.util.LatencyHistogram;
+import br.ufs.gothings.core.util.Metrics;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_QOS;
+
+/**
+ * Single thread executor with priority lanes.
+ * <p>
+ * Tasks in the {@link Lane#CONTROL} lane overtake the ones in the {@link Lane#BULK} lane, but after
+ * {@code controlBurst} consecutive control tasks a waiting bulk task is run, so the bulk lane never starves.
+ * <p>
+ * The time each task spends from submission to completion is recorded per lane in the metrics
+ * {@code "lane.<name>.<LANE>"}.
+ *
+ * @author Wagner Macedo
+ */
+public class LaneExecutor {
+    private static final Logger logger = LogManager.getFormatterLogger(LaneExecutor.class);
+
+    public enum Lane {
+        CONTROL,
+        BULK;
+
+        /**
+         * Choose the lane of a message by its QoS. Only QoS 0 messages, i.e. non-confirmable or at most once, go
+         * to the bulk lane. Messages without QoS are considered confirmable.
+         */
+        public static Lane of(final GwMessage message) {
+            return message.headers().get(GW_QOS, 1) == 0 ? BULK : CONTROL;
+        }
+    }
+
+    private final String name;
+    private final int controlBurst;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+    private final Map<Lane, Queue<Task>> queues = new EnumMap<>(Lane.class);
+    private final Map<Lane, LatencyHistogram> latencies = new EnumMap<>(Lane.class);
+
+    private int controlStreak = 0;
+    private boolean shutdown = false;
+    private boolean finished = false;
+
+    public LaneExecutor(final String name, final int controlBurst) {
+        this.name = name;
+        this.controlBurst = controlBurst;
+
+        for (final Lane lane : Lane.values()) {
+            queues.put(lane, new ArrayDeque<>());
+            latencies.put(lane, Metrics.histogram("lane." + name + "." + lane));
+            Metrics.gauge("lane." + name + "." + lane + ".queued", () -> size(lane));
+        }
+
+        new BasicThreadFactory.Builder()
+                .namingPattern(name)
+                .build()
+                .newThread(this::work)
+                .start();
+    }
+
+    public void execute(final Runnable command) {
+        execute(Lane.CONTROL, command);
+    }
+
+    public void execute(final Lane lane, final Runnable command) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException(name + " executor is shut down");
+            }
+            queues.get(lane).add(new Task(lane, command));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            int size = 0;
+            for (final Queue<Task> queue : queues.values()) {
+                size += queue.size();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size(final Lane lane) {
+        lock.lock();
+        try {
+            return queues.get(lane).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting tasks. Already queued tasks are still run.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!finished) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        try {
+            Task task;
+            while ((task = take()) != null) {
+                // as a ThreadPoolExecutor, interrupts are for the running task only
+                Thread.interrupted();
+                try {
+                    task.command.run();
+                } catch (Throwable e) {
+                    // the worker is the only one, so it outlives any failure of a plugin
+                    logger.error("task failed on %s executor", name, e);
+                }
+                latencies.get(task.lane).recordNanos(System.nanoTime() - task.submitted);
+            }
+        } finally {
+            lock.lock();
+            try {
+                finished = true;
+                terminated.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            for (final Lane lane : Lane.values()) {
+                Metrics.remove("lane." + name + "." + lane + ".queued");
+            }
+        }
+    }
+
+    private Task take() {
+        lock.lock();
+        try {
+            while (true) {
+                final Queue<Task> control = queues.get(Lane.CONTROL);
+                final Queue<Task> bulk = queues.get(Lane.BULK);
+
+                if (!control.isEmpty() && (bulk.isEmpty() || controlStreak < controlBurst)) {
+                    controlStreak++;
+                    return control.poll();
+                }
+                if (!bulk.isEmpty()) {
+                    controlStreak = 0;
+                    return bulk.poll();
+                }
+                if (shutdown) {
+                    return null;
+                }
+                try {
+                    notEmpty.await();
+                } catch (InterruptedException ignored) {
+                    // only shutdown with an empty queue ends the worker
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Task {
+        private final Lane lane;
+        private final Runnable command;
+        private final long submitted = System.nanoTime();
+
+        private Task(final Lane lane, final Runnable command) {
+            this.lane = lane;
+            this.command = command;
+        }
+    }
+}
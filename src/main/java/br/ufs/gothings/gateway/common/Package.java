@@ -12,6 +12,7 @@ public class Package {
     private GwMessage message;
     private String sourceProtocol;
     private String targetProtocol;
+    private String targetGroup;
     private Map<String, long[]> replyTo;
 
     public GwMessage getMessage() {
@@ -38,6 +39,17 @@ public class Package {
         this.targetProtocol = targetProtocol;
     }
 
+    /**
+     * @return the target group of the request, or null if its target is not a group.
+     */
+    public String getTargetGroup() {
+        return targetGroup;
+    }
+
+    public void setTargetGroup(final String targetGroup) {
+        this.targetGroup = targetGroup;
+    }
+
     public Map<String, long[]> getReplyTo() {
         return replyTo;
     }
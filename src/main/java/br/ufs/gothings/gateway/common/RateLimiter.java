@@ -0,0 +1,170 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.util.Metrics;
+import br.ufs.gothings.core.util.TokenBucket;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_OPERATION;
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_PATH;
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
+
+/**
+ * Rate limits of requests per target, with a token bucket for each target.
+ * <p>
+ * Requests over the limit are delayed until a token is available, unless the delay would be longer than the
+ * maximum, in which case they are rejected. A READ over the limit to a path which already has a delayed READ is
+ * coalesced into it, as the reply of the delayed READ is sent to all the requests reading the same path.
+ *
+ * @author Wagner Macedo
+ */
+public class RateLimiter {
+    /** The request must not be dispatched, it's over the limit */
+    public static final long REJECTED = -1;
+
+    /** The request must not be dispatched, it will be replied along with another request */
+    public static final long COALESCED = -2;
+
+    private volatile Limit defaultLimit = null;
+    private volatile long maxDelay = TimeUnit.SECONDS.toNanos(10);
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    // delayed READs by target and path, with the requests coalesced into them
+    private final Map<String, List<GwRequest>> delayedReads = new ConcurrentHashMap<>();
+    // dispatched READs by sequence, with the requests coalesced into them
+    private final Map<Long, List<GwRequest>> coalesced = new ConcurrentHashMap<>();
+
+    /**
+     * Set the limit of targets without a specific limit.
+     *
+     * @param rate     requests per second, or 0 for no limit
+     * @param burst    number of requests that can be sent at once
+     */
+    public void setDefaultLimit(final double rate, final int burst) {
+        defaultLimit = (rate > 0) ? new Limit(rate, burst) : null;
+        buckets.clear();
+    }
+
+    /**
+     * Set the limit of a target, replacing its previous limit.
+     *
+     * @param target    the target, as in the {@code GW_TARGET} header
+     * @param rate      requests per second, or 0 for no limit
+     * @param burst     number of requests that can be sent at once
+     */
+    public void setLimit(final String target, final double rate, final int burst) {
+        limits.put(target, new Limit(rate, burst));
+        buckets.remove(target);
+    }
+
+    public void setMaxDelay(final long maxDelay, final TimeUnit unit) {
+        this.maxDelay = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * Acquire the permission to dispatch a request.
+     *
+     * @param request    the request to dispatch
+     * @return the nanoseconds to wait before dispatching, 0 to dispatch right away, {@link #REJECTED} or
+     *         {@link #COALESCED}.
+     */
+    public long acquire(final GwRequest request) {
+        final GwHeaders h = request.headers();
+        final String target = h.get(GW_TARGET);
+        final TokenBucket bucket = getBucket(target);
+        if (bucket == null) {
+            return 0;
+        }
+
+        final boolean isRead = h.get(GW_OPERATION) == Operation.READ;
+        if (isRead) {
+            final List<GwRequest> followers = delayedReads.computeIfPresent(readKey(h), (k, list) -> {
+                list.add(request);
+                return list;
+            });
+            if (followers != null) {
+                Metrics.counter("ratelimit." + target + ".coalesced").increment();
+                return COALESCED;
+            }
+        }
+
+        final long wait = bucket.reserve(maxDelay);
+        if (wait < 0) {
+            Metrics.counter("ratelimit." + target + ".rejected").increment();
+            return REJECTED;
+        }
+        if (wait > 0) {
+            Metrics.counter("ratelimit." + target + ".delayed").increment();
+            if (isRead) {
+                delayedReads.putIfAbsent(readKey(h), new ArrayList<>());
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Notify the request is being dispatched, after the delay returned by {@link #acquire(GwRequest)}.
+     *
+     * @param request    the dispatched request
+     */
+    public void dispatched(final GwRequest request) {
+        final GwHeaders h = request.headers();
+        if (h.get(GW_OPERATION) == Operation.READ) {
+            final List<GwRequest> followers = delayedReads.remove(readKey(h));
+            if (followers != null && !followers.isEmpty()) {
+                coalesced.put(request.getSequence(), followers);
+            }
+        }
+    }
+
+    /**
+     * Notify the request was answered.
+     *
+     * @param sequence    the sequence of the answered request
+     * @return the requests coalesced into it.
+     */
+    public List<GwRequest> completed(final long sequence) {
+        final List<GwRequest> followers = coalesced.remove(sequence);
+        return followers != null ? followers : Collections.emptyList();
+    }
+
+    /**
+     * @param sequence    the sequence of a dispatched request
+     * @return true if other requests were coalesced into it.
+     */
+    public boolean hasFollowers(final long sequence) {
+        return coalesced.containsKey(sequence);
+    }
+
+    private TokenBucket getBucket(final String target) {
+        final Limit limit = limits.getOrDefault(target, defaultLimit);
+        if (limit == null || limit.rate <= 0) {
+            return null;
+        }
+        return buckets.computeIfAbsent(target, k -> new TokenBucket(limit.rate, limit.burst));
+    }
+
+    private static String readKey(final GwHeaders h) {
+        return h.get(GW_TARGET) + h.get(GW_PATH);
+    }
+
+    private static final class Limit {
+        private final double rate;
+        private final int burst;
+
+        private Limit(final double rate, final int burst) {
+            this.rate = rate;
+            this.burst = Math.max(1, burst);
+        }
+    }
+}
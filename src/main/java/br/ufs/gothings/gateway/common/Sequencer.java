@@ -3,24 +3,84 @@ package br.ufs.gothings.gateway.common;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Generator of message sequences.
+ * <p>
+ * Sequences are split in two partitions: observe sequences in {@code [1, 2^32)} and normal sequences in
+ * {@code [2^32, Long.MAX_VALUE]}. Each partition wraps around to its first value when exhausted.
+ * <p>
+ * To avoid contention on the shared counters, every thread reserves a block of sequences at once and hands them
+ * out locally, so the shared counter is touched only once per block.
+ *
  * @author Wagner Macedo
  */
 public class Sequencer {
     private static final long NORMAL_INIT = 1L << 32;
-    private static final int OBSERVE_INIT = 1;
+    private static final long NORMAL_LAST = Long.MAX_VALUE;
+    private static final long OBSERVE_INIT = 1;
+    private static final long OBSERVE_LAST = NORMAL_INIT - 1;
 
-    private final AtomicLong normalSequence = new AtomicLong(NORMAL_INIT);
-    private final AtomicLong observeSequence = new AtomicLong(OBSERVE_INIT);
+    static final int NORMAL_BLOCK_SIZE = 1024;
+    static final int OBSERVE_BLOCK_SIZE = 64;
+
+    private final Partition normal;
+    private final Partition observe;
+
+    public Sequencer() {
+        this(NORMAL_INIT, OBSERVE_INIT);
+    }
+
+    Sequencer(final long normalStart, final long observeStart) {
+        normal = new Partition(NORMAL_INIT, NORMAL_LAST, normalStart, NORMAL_BLOCK_SIZE);
+        observe = new Partition(OBSERVE_INIT, OBSERVE_LAST, observeStart, OBSERVE_BLOCK_SIZE);
+    }
 
     public long nextNormal() {
-        return normalSequence.getAndUpdate(seq -> ++seq == 0 ? NORMAL_INIT : seq);
+        return normal.next();
     }
 
     public long nextObserve() {
-        return observeSequence.getAndUpdate(seq -> ++seq == NORMAL_INIT ? OBSERVE_INIT : seq);
+        return observe.next();
     }
 
     public static boolean isObserve(final long sequence) {
         return sequence < NORMAL_INIT;
     }
+
+    private static final class Partition {
+        private final long first;
+        private final long last;
+        private final int blockSize;
+
+        // start of the next block to be reserved
+        private final AtomicLong blockStart;
+        private final ThreadLocal<Block> localBlock = ThreadLocal.withInitial(Block::new);
+
+        private Partition(final long first, final long last, final long start, final int blockSize) {
+            this.first = first;
+            this.last = last;
+            this.blockSize = blockSize;
+            this.blockStart = new AtomicLong(start);
+        }
+
+        private long next() {
+            final Block block = localBlock.get();
+            if (block.remaining == 0) {
+                reserve(block);
+            }
+            block.remaining--;
+            return block.next++;
+        }
+
+        private void reserve(final Block block) {
+            final long start = blockStart.getAndUpdate(s -> (last - s < blockSize) ? first : s + blockSize);
+            block.next = start;
+            // last block before the wraparound may be shorter than blockSize
+            block.remaining = (last - start < blockSize) ? (int) (last - start + 1) : blockSize;
+        }
+    }
+
+    private static final class Block {
+        private long next;
+        private int remaining;
+    }
 }
@@ -0,0 +1,51 @@
+package br.ufs.gothings.gateway.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Logical targets mapped to several physical authorities.
+ * <p>
+ * A request to a group is sent to its first member, the primary, while the other members are replicas of it. A
+ * member belongs to a single group, so a reply of a member is also a reply of its group.
+ *
+ * @author Wagner Macedo
+ */
+public class TargetGroups {
+    private final Map<String, List<String>> groups = new ConcurrentHashMap<>();
+    private final Map<String, String> memberOf = new ConcurrentHashMap<>();
+
+    /**
+     * Set the members of a group, replacing its previous members.
+     *
+     * @param group      the logical target
+     * @param members    the physical authorities, the primary first
+     */
+    public void set(final String group, final List<String> members) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("group " + group + " has no members");
+        }
+        final List<String> old = groups.put(group, Collections.unmodifiableList(new ArrayList<>(members)));
+        if (old != null) {
+            old.forEach(member -> memberOf.remove(member, group));
+        }
+        members.forEach(member -> memberOf.put(member, group));
+    }
+
+    /**
+     * @return the members of the group, or null if the target is not a group.
+     */
+    public List<String> members(final String group) {
+        return groups.get(group);
+    }
+
+    /**
+     * @return the group of a member, or null if the target is not a member of a group.
+     */
+    public String groupOf(final String member) {
+        return memberOf.get(member);
+    }
+}
@@ -1,5 +1,6 @@
 package br.ufs.gothings.plugins.coap;
 
+import br.ufs.gothings.core.Settings;
 import br.ufs.gothings.core.common.ErrorCode;
 import br.ufs.gothings.core.message.GwError;
 import br.ufs.gothings.core.message.GwReply;
@@ -7,14 +8,21 @@ import br.ufs.gothings.core.message.GwRequest;
 import br.ufs.gothings.core.message.headers.GwHeaders;
 import br.ufs.gothings.core.message.headers.Operation;
 import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.util.Deadline;
 import br.ufs.gothings.core.util.Polling;
+import br.ufs.gothings.core.util.RetryPolicy;
 import org.eclipse.californium.core.CoapClient;
 import org.eclipse.californium.core.CoapResponse;
 import org.eclipse.californium.core.coap.*;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static br.ufs.gothings.core.message.headers.HeaderNames.*;
@@ -23,17 +31,35 @@ import static br.ufs.gothings.core.message.headers.HeaderNames.*;
  * @author Wagner Macedo
  */
 public class CaliforniumClient {
+    // observe relations lost are registered again with this policy, before giving up with an error
+    private static final RetryPolicy REREGISTRATION = new RetryPolicy(1, 300, TimeUnit.SECONDS, 8, 10, 20);
+
     private ReplyLink replyLink;
 
     private ConcurrentMap<String, Request> observers;
     private Polling polling;
 
-    public void start(final ReplyLink replyLink) {
+    // observe requests waiting to be registered again, and the attempts made since the last notification
+    private ConcurrentMap<String, GwRequest> reregistering;
+    private ConcurrentMap<String, Integer> attempts;
+    private ScheduledExecutorService retrier;
+
+    // requests being exchanged, to be cancelled when nobody waits their replies anymore
+    private final ConcurrentMap<Long, Request> executing = new ConcurrentHashMap<>();
+
+    public void start(final ReplyLink replyLink, final Settings settings) {
         this.replyLink = replyLink;
         this.observers = new ConcurrentHashMap<>();
-        this.polling = new Polling(
-                dst -> sendGET(dst.getRequest()),
+        this.reregistering = new ConcurrentHashMap<>();
+        this.attempts = new ConcurrentHashMap<>();
+        this.retrier = Executors.newSingleThreadScheduledExecutor();
+        this.polling = new Polling("coap",
+                dst -> version(sendGET(dst.getRequest())),
                 5, TimeUnit.MINUTES);
+        this.polling.setIntervalBounds(
+                settings.get(Polling.MIN_INTERVAL, Polling.DEFAULT_MIN_INTERVAL_SECONDS),
+                settings.get(Polling.MAX_INTERVAL, Polling.DEFAULT_MAX_INTERVAL_SECONDS),
+                TimeUnit.SECONDS);
         this.polling.start();
     }
 
@@ -41,6 +67,8 @@ public class CaliforniumClient {
         this.replyLink = null;
         this.polling.stop();
         this.polling = null;
+        this.retrier.shutdownNow();
+        this.retrier = null;
     }
 
     public void sendRequest(final GwRequest request) {
@@ -55,6 +83,8 @@ public class CaliforniumClient {
                 return;
             case UNOBSERVE:
                 final String uri = createURI(h);
+                reregistering.remove(uri);
+                attempts.remove(uri);
                 observers.compute(uri,
                         (k, req) -> {
                             if (req == null) {
@@ -103,7 +133,10 @@ public class CaliforniumClient {
         replyLink.ack(request.getSequence());
     }
 
-    private void sendGET(final GwRequest request) {
+    /**
+     * @return the response of the target, or null if an error was sent.
+     */
+    private CoapResponse sendGET(final GwRequest request) {
         final GwHeaders h = request.headers();
         final Request coapRequest = Request.newGet();
 
@@ -121,27 +154,87 @@ public class CaliforniumClient {
         }
 
         // Get CoAP response asynchronously
+        final String uri = createURI(h);
         coapRequest.addMessageObserver(new MessageObserverAdapter() {
             @Override
             public void onResponse(final Response response) {
                 final GwReply reply = new GwReply(request);
                 reply.payload().set(response.getPayload());
                 replyLink.send(reply);
+
+                // a notification without the observe option means the target ended the relation
+                if (response.getOptions().hasObserve()) {
+                    attempts.remove(uri);
+                } else {
+                    relationLost();
+                }
+            }
+
+            @Override
+            public void onReject() {
+                relationLost();
+            }
+
+            @Override
+            public void onTimeout() {
+                relationLost();
+            }
+
+            private void relationLost() {
+                if (observers.remove(uri, coapRequest)) {
+                    reregister(uri, request);
+                }
             }
         });
 
         final CoapResponse coapResponse = getCoapResponse(coapRequest, request);
         if (coapResponse == null) {
-            return;
+            return null;
         }
 
         if (coapResponse.getOptions().hasObserve()) {
-            final String uri = createURI(h);
             observers.put(uri, coapRequest);
         } else {
             coapRequest.cancel();
             polling.add(request, false);
         }
+        return coapResponse;
+    }
+
+    /**
+     * @return the version of a polled resource: its ETag if any, or the hash of the payload.
+     */
+    private static Object version(final CoapResponse response) {
+        if (response == null) {
+            return null;
+        }
+        final List<byte[]> etags = response.getOptions().getETags();
+        return !etags.isEmpty() ? ByteBuffer.wrap(etags.get(0)) : Arrays.hashCode(response.getPayload());
+    }
+
+    private void reregister(final String uri, final GwRequest request) {
+        final int attempt = attempts.merge(uri, 1, Integer::sum) - 1;
+        final long delay = REREGISTRATION.nextDelay(attempt, TimeUnit.MILLISECONDS);
+        if (delay < 0) {
+            attempts.remove(uri);
+            replyLink.sendError(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
+            return;
+        }
+
+        reregistering.put(uri, request);
+        retrier.schedule(() -> {
+            // skip if unobserved in the meantime
+            if (reregistering.remove(uri, request)) {
+                sendGET(request);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public void cancelRequest(final long sequence) {
+        final Request coapRequest = executing.remove(sequence);
+        if (coapRequest != null) {
+            coapRequest.cancel();
+        }
     }
 
     private static void setCoapQoS(final Request coapRequest, final GwHeaders h) {
@@ -152,9 +245,34 @@ public class CaliforniumClient {
     private CoapResponse getCoapResponse(final Request coapRequest, final GwRequest request) {
         final CoapClient coapClient = new CoapClient(createURI(request.headers()));
 
-        final CoapResponse coapResponse = coapClient.advanced(coapRequest);
+        // Don't work for a requester which gave up, and don't outlive the requester otherwise
+        final long remaining = Deadline.remaining(request.headers(), TimeUnit.MILLISECONDS);
+        if (remaining == 0) {
+            replyLink.sendError(new GwError(request, ErrorCode.DEADLINE_EXCEEDED));
+            return null;
+        }
+        if (remaining != Long.MAX_VALUE) {
+            coapClient.setTimeout(remaining);
+        }
+
+        final CoapResponse coapResponse;
+        executing.put(request.getSequence(), coapRequest);
+        try {
+            coapResponse = coapClient.advanced(coapRequest);
+        } finally {
+            executing.remove(request.getSequence(), coapRequest);
+        }
+        // cancelled, nobody waits for an error
+        if (coapRequest.isCanceled() && coapResponse == null) {
+            return null;
+        }
+        // no response means the target didn't answer within the exchange lifetime or the deadline, which is the
+        // timeout of the target once dispatched
         if (coapResponse == null) {
-            replyLink.sendError(new GwError(request, ErrorCode.OTHER));
+            if (Deadline.isExpired(request.headers())) {
+                coapRequest.cancel();
+            }
+            replyLink.sendError(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
             return null;
         }
 
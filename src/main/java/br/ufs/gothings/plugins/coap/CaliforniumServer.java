@@ -10,6 +10,7 @@ import br.ufs.gothings.core.message.headers.Operation;
 import br.ufs.gothings.core.plugin.FutureReply;
 import br.ufs.gothings.core.plugin.ReplyListener;
 import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Deadline;
 import org.eclipse.californium.core.CoapResource;
 import org.eclipse.californium.core.CoapServer;
 import org.eclipse.californium.core.coap.CoAP;
@@ -33,6 +34,9 @@ import static br.ufs.gothings.core.message.headers.HeaderNames.*;
  * @author Wagner Macedo
  */
 public class CaliforniumServer {
+    // how long a client waits for the gateway reply, unless the gateway sets another deadline
+    private static final long REPLY_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
     private CoapServer server;
     private RequestLink requestLink;
 
@@ -80,6 +84,7 @@ public class CaliforniumServer {
             h.set(GW_PATH, uri);
             final CoAP.Type type = exchange.getRequest().getType();
             h.set(GW_QOS, type == CoAP.Type.CON ? 1 : 0);
+            h.set(GW_CLIENT_ID, ex.getSourceAddress().getHostAddress() + ":" + ex.getSourcePort());
 
             // Set headers according to the request code
             switch (code) {
@@ -106,7 +111,7 @@ public class CaliforniumServer {
             }
 
             // Internal request
-            final GwReply gw_reply = sendInternalRequest(gw_request, ex, 1, TimeUnit.MINUTES);
+            final GwReply gw_reply = sendInternalRequest(gw_request, ex, REPLY_TIMEOUT, TimeUnit.MILLISECONDS);
             if (gw_reply == null) {
                 return;
             }
@@ -116,10 +121,16 @@ public class CaliforniumServer {
         }
 
         private GwReply sendInternalRequest(final GwRequest request, final CoapExchange ex,
-                                            final int timeout, final TimeUnit minutes) {
+                                            final long timeout, final TimeUnit unit) {
+            // observe requests are answered for as long as the relation lasts, so they have no deadline
+            final boolean observe = request.headers().get(GW_OPERATION) == Operation.OBSERVE;
+            if (!observe) {
+                Deadline.set(request.headers(), timeout, unit);
+            }
+
             final FutureReply future = requestLink.send(request);
             try {
-                if (request.headers().get(GW_OPERATION) == Operation.OBSERVE) {
+                if (observe) {
                     future.setListener(new ReplyListener() {
                         @Override
                         public void onReply(final GwReply reply) {
@@ -132,11 +143,14 @@ public class CaliforniumServer {
                         }
                     });
                 } else {
-                    return future.get(timeout, minutes);
+                    return future.get(Deadline.remaining(request.headers(), unit), unit);
                 }
             }
-            // handle possible errors
-            catch (InterruptedException | ExecutionException | TimeoutException e) {
+            // handle possible errors, cancelling the request if nobody will wait its reply
+            catch (InterruptedException | TimeoutException e) {
+                future.cancel(true);
+                sendExternalError(e, ex);
+            } catch (ExecutionException e) {
                 sendExternalError(e, ex);
             }
             return null;
@@ -189,6 +203,15 @@ public class CaliforniumServer {
                     case PATH_NOT_FOUND:
                         exchange.respond(ResponseCode.NOT_FOUND);
                         return;
+                    case OVERLOADED:
+                        exchange.respond(ResponseCode.SERVICE_UNAVAILABLE);
+                        return;
+                    case DEADLINE_EXCEEDED:
+                        exchange.respond(ResponseCode.GATEWAY_TIMEOUT);
+                        return;
+                    case PAYLOAD_TOO_LARGE:
+                        exchange.respond(ResponseCode.BAD_GATEWAY);
+                        return;
                 }
             }
             exchange.respond(ResponseCode.INTERNAL_SERVER_ERROR);
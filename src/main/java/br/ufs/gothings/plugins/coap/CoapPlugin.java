@@ -6,6 +6,7 @@ import br.ufs.gothings.core.plugin.PluginClient;
 import br.ufs.gothings.core.plugin.PluginServer;
 import br.ufs.gothings.core.plugin.ReplyLink;
 import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Polling;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -28,12 +29,14 @@ public class CoapPlugin implements PluginClient, PluginServer {
         client = new CaliforniumClient();
         server = new CaliforniumServer();
         settings = new Settings(started);
+        settings.registerKey(Polling.MIN_INTERVAL, Integer.class, seconds -> seconds > 0);
+        settings.registerKey(Polling.MAX_INTERVAL, Integer.class, seconds -> seconds > 0);
     }
 
     @Override
     public void start() {
         if (started.compareAndSet(false, true)) {
-            client.start(replyLink);
+            client.start(replyLink, settings);
             server.start(requestLink, settings);
         }
     }
@@ -63,6 +66,11 @@ public class CoapPlugin implements PluginClient, PluginServer {
         client.sendRequest(request);
     }
 
+    @Override
+    public void cancelRequest(final long sequence) {
+        client.cancelRequest(sequence);
+    }
+
     @Override
     public void setUp(final ReplyLink replyLink) {
         if (started.get()) {
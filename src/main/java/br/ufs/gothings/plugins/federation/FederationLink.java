@@ -0,0 +1,342 @@
+package br.ufs.gothings.plugins.federation;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.util.Metrics;
+import br.ufs.gothings.plugins.gwnative.NativeFrame;
+import br.ufs.gothings.plugins.gwnative.NativeFrameCodec;
+import br.ufs.gothings.plugins.gwnative.NativePlugin;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.concurrent.Future;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+
+/**
+ * The link to a remote gateway: a single connection to its native server, where all the requests and observes to
+ * it are multiplexed.
+ * <p>
+ * An observe of a path already observed through the link doesn't reach the remote gateway: the local subscribers
+ * share the remote observe, which ends when the last of them leaves. As the gateway sends a reply to all the
+ * subscribers of its path, each notification is passed once. A new subscriber is answered at once with the last
+ * notification, which the subscribers already there get again, marked as not modified.
+ * <p>
+ * The connection is opened by the first request. While there are observes, a lost connection is opened again,
+ * waiting longer after each failure, and the observes are sent again. The requests waiting a reply when the
+ * connection is lost get an error, as they may have reached the remote gateway or not.
+ * <p>
+ * The state of the link is only accessed by its event loop, so the methods called by other threads just schedule
+ * their work on it.
+ *
+ * @author Wagner Macedo
+ */
+class FederationLink {
+    private static final Logger logger = LogManager.getFormatterLogger(FederationLink.class);
+
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final String target;
+    private final InetSocketAddress address;
+    private final EventLoop loop;
+    private final Bootstrap bootstrap;
+    private final ReplyLink replyLink;
+
+    // requests waiting a reply, by sequence
+    private final Map<Long, GwRequest> pending = new HashMap<>();
+    // remote observes, by path and by id, and the remote observe of each local subscriber
+    private final Map<String, RemoteObserve> observesByPath = new HashMap<>();
+    private final Map<Long, RemoteObserve> observesById = new HashMap<>();
+    private final Map<Long, RemoteObserve> subscribers = new HashMap<>();
+
+    private Channel channel;
+    private boolean connecting = false;
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+    private long backoff = MIN_BACKOFF_MILLIS;
+
+    FederationLink(final String target, final EventLoop loop, final Bootstrap bootstrap, final int maxFrameLength,
+                   final ReplyLink replyLink)
+    {
+        this.target = target;
+        this.address = NativePlugin.address(target);
+        this.loop = loop;
+        this.replyLink = replyLink;
+        this.bootstrap = bootstrap.clone()
+                .group(loop)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(final SocketChannel ch) {
+                        NativeFrameCodec.initPipeline(ch.pipeline(), maxFrameLength);
+                        ch.pipeline().addLast(new Handler());
+                    }
+                });
+    }
+
+    void send(final GwRequest request) {
+        loop.execute(() -> {
+            switch (request.headers().get(GW_OPERATION)) {
+                case OBSERVE:
+                    observe(request);
+                    break;
+                case UNOBSERVE:
+                    unsubscribe(request.getSequence());
+                    break;
+                default:
+                    pending.put(request.getSequence(), request);
+                    write(NativeFrame.request(request.getSequence(), request));
+            }
+        });
+    }
+
+    /**
+     * Stop waiting the reply of a request, or the notifications of an observe, if sent through this link.
+     */
+    void cancel(final long sequence) {
+        loop.execute(() -> {
+            if (pending.remove(sequence) != null) {
+                write(NativeFrame.cancel(sequence));
+            } else {
+                unsubscribe(sequence);
+            }
+        });
+    }
+
+    Future<?> close() {
+        return loop.submit(() -> {
+            closed = true;
+            pending.clear();
+            observesByPath.clear();
+            observesById.clear();
+            subscribers.clear();
+            if (channel != null) {
+                channel.close();
+            }
+        });
+    }
+
+    private void observe(final GwRequest request) {
+        final long sequence = request.getSequence();
+        final String path = request.headers().get(GW_PATH);
+        RemoteObserve remote = observesByPath.get(path);
+        if (remote != null) {
+            Metrics.counter("federation.observes.shared").increment();
+            // an observe is answered with the current state, which the remote gateway already sent
+            if (remote.last != null) {
+                final GwReply current = new GwReply(remote.last.headers().copy(), remote.last.payload().copy(),
+                        sequence);
+                current.headers().set(GW_CACHE_MODIFIED, false);
+                replyLink.send(current);
+            }
+        } else {
+            // the id of the remote observe is the sequence of its first subscriber
+            remote = new RemoteObserve(sequence, request);
+            observesByPath.put(path, remote);
+            observesById.put(sequence, remote);
+            write(NativeFrame.request(sequence, request));
+        }
+        remote.subscribers.add(sequence);
+        subscribers.put(sequence, remote);
+    }
+
+    private void unsubscribe(final long sequence) {
+        final RemoteObserve remote = subscribers.remove(sequence);
+        if (remote == null) {
+            return;
+        }
+        remote.subscribers.remove(sequence);
+        if (remote.subscribers.isEmpty()) {
+            observesByPath.remove(remote.path);
+            observesById.remove(remote.id);
+            write(NativeFrame.cancel(remote.id));
+        }
+    }
+
+    /**
+     * Write a frame, if connected, or open the connection, which sends the pending requests and the observes.
+     * The writes are flushed together once the event loop is done with the current tasks.
+     */
+    private void write(final NativeFrame frame) {
+        if (channel == null) {
+            // nothing to cancel in a new connection
+            if (frame.getKind() != NativeFrame.Kind.CANCEL) {
+                connect();
+            }
+            return;
+        }
+        channel.write(frame);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            loop.execute(() -> {
+                flushScheduled = false;
+                if (channel != null) {
+                    channel.flush();
+                }
+            });
+        }
+    }
+
+    private void connect() {
+        if (channel != null || connecting || closed) {
+            return;
+        }
+        connecting = true;
+        bootstrap.connect(address.getHostString(), address.getPort()).addListener((ChannelFutureListener) cf -> {
+            connecting = false;
+            if (cf.isSuccess()) {
+                connected(cf.channel());
+            } else {
+                logger.warn("could not connect to the gateway %s: %s", target, cf.cause().getMessage());
+                failPending(ErrorCode.TARGET_NOT_FOUND);
+                reconnectLater();
+            }
+        });
+    }
+
+    private void connected(final Channel ch) {
+        if (closed) {
+            ch.close();
+            return;
+        }
+        logger.info("federation link to %s connected", target);
+        channel = ch;
+        backoff = MIN_BACKOFF_MILLIS;
+        ch.closeFuture().addListener(f -> disconnected(ch));
+
+        for (final GwRequest request : pending.values()) {
+            write(NativeFrame.request(request.getSequence(), request));
+        }
+        for (final RemoteObserve remote : observesById.values()) {
+            write(NativeFrame.request(remote.id, remote.request));
+        }
+    }
+
+    private void disconnected(final Channel ch) {
+        if (channel != ch) {
+            return;
+        }
+        channel = null;
+        if (!closed) {
+            logger.warn("federation link to %s lost", target);
+            failPending(ErrorCode.TARGET_NOT_FOUND);
+            reconnectLater();
+        }
+    }
+
+    private void reconnectLater() {
+        if (closed || observesById.isEmpty()) {
+            return;
+        }
+        Metrics.counter("federation.reconnects").increment();
+        loop.schedule(this::connect, backoff, TimeUnit.MILLISECONDS);
+        backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+    }
+
+    private void failPending(final ErrorCode code) {
+        final ArrayList<GwRequest> requests = new ArrayList<>(pending.values());
+        pending.clear();
+        for (final GwRequest request : requests) {
+            replyLink.sendError(new GwError(request, code));
+        }
+    }
+
+    private void received(final NativeFrame frame) {
+        final long id = frame.getId();
+        switch (frame.getKind()) {
+            case REPLY: {
+                final GwRequest request = pending.remove(id);
+                if (request != null) {
+                    replyLink.send(localReply(frame, request, id));
+                    return;
+                }
+                // once for all the subscribers, the gateway replies to each of them
+                final RemoteObserve remote = observesById.get(id);
+                if (remote != null) {
+                    final GwReply reply = localReply(frame, remote.request, remote.subscribers.iterator().next());
+                    // kept before the gateway takes the reply, to answer the next subscribers
+                    remote.last = new GwReply(reply.headers().copy(), reply.payload().copy(), 0);
+                    replyLink.send(reply);
+                }
+                break;
+            }
+            case ERROR: {
+                final GwRequest request = pending.remove(id);
+                if (request != null) {
+                    replyLink.sendError(new GwError(request, frame.getCode()));
+                    return;
+                }
+                final RemoteObserve remote = observesById.remove(id);
+                if (remote != null) {
+                    observesByPath.remove(remote.path);
+                    for (final Long sequence : remote.subscribers) {
+                        subscribers.remove(sequence);
+                        replyLink.sendError(new GwError(remote.request.headers(), sequence, frame.getCode()));
+                    }
+                }
+                break;
+            }
+            default:
+                // the remote gateway doesn't send requests through the link
+        }
+    }
+
+    /**
+     * The reply of the remote gateway as a reply of its local target and path.
+     */
+    private GwReply localReply(final NativeFrame frame, final GwRequest request, final long sequence) {
+        final GwHeaders h = frame.getHeaders();
+        h.set(GW_TARGET, target);
+        h.set(GW_PATH, request.headers().get(GW_PATH));
+        return new GwReply(h, frame.getPayload(), sequence);
+    }
+
+    private final class Handler extends SimpleChannelInboundHandler<NativeFrame> {
+        @Override
+        protected void channelRead0(final ChannelHandlerContext ctx, final NativeFrame frame) {
+            if (ctx.channel() == channel) {
+                received(frame);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+            logger.error("federation link to %s failed", target, cause);
+            ctx.close();
+        }
+    }
+
+    private static final class RemoteObserve {
+        final long id;
+        final GwRequest request;
+        final String path;
+        final Set<Long> subscribers = new LinkedHashSet<>();
+        // the last notification, the current state of the path
+        GwReply last;
+
+        RemoteObserve(final long id, final GwRequest request) {
+            this.id = id;
+            this.request = request;
+            this.path = request.headers().get(GW_PATH);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package br.ufs.gothings.plugins.federation;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.plugin.PluginClient;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.util.Metrics;
+import br.ufs.gothings.core.util.SharedEventLoop;
+import br.ufs.gothings.plugins.gwnative.NativeFrameCodec;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
+
+/**
+ * Plugin making the devices of other gateways reachable through this one, as in {@code /gw/site-b:5699/coap/lamp}.
+ * <p>
+ * The target is a remote gateway, reached by its native server, and the path is the one the remote gateway resolves.
+ * All the requests to a remote gateway share a single persistent connection, see {@link FederationLink}.
+ *
+ * @author Wagner Macedo
+ */
+public class FederationPlugin implements PluginClient {
+
+    static final String GW_PROTOCOL = "gw";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    private final Settings settings;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final ConcurrentMap<String, FederationLink> links = new ConcurrentHashMap<>();
+
+    private ReplyLink replyLink;
+    private EventLoopGroup group;
+    private Bootstrap bootstrap;
+    private int maxFrameLength;
+
+    public FederationPlugin() {
+        settings = new Settings(started);
+        settings.registerKey(NativeFrameCodec.MAX_FRAME_LENGTH, Integer.class, length -> length > 0);
+    }
+
+    @Override
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            maxFrameLength = settings.get(NativeFrameCodec.MAX_FRAME_LENGTH, NativeFrameCodec.DEFAULT_MAX_FRAME_LENGTH);
+            group = SharedEventLoop.acquire();
+            bootstrap = new Bootstrap()
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS);
+            Metrics.gauge("federation.links", links::size);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (started.compareAndSet(true, false)) {
+            for (final FederationLink link : links.values()) {
+                link.close().awaitUninterruptibly();
+            }
+            links.clear();
+            Metrics.removeAll("federation.");
+            SharedEventLoop.release();
+            group = null;
+            bootstrap = null;
+        }
+    }
+
+    @Override
+    public String getProtocol() {
+        return GW_PROTOCOL;
+    }
+
+    @Override
+    public Settings settings() {
+        return settings;
+    }
+
+    @Override
+    public void handleRequest(final GwRequest request) {
+        final String target = request.headers().get(GW_TARGET);
+        if (target == null) {
+            replyLink.sendError(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
+            return;
+        }
+        links.computeIfAbsent(target, this::newLink).send(request);
+    }
+
+    @Override
+    public void cancelRequest(final long sequence) {
+        // the sequences are unique, so only the link of the request knows it
+        links.values().forEach(link -> link.cancel(sequence));
+    }
+
+    @Override
+    public void setUp(final ReplyLink replyLink) {
+        if (started.get()) {
+            throw new IllegalStateException("plugin already started");
+        }
+        this.replyLink = replyLink;
+    }
+
+    private FederationLink newLink(final String target) {
+        // each link stays on one event loop, which owns its state
+        return new FederationLink(target, group.next(), bootstrap, maxFrameLength, replyLink);
+    }
+}
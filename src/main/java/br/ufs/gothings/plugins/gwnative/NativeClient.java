@@ -0,0 +1,110 @@
+package br.ufs.gothings.plugins.gwnative;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.util.Metrics;
+import br.ufs.gothings.core.util.SharedEventLoop;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_OPERATION;
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
+
+/**
+ * Netty client of the native plugin, keeping a single connection per target, running on the
+ * {@link SharedEventLoop}.
+ *
+ * @author Wagner Macedo
+ */
+class NativeClient {
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+
+    private ReplyLink replyLink;
+    private Bootstrap bootstrap;
+    private int maxFrameLength;
+
+    private final ConcurrentMap<String, NativeConnection> connections = new ConcurrentHashMap<>();
+
+    void start(final ReplyLink replyLink, final Settings settings) {
+        this.replyLink = replyLink;
+        this.maxFrameLength = settings.get(NativeFrameCodec.MAX_FRAME_LENGTH,
+                NativeFrameCodec.DEFAULT_MAX_FRAME_LENGTH);
+        this.bootstrap = new Bootstrap()
+                .group(SharedEventLoop.acquire())
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS);
+        Metrics.gauge("native.client.connections", connections::size);
+    }
+
+    void stop() {
+        for (final NativeConnection connection : connections.values()) {
+            connection.getConnectFuture().channel().close().awaitUninterruptibly();
+        }
+        connections.clear();
+        Metrics.removeAll("native.client.");
+        SharedEventLoop.release();
+        this.bootstrap = null;
+        this.replyLink = null;
+    }
+
+    void sendRequest(final GwRequest request) {
+        final GwHeaders h = request.headers();
+        final String target = h.get(GW_TARGET);
+
+        // an unobserve cancels the observe in the target
+        if (h.get(GW_OPERATION) == Operation.UNOBSERVE) {
+            final NativeConnection connection = (target != null) ? connections.get(target) : null;
+            if (connection != null) {
+                connection.cancel(request.getSequence());
+            }
+            return;
+        }
+
+        if (target == null) {
+            replyLink.sendError(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
+            return;
+        }
+        connections.computeIfAbsent(target, this::connect).send(request);
+    }
+
+    void cancelRequest(final long sequence) {
+        for (final NativeConnection connection : connections.values()) {
+            if (connection.cancel(sequence)) {
+                return;
+            }
+        }
+    }
+
+    private NativeConnection connect(final String target) {
+        final NativeConnection connection = new NativeConnection(replyLink);
+
+        final InetSocketAddress address = NativePlugin.address(target);
+        final ChannelFuture future = bootstrap.clone()
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(final SocketChannel ch) {
+                        NativeFrameCodec.initPipeline(ch.pipeline(), maxFrameLength);
+                        ch.pipeline().addLast(connection);
+                    }
+                })
+                .connect(address.getHostString(), address.getPort());
+        connection.setConnectFuture(future);
+        // a new connection is made by the next request after this one is lost
+        future.channel().closeFuture().addListener(f -> connections.remove(target, connection));
+        return connection;
+    }
+}
@@ -0,0 +1,120 @@
+package br.ufs.gothings.plugins.gwnative;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_OPERATION;
+
+/**
+ * A connection of the native client to a target, where all the requests to the target are pipelined.
+ * <p>
+ * The id of each request in the connection is its gateway sequence, so the replies are sent to the gateway as they
+ * arrive, in any order. When the connection is lost, the requests waiting a reply and the observes get an error.
+ *
+ * @author Wagner Macedo
+ */
+class NativeConnection extends SimpleChannelInboundHandler<NativeFrame> {
+    private final ReplyLink replyLink;
+    private final ConcurrentMap<Long, GwRequest> inFlight = new ConcurrentHashMap<>();
+
+    private volatile ChannelFuture connectFuture;
+
+    NativeConnection(final ReplyLink replyLink) {
+        this.replyLink = replyLink;
+    }
+
+    void setConnectFuture(final ChannelFuture connectFuture) {
+        this.connectFuture = connectFuture;
+    }
+
+    ChannelFuture getConnectFuture() {
+        return connectFuture;
+    }
+
+    void send(final GwRequest request) {
+        final long id = request.getSequence();
+        inFlight.put(id, request);
+        connectFuture.addListener((ChannelFutureListener) cf -> {
+            if (!cf.isSuccess()) {
+                fail(id, ErrorCode.TARGET_NOT_FOUND);
+                return;
+            }
+            cf.channel().writeAndFlush(NativeFrame.request(id, request)).addListener((ChannelFutureListener) wf -> {
+                if (!wf.isSuccess()) {
+                    fail(id, ErrorCode.OTHER);
+                }
+            });
+        });
+    }
+
+    /**
+     * Stop waiting the reply of a request, or the notifications of an observe.
+     *
+     * @return true if the request was in this connection.
+     */
+    boolean cancel(final long id) {
+        if (inFlight.remove(id) == null) {
+            return false;
+        }
+        connectFuture.addListener((ChannelFutureListener) cf -> {
+            if (cf.isSuccess()) {
+                cf.channel().writeAndFlush(NativeFrame.cancel(id));
+            }
+        });
+        return true;
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final NativeFrame frame) {
+        final long id = frame.getId();
+        switch (frame.getKind()) {
+            case REPLY:
+                final GwRequest request = inFlight.get(id);
+                if (request == null) {
+                    return;
+                }
+                // observes keep waiting notifications
+                if (request.headers().get(GW_OPERATION) != Operation.OBSERVE) {
+                    inFlight.remove(id, request);
+                }
+                replyLink.send(new GwReply(frame.getHeaders(), frame.getPayload(), id));
+                break;
+            case ERROR:
+                fail(id, frame.getCode());
+                break;
+            default:
+                // requests are only sent by the client
+        }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+        for (final Long id : inFlight.keySet()) {
+            fail(id, ErrorCode.TARGET_NOT_FOUND);
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+        ctx.close();
+    }
+
+    private void fail(final long id, final ErrorCode code) {
+        final GwRequest request = inFlight.remove(id);
+        if (request != null) {
+            replyLink.sendError(new GwError(request, code));
+        }
+    }
+}
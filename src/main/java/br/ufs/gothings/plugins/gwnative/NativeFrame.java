@@ -0,0 +1,74 @@
+package br.ufs.gothings.plugins.gwnative;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.DataMessage;
+import br.ufs.gothings.core.message.Payload;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+
+/**
+ * A frame of the native protocol. The id correlates the replies of a connection to its requests, so many requests
+ * can be pipelined on the same connection and answered in any order.
+ * <p>
+ * The frames are also the records of other transports of the gateway messages, such as the shared memory rings.
+ *
+ * @author Wagner Macedo
+ */
+public final class NativeFrame {
+    public enum Kind {
+        REQUEST,
+        REPLY,
+        ERROR,
+        /** the requester doesn't wait the reply anymore */
+        CANCEL,
+    }
+
+    private final Kind kind;
+    private final long id;
+    private final GwHeaders headers;
+    private final Payload payload;
+    private final ErrorCode code;
+
+    NativeFrame(final Kind kind, final long id, final GwHeaders headers, final Payload payload, final ErrorCode code) {
+        this.kind = kind;
+        this.id = id;
+        this.headers = headers;
+        this.payload = payload;
+        this.code = code;
+    }
+
+    public static NativeFrame request(final long id, final DataMessage msg) {
+        return new NativeFrame(Kind.REQUEST, id, msg.headers(), msg.payload(), null);
+    }
+
+    public static NativeFrame reply(final long id, final DataMessage msg) {
+        return new NativeFrame(Kind.REPLY, id, msg.headers(), msg.payload(), null);
+    }
+
+    public static NativeFrame error(final long id, final ErrorCode code) {
+        return new NativeFrame(Kind.ERROR, id, null, null, code);
+    }
+
+    public static NativeFrame cancel(final long id) {
+        return new NativeFrame(Kind.CANCEL, id, null, null, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public GwHeaders getHeaders() {
+        return headers;
+    }
+
+    public Payload getPayload() {
+        return payload;
+    }
+
+    public ErrorCode getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,110 @@
+package br.ufs.gothings.plugins.gwnative;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwMessageCodec;
+import br.ufs.gothings.core.message.Payload;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.plugins.gwnative.NativeFrame.Kind;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.util.List;
+
+/**
+ * Binary encoding of the {@link NativeFrame}s, the content of the length-prefixed frames of a connection.
+ * <p>
+ * A frame starts with its kind (1 byte) and id (8 bytes). An error frame has then the error code (1 byte), and a
+ * cancel frame has nothing else. Requests and replies have then the headers block of the {@link GwMessageCodec},
+ * with the deadline relative so it doesn't depend on the peers' clocks, and the payload, all the remaining bytes of
+ * the frame.
+ *
+ * @author Wagner Macedo
+ */
+public final class NativeFrameCodec extends MessageToMessageCodec<ByteBuf, NativeFrame> {
+    // max length of a frame, a plugin setting
+    public static final String MAX_FRAME_LENGTH = "frame.max-length";
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 4 * 1024 * 1024;
+
+    private static final int LENGTH_FIELD = 4;
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final ErrorCode[] CODES = ErrorCode.values();
+
+    NativeFrameCodec() {
+    }
+
+    /**
+     * Add the native framing to the pipeline of a new channel.
+     */
+    public static void initPipeline(final ChannelPipeline pipeline, final int maxFrameLength) {
+        pipeline.addLast(new LengthFieldBasedFrameDecoder(maxFrameLength, 0, LENGTH_FIELD, 0, LENGTH_FIELD))
+                .addLast(new LengthFieldPrepender(LENGTH_FIELD))
+                .addLast(new NativeFrameCodec());
+    }
+
+    @Override
+    protected void encode(final ChannelHandlerContext ctx, final NativeFrame frame, final List<Object> out) {
+        final ByteBuf buf = ctx.alloc().buffer();
+        try {
+            write(frame, buf);
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        out.add(buf);
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf buf, final List<Object> out) {
+        out.add(read(buf));
+    }
+
+    public static void write(final NativeFrame frame, final ByteBuf out) {
+        out.writeByte(frame.getKind().ordinal());
+        out.writeLong(frame.getId());
+
+        switch (frame.getKind()) {
+            case ERROR:
+                out.writeByte(frame.getCode().ordinal());
+                return;
+            case CANCEL:
+                return;
+        }
+
+        GwMessageCodec.writeHeaders(frame.getHeaders(), out, true);
+        out.writeBytes(frame.getPayload().asBytes());
+    }
+
+    public static NativeFrame read(final ByteBuf in) {
+        final int kind = in.readUnsignedByte();
+        if (kind >= KINDS.length) {
+            throw new CorruptedFrameException("unknown frame kind " + kind);
+        }
+        final long id = in.readLong();
+
+        switch (KINDS[kind]) {
+            case ERROR:
+                final int code = in.readUnsignedByte();
+                return NativeFrame.error(id, code < CODES.length ? CODES[code] : ErrorCode.OTHER);
+            case CANCEL:
+                return NativeFrame.cancel(id);
+        }
+
+        final GwHeaders h = new GwHeaders();
+        try {
+            GwMessageCodec.readHeaders(in, h, true);
+        } catch (IllegalArgumentException e) {
+            throw new CorruptedFrameException(e.getMessage());
+        }
+
+        final Payload payload = new Payload();
+        payload.set(in.nioBuffer());
+        in.skipBytes(in.readableBytes());
+        return new NativeFrame(KINDS[kind], id, h, payload, null);
+    }
+}
@@ -0,0 +1,142 @@
+package br.ufs.gothings.plugins.gwnative;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.PluginClient;
+import br.ufs.gothings.core.plugin.PluginServer;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.plugin.RequestLink;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+
+/**
+ * Plugin of the native protocol, a compact binary framing of the gateway messages for clients and targets that
+ * don't need a standard protocol. Many requests are pipelined in each connection, see {@link NativeFrameCodec}.
+ * <p>
+ * The package isn't named {@code native} because this is a reserved word of Java.
+ *
+ * @author Wagner Macedo
+ */
+public class NativePlugin implements PluginClient, PluginServer {
+
+    static final String GW_PROTOCOL = "native";
+
+    public static final int DEFAULT_PORT = 5699;
+
+    private final NativeClient client;
+    private final NativeServer server;
+    private final Settings settings;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private ReplyLink replyLink;
+    private RequestLink requestLink;
+
+    public NativePlugin() {
+        client = new NativeClient();
+        server = new NativeServer();
+        settings = new Settings(started);
+        settings.registerKey(NativeFrameCodec.MAX_FRAME_LENGTH, Integer.class, length -> length > 0);
+    }
+
+    @Override
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            if (requestLink == null) {
+                throw new NullPointerException("no RequestLink to start the server");
+            }
+            client.start(replyLink, settings);
+            try {
+                server.start(requestLink, settings);
+            } catch (InterruptedException e) {
+                client.stop();
+                started.set(false);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (started.compareAndSet(true, false)) {
+            client.stop();
+            server.stop();
+        }
+    }
+
+    @Override
+    public String getProtocol() {
+        return GW_PROTOCOL;
+    }
+
+    @Override
+    public Settings settings() {
+        return settings;
+    }
+
+    /**
+     * The address of a native target, given as host, host:port or [ipv6]:port. The host isn't resolved.
+     */
+    public static InetSocketAddress address(final String target) {
+        String host = target;
+        int port = DEFAULT_PORT;
+        final int colon = target.lastIndexOf(':');
+        if (colon > 0 && target.indexOf(':') == colon || target.startsWith("[") && colon > target.indexOf(']')) {
+            host = target.substring(0, colon);
+            try {
+                port = Integer.parseInt(target.substring(colon + 1));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return InetSocketAddress.createUnresolved(host, port);
+    }
+
+    /**
+     * An UNOBSERVE of a path, whose sequence is set once the observe is sent. The gateway rewrites the path of the
+     * observe, so a server session makes the unobserve before sending the observe.
+     */
+    public static GwRequest newUnobserve(final String path) {
+        final GwRequest request = new GwRequest();
+        final GwHeaders h = request.headers();
+        h.set(GW_OPERATION, Operation.UNOBSERVE);
+        h.set(GW_PATH, path);
+        return request;
+    }
+
+    /* Client implementation */
+
+    @Override
+    public void handleRequest(final GwRequest request) {
+        client.sendRequest(request);
+    }
+
+    @Override
+    public void cancelRequest(final long sequence) {
+        client.cancelRequest(sequence);
+    }
+
+    @Override
+    public void setUp(final ReplyLink replyLink) {
+        if (started.get()) {
+            throw new IllegalStateException("plugin already started");
+        }
+        this.replyLink = replyLink;
+    }
+
+    /* Server implementation */
+
+    @Override
+    public void setUp(final RequestLink requestLink) {
+        if (started.get()) {
+            throw new IllegalStateException("plugin already started");
+        }
+        this.requestLink = requestLink;
+    }
+}
@@ -0,0 +1,63 @@
+package br.ufs.gothings.plugins.gwnative;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Metrics;
+import br.ufs.gothings.core.util.SharedEventLoop;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+/**
+ * Netty server of the native plugin, running on the {@link SharedEventLoop}.
+ *
+ * @author Wagner Macedo
+ */
+class NativeServer {
+    private Channel serverChannel;
+    private ChannelGroup sessions;
+
+    void start(final RequestLink requestLink, final Settings settings) throws InterruptedException {
+        final EventLoopGroup group = SharedEventLoop.acquire();
+        final int maxFrameLength = settings.get(NativeFrameCodec.MAX_FRAME_LENGTH,
+                NativeFrameCodec.DEFAULT_MAX_FRAME_LENGTH);
+        sessions = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        Metrics.gauge("native.sessions", sessions::size);
+
+        final ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(final SocketChannel ch) {
+                        sessions.add(ch);
+                        NativeFrameCodec.initPipeline(ch.pipeline(), maxFrameLength);
+                        ch.pipeline().addLast(new NativeServerSession(requestLink));
+                    }
+                });
+        try {
+            serverChannel = bootstrap.bind(settings.get(Settings.SERVER_PORT)).sync().channel();
+        } catch (InterruptedException | RuntimeException e) {
+            SharedEventLoop.release();
+            throw e;
+        }
+    }
+
+    void stop() {
+        serverChannel.close().awaitUninterruptibly();
+        // closing the sessions cancels their requests
+        sessions.close().awaitUninterruptibly();
+        Metrics.removeAll("native.");
+        SharedEventLoop.release();
+        serverChannel = null;
+        sessions = null;
+    }
+}
@@ -0,0 +1,175 @@
+package br.ufs.gothings.plugins.gwnative;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.FutureReply;
+import br.ufs.gothings.core.plugin.ReplyListener;
+import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Metrics;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+
+/**
+ * A connection of a native client to the gateway.
+ * <p>
+ * The requests of the connection are sent to the gateway as they arrive, without waiting the replies of the
+ * previous ones, and each reply is written when ready, with the id of its request. The id of an observe request
+ * stays in use, carrying the notifications, until the client cancels it or an error ends it. When the connection
+ * closes, its requests are cancelled and its observes unobserved.
+ * <p>
+ * The replies ready together are written with a single flush, and the connection stops reading new requests while
+ * the client doesn't read the replies.
+ * <p>
+ * The state of the session is only accessed in the event loop of its channel.
+ *
+ * @author Wagner Macedo
+ */
+class NativeServerSession extends SimpleChannelInboundHandler<NativeFrame> {
+    private final RequestLink requestLink;
+
+    // requests waiting the reply, and the unobserve of each observe, by id
+    private final Map<Long, FutureReply> pending = new HashMap<>();
+    private final Map<Long, GwRequest> observes = new HashMap<>();
+    private boolean flushScheduled = false;
+
+    private ChannelHandlerContext ctx;
+
+    NativeServerSession(final RequestLink requestLink) {
+        this.requestLink = requestLink;
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final NativeFrame frame) {
+        switch (frame.getKind()) {
+            case REQUEST:
+                if (frame.getHeaders().get(GW_OPERATION) == Operation.UNOBSERVE) {
+                    cancel(frame.getId());
+                } else {
+                    request(frame);
+                }
+                break;
+            case CANCEL:
+                cancel(frame.getId());
+                break;
+            default:
+                // replies are only sent by the gateway
+                write(NativeFrame.error(frame.getId(), ErrorCode.OTHER));
+        }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+        for (final Long id : pending.keySet().toArray(new Long[0])) {
+            cancel(id);
+        }
+        for (final Long id : observes.keySet().toArray(new Long[0])) {
+            cancel(id);
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) throws Exception {
+        // stop taking requests while the replies aren't read
+        ctx.channel().config().setAutoRead(ctx.channel().isWritable());
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+        ctx.close();
+    }
+
+    private void request(final NativeFrame frame) {
+        final long id = frame.getId();
+        if (pending.containsKey(id) || observes.containsKey(id)) {
+            write(NativeFrame.error(id, ErrorCode.OTHER));
+            return;
+        }
+
+        final GwHeaders h = frame.getHeaders();
+        if (h.get(GW_OPERATION) == null) {
+            write(NativeFrame.error(id, ErrorCode.OTHER));
+            return;
+        }
+        final InetSocketAddress remote = (InetSocketAddress) ctx.channel().remoteAddress();
+        if (remote != null) {
+            h.set(GW_CLIENT_ID, remote.getAddress().getHostAddress() + ":" + remote.getPort());
+        }
+
+        final GwRequest request = new GwRequest(h, frame.getPayload());
+        final boolean observe = h.get(GW_OPERATION) == Operation.OBSERVE;
+        // the gateway rewrites the path of the request, so the unobserve is made before
+        final GwRequest unobserve = observe ? NativePlugin.newUnobserve(h.get(GW_PATH)) : null;
+        if (observe) {
+            observes.put(id, unobserve);
+        }
+        final FutureReply future = requestLink.send(request);
+        if (observe) {
+            unobserve.setSequence(request.getSequence());
+        } else {
+            pending.put(id, future);
+        }
+        Metrics.counter("native.requests").increment();
+
+        future.setListener(new ReplyListener() {
+            @Override
+            public void onReply(final GwReply reply) {
+                ctx.executor().execute(() -> {
+                    if (observe ? observes.get(id) == unobserve : pending.remove(id, future)) {
+                        write(NativeFrame.reply(id, reply));
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final GwError error) {
+                ctx.executor().execute(() -> {
+                    if (observe ? observes.remove(id, unobserve) : pending.remove(id, future)) {
+                        write(NativeFrame.error(id, error.getCode()));
+                    }
+                });
+            }
+        });
+    }
+
+    private void cancel(final long id) {
+        final FutureReply future = pending.remove(id);
+        if (future != null) {
+            future.cancel(true);
+            return;
+        }
+
+        final GwRequest unobserve = observes.remove(id);
+        if (unobserve != null) {
+            requestLink.send(unobserve);
+        }
+    }
+
+    private void write(final NativeFrame frame) {
+        ctx.write(frame);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            // run after the replies already queued in the event loop, to write them together
+            ctx.executor().execute(() -> {
+                flushScheduled = false;
+                ctx.flush();
+            });
+        }
+    }
+}
@@ -1,22 +1,49 @@
 package br.ufs.gothings.plugins.http;
 
+import br.ufs.gothings.core.Settings;
 import br.ufs.gothings.core.common.ErrorCode;
 import br.ufs.gothings.core.message.GwError;
 import br.ufs.gothings.core.message.GwReply;
 import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.Payload;
 import br.ufs.gothings.core.message.headers.GwHeaders;
 import br.ufs.gothings.core.message.headers.Operation;
 import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.util.Deadline;
+import br.ufs.gothings.core.util.Metrics;
 import br.ufs.gothings.core.util.Polling;
+import br.ufs.gothings.core.util.RetryPolicy;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static br.ufs.gothings.core.message.headers.HeaderNames.*;
@@ -25,17 +52,64 @@ import static br.ufs.gothings.core.message.headers.HeaderNames.*;
  * @author Wagner Macedo
  */
 public class ApacheHCClient {
+    // Event streams: idle time before a stream is considered lost, and reconnection of lost streams
+    private static final int STREAM_IDLE_MILLIS = 300_000;
+    private static final int MAX_STREAMS = 1024;
+    // max wait for a connection of the streams pool, which only waits if the pool is taken concurrently
+    private static final int STREAM_CONNECTION_WAIT_MILLIS = 1000;
+    private static final RetryPolicy RECONNECTION = new RetryPolicy(1, 60, TimeUnit.SECONDS, 5, 0, 0);
+
+    // version of a resource read as an event stream
+    private static final Object STREAMED = new Object();
+
+    // Max size of a response body, setting of the plugin
+    static final String MAX_PAYLOAD = "client.max-payload";
+    private static final int DEFAULT_MAX_PAYLOAD = 1024 * 1024;
+
     private ReplyLink replyLink;
     private CloseableHttpClient httpClient;
+    private int maxPayload;
+    private CloseableHttpClient streamClient;
+    private PoolingHttpClientConnectionManager streamConnections;
 
     private Polling polling;
 
-    public void start(final ReplyLink replyLink) {
+    // event streams of the observed resources, by uri, and the lost ones waiting to reconnect
+    private ConcurrentMap<String, HttpGet> streams;
+    private ConcurrentMap<String, GwRequest> reconnecting;
+    private ConcurrentMap<String, Integer> attempts;
+    private ExecutorService streamReaders;
+    private ScheduledExecutorService retrier;
+
+    // requests being executed, to be aborted when cancelled
+    private final Map<Long, HttpRequestBase> executing = new ConcurrentHashMap<>();
+
+    // validators of the observed resources, by uri
+    private final Map<String, Validators> validators = new ConcurrentHashMap<>();
+
+    public void start(final ReplyLink replyLink, final Settings settings) {
         this.replyLink = replyLink;
+        this.maxPayload = settings.get(MAX_PAYLOAD, DEFAULT_MAX_PAYLOAD);
         this.httpClient = HttpClients.createDefault();
-        this.polling = new Polling(
-                dst -> sendGET(dst.getRequest()),
+        // a stream holds its connection, so the streams get their own pool
+        this.streamConnections = new PoolingHttpClientConnectionManager();
+        this.streamConnections.setMaxTotal(MAX_STREAMS);
+        this.streamConnections.setDefaultMaxPerRoute(MAX_STREAMS);
+        this.streamClient = HttpClients.custom()
+                .setConnectionManager(streamConnections)
+                .build();
+        this.streams = new ConcurrentHashMap<>();
+        this.reconnecting = new ConcurrentHashMap<>();
+        this.attempts = new ConcurrentHashMap<>();
+        this.streamReaders = Executors.newCachedThreadPool();
+        this.retrier = Executors.newSingleThreadScheduledExecutor();
+        this.polling = new Polling("http",
+                dst -> sendGET(dst.getRequest(), false),
                 5, TimeUnit.MINUTES);
+        this.polling.setIntervalBounds(
+                settings.get(Polling.MIN_INTERVAL, Polling.DEFAULT_MIN_INTERVAL_SECONDS),
+                settings.get(Polling.MAX_INTERVAL, Polling.DEFAULT_MAX_INTERVAL_SECONDS),
+                TimeUnit.SECONDS);
         this.polling.start();
     }
 
@@ -43,11 +117,25 @@ public class ApacheHCClient {
         this.replyLink = null;
         this.polling.stop();
         this.polling = null;
+        this.retrier.shutdownNow();
+        this.retrier = null;
+        // removed before aborted, so they aren't reconnected
+        for (final String uri : this.streams.keySet()) {
+            final HttpGet stream = this.streams.remove(uri);
+            if (stream != null) {
+                stream.abort();
+            }
+        }
+        this.streamReaders.shutdownNow();
+        this.streamReaders = null;
         try {
             this.httpClient.close();
+            this.streamClient.close();
         } catch (IOException ignored) {
         }
         this.httpClient = null;
+        this.streamClient = null;
+        this.streamConnections = null;
     }
 
     public void sendRequest(final GwRequest request) {
@@ -57,20 +145,28 @@ public class ApacheHCClient {
         // READ, OBSERVE and UNOBSERVE are processed a bit different
         switch (operation) {
             case READ:
-                sendGET(request);
+                sendGET(request, false);
                 return;
             case OBSERVE:
-                polling.add(request);
+                observe(request);
                 return;
             case UNOBSERVE:
+                final String uri = createURI(h);
+                reconnecting.remove(uri);
+                attempts.remove(uri);
+                final HttpGet stream = streams.remove(uri);
+                if (stream != null) {
+                    stream.abort();
+                }
                 polling.del(request);
+                validators.remove(uri);
                 return;
         }
 
         final String uri = createURI(h);
 
         // Choose HTTP method by the gateway operation
-        final HttpUriRequest httpRequest;
+        final HttpRequestBase httpRequest;
         switch (operation) {
             case CREATE:
                 httpRequest = new HttpPost(uri);
@@ -92,7 +188,7 @@ public class ApacheHCClient {
                 break;
         }
 
-        final CloseableHttpResponse httpResponse = executeHttpRequest(httpRequest, request);
+        final CloseableHttpResponse httpResponse = executeHttpRequest(httpClient, httpRequest, request);
         if (httpResponse == null)
             return;
 
@@ -109,39 +205,257 @@ public class ApacheHCClient {
         replyLink.ack(request.getSequence());
     }
 
-    private void sendGET(final GwRequest request) {
+    /**
+     * Observe a resource, streaming its events if the target supports Server-Sent Events, or polling it otherwise.
+     * The resource is polled too while all the stream connections are taken.
+     */
+    private void observe(final GwRequest request) {
+        final PoolStats pool = streamConnections.getTotalStats();
+        final boolean streaming = pool.getLeased() + pool.getPending() < pool.getMax();
+        if (!streaming) {
+            Metrics.counter("http.streams.exhausted").increment();
+        }
+        if (sendGET(request, streaming) != STREAMED) {
+            polling.add(request, false);
+        }
+    }
+
+    /**
+     * Send a GET, conditional for the periodic polls of observed resources.
+     * <p>
+     * The validators of each observed resource are remembered, so a poll of an unchanged resource is answered with
+     * 304 by the target and no reply goes through the gateway.
+     *
+     * @param request      the request
+     * @param streaming    if an event stream is accepted
+     * @return the version of the resource read, {@link #STREAMED} if the resource is being streamed, or null if an
+     * error was sent.
+     */
+    private Object sendGET(final GwRequest request, final boolean streaming) {
         final GwHeaders h = request.headers();
-        final HttpGet httpRequest = new HttpGet(createURI(h));
+        final String uri = createURI(h);
+        final HttpGet httpRequest = new HttpGet(uri);
 
-        final String value = String.join(",", h.getAll(GW_EXPECTED_TYPES)) + ",*/*;q=0.5";
+        String value = String.join(",", h.getAll(GW_EXPECTED_TYPES)) + ",*/*;q=0.5";
+        if (streaming) {
+            value = EventStreamReader.MIME_TYPE + "," + value;
+            httpRequest.setConfig(RequestConfig.custom()
+                    .setSocketTimeout(STREAM_IDLE_MILLIS)
+                    .setConnectionRequestTimeout(STREAM_CONNECTION_WAIT_MILLIS)
+                    .build());
+        }
         httpRequest.addHeader("Accept", value);
 
-        final CloseableHttpResponse httpResponse = executeHttpRequest(httpRequest, request);
+        // periodic polls are unsequenced, nobody waits their replies
+        final Validators known = (h.get(GW_OPERATION) == Operation.OBSERVE) ? validators.get(uri) : null;
+        final boolean conditional = known != null && request.getSequence() == 0;
+        if (conditional) {
+            if (known.etag != null) {
+                httpRequest.addHeader(HttpHeaders.IF_NONE_MATCH, known.etag);
+            }
+            if (known.lastModified != null) {
+                httpRequest.addHeader(HttpHeaders.IF_MODIFIED_SINCE, known.lastModified);
+            }
+        }
+
+        final CloseableHttpResponse httpResponse = executeHttpRequest(streaming ? streamClient : httpClient,
+                httpRequest, request);
         if (httpResponse == null)
-            return;
+            return null;
+
+        if (streaming && isEventStream(httpResponse)) {
+            streams.put(uri, httpRequest);
+            streamReaders.execute(() -> readStream(uri, request, httpRequest, httpResponse));
+            return STREAMED;
+        }
 
         // Payload handling
         try (CloseableHttpResponse r = httpResponse) {
             final HttpEntity entity = r.getEntity();
+            if (conditional && r.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(entity);
+                Metrics.counter("http.poll.not-modified").increment();
+                return known.version;
+            }
+
             final GwReply reply = new GwReply(request);
-            reply.payload().set(EntityUtils.toByteArray(entity));
+            if (!readEntity(httpRequest, entity, reply.payload())) {
+                replyLink.sendError(new GwError(request, ErrorCode.PAYLOAD_TOO_LARGE));
+                return null;
+            }
+
+            final Validators current = new Validators(r, reply.payload());
+            final GwHeaders rh = reply.headers();
+            if (current.etag != null) {
+                rh.set(GW_CACHE_SIGNATURE, current.etag);
+            }
+            if (current.expires != null) {
+                rh.set(GW_CACHE_EXPIRATION, current.expires);
+            }
+            rh.set(GW_CACHE_MODIFIED, known == null || !known.version.equals(current.version));
+            if (h.get(GW_OPERATION) == Operation.OBSERVE) {
+                validators.put(uri, current);
+            }
+
             replyLink.send(reply);
+            return current.version;
         } catch (IOException e) {
             replyLink.sendError(new GwError(request, ErrorCode.OTHER));
+            return null;
+        }
+    }
+
+    /**
+     * Read the entity straight into the payload, up to the max payload size.
+     * <p>
+     * A too large entity aborts the request before its stream is closed, as closing the stream reads the rest of
+     * the body to reuse the connection.
+     *
+     * @return false if the entity is too large.
+     */
+    private boolean readEntity(final HttpRequestBase httpRequest, final HttpEntity entity, final Payload payload)
+            throws IOException
+    {
+        if (entity == null) {
+            return true;
+        }
+        final long length = entity.getContentLength();
+        try (InputStream in = entity.getContent()) {
+            final int read = payload.set(in, (int) Math.min(length, Integer.MAX_VALUE), maxPayload);
+            if (read < 0) {
+                httpRequest.abort();
+                Metrics.counter("http.client.oversized").increment();
+                return false;
+            }
+            Metrics.counter("http.client.bytes-copied").add(read);
+            return true;
+        }
+    }
+
+    private static boolean isEventStream(final HttpResponse response) {
+        final Header contentType = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+        return contentType != null && contentType.getValue().startsWith(EventStreamReader.MIME_TYPE);
+    }
+
+    /**
+     * Send each event of a stream as a reply. The first event replies the OBSERVE request, and the next ones are
+     * notifications. A stream lost without an UNOBSERVE is reconnected.
+     */
+    private void readStream(final String uri, final GwRequest request, final HttpGet httpRequest,
+                            final CloseableHttpResponse httpResponse)
+    {
+        final GwRequest notification = new GwRequest(request.headers(), request.payload());
+        notification.setSequence(0);
+
+        GwRequest current = request;
+        boolean tooLarge = false;
+        try (CloseableHttpResponse r = httpResponse;
+             EventStreamReader events = new EventStreamReader(r.getEntity().getContent(), maxPayload))
+        {
+            try {
+                String data;
+                while ((data = events.next()) != null) {
+                    final GwReply reply = new GwReply(current);
+                    reply.payload().set(data, StandardCharsets.UTF_8);
+                    // the last event id is kept between events, so only the id of this event identifies it
+                    final String id = events.getEventId();
+                    if (id != null) {
+                        reply.headers().set(GW_CACHE_SIGNATURE, id);
+                    }
+                    replyLink.send(reply);
+                    attempts.remove(uri);
+                    current = notification;
+                }
+            } catch (EventStreamReader.EventTooLargeException e) {
+                Metrics.counter("http.client.oversized").increment();
+                tooLarge = true;
+                // aborted before closed, so the rest of the stream isn't read
+                httpRequest.abort();
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // the stream is lost, even if aborted by an UNOBSERVE
+        }
+
+        if (streams.remove(uri, httpRequest)) {
+            if (tooLarge) {
+                // the stream isn't opened again, the polls of the resource are bounded by the max payload too
+                polling.add(current);
+            } else {
+                reconnect(uri, notification);
+            }
+        }
+    }
+
+    private void reconnect(final String uri, final GwRequest request) {
+        final int attempt = attempts.merge(uri, 1, Integer::sum) - 1;
+        final long delay = RECONNECTION.nextDelay(attempt, TimeUnit.MILLISECONDS);
+        if (delay < 0) {
+            // the target can't keep a stream, so it's polled
+            attempts.remove(uri);
+            polling.add(request);
+            return;
+        }
+
+        reconnecting.put(uri, request);
+        try {
+            retrier.schedule(() -> {
+                // skip if unobserved in the meantime
+                if (reconnecting.remove(uri, request)) {
+                    observe(request);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // client stopped
         }
     }
 
-    private CloseableHttpResponse executeHttpRequest(final HttpUriRequest httpRequest, final GwRequest request) {
+    private CloseableHttpResponse executeHttpRequest(final CloseableHttpClient httpClient,
+                                                     final HttpRequestBase httpRequest, final GwRequest request)
+    {
+        // Don't work for a requester which gave up, and don't outlive the requester otherwise
+        final long remaining = Deadline.remaining(request.headers(), TimeUnit.MILLISECONDS);
+        if (remaining == 0) {
+            replyLink.sendError(new GwError(request, ErrorCode.DEADLINE_EXCEEDED));
+            return null;
+        }
+        if (remaining != Long.MAX_VALUE) {
+            final int timeout = (int) Math.min(remaining, Integer.MAX_VALUE);
+            final RequestConfig config = (httpRequest.getConfig() != null) ? httpRequest.getConfig()
+                                                                            : RequestConfig.DEFAULT;
+            final RequestConfig.Builder builder = RequestConfig.copy(config)
+                    .setConnectionRequestTimeout(config.getConnectionRequestTimeout() < 0
+                            ? timeout
+                            : Math.min(config.getConnectionRequestTimeout(), timeout))
+                    .setConnectTimeout(timeout);
+            // a socket timeout set beforehand is the idle timeout of a stream, which outlives the requester
+            if (config.getSocketTimeout() < 0) {
+                builder.setSocketTimeout(timeout);
+            }
+            httpRequest.setConfig(builder.build());
+        }
+
         final CloseableHttpResponse httpResponse;
+        executing.put(request.getSequence(), httpRequest);
         try {
             httpResponse = httpClient.execute(httpRequest);
         } catch (IOException e) {
-            if (e instanceof SocketException || e instanceof UnknownHostException) {
+            if (httpRequest.isAborted()) {
+                // cancelled, nobody waits for an error
+            } else if (e instanceof ConnectionPoolTimeoutException) {
+                // the pool was taken by other requests meanwhile
+                replyLink.sendError(new GwError(request, ErrorCode.OVERLOADED));
+            } else if (e instanceof SocketException || e instanceof UnknownHostException
+                    || e instanceof ConnectTimeoutException || e instanceof SocketTimeoutException) {
+                // a timeout is the timeout of the target once dispatched, even when it's the deadline
                 replyLink.sendError(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
+            } else if (Deadline.isExpired(request.headers())) {
+                replyLink.sendError(new GwError(request, ErrorCode.DEADLINE_EXCEEDED));
             } else {
                 replyLink.sendError(new GwError(request, ErrorCode.OTHER));
             }
             return null;
+        } finally {
+            executing.remove(request.getSequence(), httpRequest);
         }
 
         // Error handling
@@ -158,7 +472,35 @@ public class ApacheHCClient {
         return httpResponse;
     }
 
+    public void cancelRequest(final long sequence) {
+        final HttpRequestBase httpRequest = executing.remove(sequence);
+        if (httpRequest != null) {
+            httpRequest.abort();
+        }
+    }
+
     private static String createURI(final GwHeaders headers) {
         return "http://" + headers.get(GW_TARGET) + headers.get(GW_PATH);
     }
+
+    private static final class Validators {
+        private final String etag;
+        private final String lastModified;
+        private final Date expires;
+        // the entity tag, or the hash of the payload
+        private final Object version;
+
+        private Validators(final HttpResponse response, final Payload payload) {
+            etag = headerValue(response, HttpHeaders.ETAG);
+            lastModified = headerValue(response, HttpHeaders.LAST_MODIFIED);
+            final String expiresValue = headerValue(response, HttpHeaders.EXPIRES);
+            expires = (expiresValue != null) ? DateUtils.parseDate(expiresValue) : null;
+            version = (etag != null) ? etag : Arrays.hashCode(payload.asBytes());
+        }
+
+        private static String headerValue(final HttpResponse response, final String name) {
+            final Header header = response.getFirstHeader(name);
+            return (header != null) ? header.getValue() : null;
+        }
+    }
 }
@@ -2,24 +2,33 @@ package br.ufs.gothings.plugins.http;
 
 import br.ufs.gothings.core.Settings;
 import br.ufs.gothings.core.common.GatewayException;
+import br.ufs.gothings.core.message.GwError;
 import br.ufs.gothings.core.message.headers.GwHeaders;
 import br.ufs.gothings.core.message.GwReply;
 import br.ufs.gothings.core.message.GwRequest;
 import br.ufs.gothings.core.message.headers.HKey;
 import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.FutureReply;
+import br.ufs.gothings.core.plugin.ReplyListener;
 import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Deadline;
 import org.apache.http.*;
 import org.apache.http.config.SocketConfig;
-import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.bootstrap.HttpServer;
 import org.apache.http.impl.bootstrap.ServerBootstrap;
 import org.apache.http.protocol.*;
 
 import java.io.IOException;
+import java.util.Date;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
 
 import static br.ufs.gothings.core.message.headers.HeaderNames.*;
 
@@ -28,11 +37,24 @@ import static br.ufs.gothings.core.message.headers.HeaderNames.*;
  */
 public class ApacheHCServer implements HttpPluginServer {
 
+    // how long a client waits for the gateway reply, unless the gateway sets another deadline
+    private static final long REPLY_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    // interval to check if the client is still connected while waiting the reply
+    private static final long DISCONNECT_CHECK_MILLIS = 1000;
+    // query parameter of a long-poll, which waits for the next change of the resource
+    private static final String LONG_POLL_PARAM = "longpoll";
+
+    // Max event streams and long-polls open at once, setting of the plugin. Each one holds a worker thread.
+    static final String MAX_STREAMS = "server.max-streams";
+    private static final int DEFAULT_MAX_STREAMS = 256;
+    private static final int RETRY_AFTER_SECONDS = 5;
+
     private HttpServer server;
 
     @Override
     public void start(final RequestLink requestLink, final Settings settings) throws InterruptedException {
-        final HttpRequestHandler requestHandler = new ServerRequestHandler(requestLink);
+        final HttpRequestHandler requestHandler = new ServerRequestHandler(requestLink,
+                settings.get(MAX_STREAMS, DEFAULT_MAX_STREAMS), REPLY_TIMEOUT);
         final HttpProcessor httpProcessor = HttpProcessorBuilder.create()
                 .add(new ResponseDate())
                 .add(new ResponseContent())
@@ -58,9 +80,18 @@ public class ApacheHCServer implements HttpPluginServer {
 
     static class ServerRequestHandler implements HttpRequestHandler {
         private final RequestLink requestLink;
+        private final CompressedVariants variants = new CompressedVariants();
+        private final Semaphore streams;
+        private final long longPollMillis;
 
         public ServerRequestHandler(final RequestLink requestLink) {
+            this(requestLink, DEFAULT_MAX_STREAMS, REPLY_TIMEOUT);
+        }
+
+        ServerRequestHandler(final RequestLink requestLink, final int maxStreams, final long longPollMillis) {
             this.requestLink = requestLink;
+            this.streams = new Semaphore(maxStreams);
+            this.longPollMillis = longPollMillis;
         }
 
         @Override
@@ -73,18 +104,40 @@ public class ApacheHCServer implements HttpPluginServer {
                 return;
             }
 
-            if (gw_request != null) {
+            if (gw_request != null && gw_request.headers().get(GW_OPERATION) == Operation.OBSERVE) {
+                // the worker threads aren't all taken by idle observers
+                if (!streams.tryAcquire()) {
+                    response.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
+                    response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS));
+                    return;
+                }
+                setClientId(gw_request.headers(), context);
+                if (isLongPoll(request)) {
+                    try {
+                        handleLongPoll(request, gw_request, response, context);
+                    } finally {
+                        streams.release();
+                    }
+                } else {
+                    handleEventStream(gw_request, response);
+                }
+            } else if (gw_request != null) {
+                setClientId(gw_request.headers(), context);
+                Deadline.set(gw_request.headers(), REPLY_TIMEOUT, TimeUnit.MILLISECONDS);
                 final Future<GwReply> future = requestLink.send(gw_request);
                 try {
-                    final GwReply gw_reply = future.get(1, TimeUnit.MINUTES);
+                    final GwReply gw_reply = waitReply(future, gw_request.headers(), context);
+                    if (gw_reply == null) {
+                        // the client is gone, so the request is cancelled
+                        future.cancel(true);
+                        return;
+                    }
 
-                    final BasicHttpEntity entity = new BasicHttpEntity();
-                    entity.setContent(gw_reply.payload().asInputStream());
-                    response.setEntity(entity);
-                    fillHttpResponseHeaders(response, gw_reply.headers());
+                    sendReply(request, response, gw_reply);
                 }
                 // handle possible errors
                 catch (InterruptedException e) {
+                    future.cancel(true);
                     response.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
                 } catch (ExecutionException e) {
                     if (e.getCause() instanceof GatewayException) {
@@ -98,10 +151,20 @@ public class ApacheHCServer implements HttpPluginServer {
                             case PATH_NOT_FOUND:
                                 response.setStatusCode(HttpStatus.SC_NOT_FOUND);
                                 return;
+                            case OVERLOADED:
+                                response.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
+                                return;
+                            case DEADLINE_EXCEEDED:
+                                response.setStatusCode(HttpStatus.SC_GATEWAY_TIMEOUT);
+                                return;
+                            case PAYLOAD_TOO_LARGE:
+                                response.setStatusCode(HttpStatus.SC_BAD_GATEWAY);
+                                return;
                         }
                     }
                     response.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
                 } catch (TimeoutException e) {
+                    future.cancel(true);
                     response.setStatusCode(HttpStatus.SC_GATEWAY_TIMEOUT);
                 }
             } else {
@@ -122,8 +185,16 @@ public class ApacheHCServer implements HttpPluginServer {
 
                     switch (method) {
                         case "GET":
-                            h.set(GW_OPERATION, Operation.READ);
-                            addExpectedTypes(h, request.getFirstHeader("Accept"));
+                            final Header accept = request.getFirstHeader("Accept");
+                            if (isLongPoll(request)) {
+                                h.set(GW_OPERATION, Operation.OBSERVE);
+                                h.set(GW_PATH, removeLongPollParam(h.get(GW_PATH)));
+                            } else if (accept != null && accept.getValue().contains(EventStreamReader.MIME_TYPE)) {
+                                h.set(GW_OPERATION, Operation.OBSERVE);
+                            } else {
+                                h.set(GW_OPERATION, Operation.READ);
+                            }
+                            addExpectedTypes(h, accept);
                             break;
                         case "PUT":
                             h.set(GW_OPERATION, Operation.UPDATE);
@@ -145,6 +216,146 @@ public class ApacheHCServer implements HttpPluginServer {
             return null;
         }
 
+        /**
+         * Stream the notifications of the resource while the client is connected.
+         * <p>
+         * The stream holds a worker thread of the blocking server, so the streams open at once are limited by
+         * {@link #MAX_STREAMS}, and the stream releases its slot when it ends.
+         */
+        private void handleEventStream(final GwRequest gw_request, final HttpResponse response) {
+            final GwRequest unobserve = newUnobserve(gw_request);
+            final FutureReply future = requestLink.send(gw_request);
+            unobserve.setSequence(gw_request.getSequence());
+            final EventStreamEntity entity = new EventStreamEntity(() -> {
+                streams.release();
+                requestLink.send(unobserve);
+            });
+            future.setListener(entity);
+
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+            response.setEntity(entity);
+        }
+
+        /**
+         * Answer with the next change of the resource, or with 204 if it doesn't change before the timeout.
+         */
+        private void handleLongPoll(final HttpRequest request, final GwRequest gw_request,
+                                    final HttpResponse response, final HttpContext context)
+        {
+            final GwRequest unobserve = newUnobserve(gw_request);
+            final FutureReply future = requestLink.send(gw_request);
+            unobserve.setSequence(gw_request.getSequence());
+
+            // the first reply is the current state, the next one is the change, unless it's marked as not modified
+            final CompletableFuture<GwReply> change = new CompletableFuture<>();
+            future.setListener(new ReplyListener() {
+                private boolean first = true;
+
+                @Override
+                public synchronized void onReply(final GwReply reply) {
+                    if (first) {
+                        first = false;
+                    } else if (!Boolean.FALSE.equals(reply.headers().get(GW_CACHE_MODIFIED))) {
+                        change.complete(reply);
+                    }
+                }
+
+                @Override
+                public void onError(final GwError error) {
+                    change.completeExceptionally(new GatewayException(error));
+                }
+            });
+
+            final GwHeaders wait = new GwHeaders();
+            Deadline.set(wait, longPollMillis, TimeUnit.MILLISECONDS);
+            try {
+                final GwReply gw_reply = waitReply(change, wait, context);
+                if (gw_reply != null) {
+                    sendReply(request, response, gw_reply);
+                }
+            } catch (InterruptedException e) {
+                response.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
+            } catch (ExecutionException e) {
+                response.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            } catch (TimeoutException e) {
+                response.setStatusCode(HttpStatus.SC_NO_CONTENT);
+            } finally {
+                requestLink.send(unobserve);
+            }
+        }
+
+        /**
+         * The gateway rewrites the path of the observe, so the unobserve must be made before sending it.
+         */
+        private static GwRequest newUnobserve(final GwRequest observe) {
+            final GwRequest request = new GwRequest();
+            final GwHeaders h = request.headers();
+            h.set(GW_OPERATION, Operation.UNOBSERVE);
+            h.set(GW_PATH, observe.headers().get(GW_PATH));
+            return request;
+        }
+
+        private static boolean isLongPoll(final HttpRequest request) {
+            final String uri = request.getRequestLine().getUri();
+            final int query = uri.indexOf('?');
+            if (query >= 0) {
+                for (final String param : uri.substring(query + 1).split("&")) {
+                    if (param.equals(LONG_POLL_PARAM) || param.startsWith(LONG_POLL_PARAM + "=")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static String removeLongPollParam(final String uri) {
+            final int query = uri.indexOf('?');
+            final StringJoiner params = new StringJoiner("&");
+            for (final String param : uri.substring(query + 1).split("&")) {
+                if (!param.equals(LONG_POLL_PARAM) && !param.startsWith(LONG_POLL_PARAM + "=")) {
+                    params.add(param);
+                }
+            }
+            return uri.substring(0, query) + (params.length() == 0 ? "" : "?" + params);
+        }
+
+        /**
+         * Wait the reply until the deadline of the request, checking periodically if the client closed the
+         * connection.
+         *
+         * @return the reply, or null if the client closed the connection.
+         */
+        private static GwReply waitReply(final Future<GwReply> future, final GwHeaders gw_headers,
+                                         final HttpContext context)
+                throws InterruptedException, ExecutionException, TimeoutException
+        {
+            final HttpConnection connection = (context != null)
+                    ? HttpCoreContext.adapt(context).getConnection()
+                    : null;
+            while (true) {
+                final long remaining = Deadline.remaining(gw_headers, TimeUnit.MILLISECONDS);
+                try {
+                    return future.get(Math.min(remaining, DISCONNECT_CHECK_MILLIS), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (remaining <= DISCONNECT_CHECK_MILLIS) {
+                        throw e;
+                    }
+                    if (connection != null && connection.isStale()) {
+                        return null;
+                    }
+                }
+            }
+        }
+
+        private static void setClientId(final GwHeaders gw_headers, final HttpContext context) {
+            if (context != null) {
+                final HttpConnection connection = HttpCoreContext.adapt(context).getConnection();
+                if (connection instanceof HttpInetConnection) {
+                    gw_headers.set(GW_CLIENT_ID, ((HttpInetConnection) connection).getRemoteAddress().getHostAddress());
+                }
+            }
+        }
+
         private static void setGatewayHeader(final GwHeaders gw_headers, final HKey<String> key,
                                              final HttpRequest request, final String headerName)
         {
@@ -159,12 +370,100 @@ public class ApacheHCServer implements HttpPluginServer {
                 final String acceptValues = acceptHeader.getValue();
                 for (String type : acceptValues.split(",")) {
                     final int pos = type.indexOf(';');
-                    gw_headers.add(GW_EXPECTED_TYPES, pos != -1 ? type.substring(0, pos) : type);
+                    type = (pos != -1 ? type.substring(0, pos) : type);
+                    // the event stream is the transport of the notifications, not a type of the resource
+                    if (!type.trim().equals(EventStreamReader.MIME_TYPE)) {
+                        gw_headers.add(GW_EXPECTED_TYPES, type);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Send the reply, with the validator and the freshness of a GET reply, so downstream caches can reuse it.
+         * A conditional GET whose validator matches is answered with 304 and no body. A GET reply is compressed
+         * if the client accepts it, reusing the variant already compressed for the same reply version.
+         */
+        private void sendReply(final HttpRequest request, final HttpResponse response, final GwReply gw_reply) {
+            byte[] body = gw_reply.payload().asBytes();
+            if ("GET".equals(request.getRequestLine().getMethod())) {
+                final String etag = entityTag(gw_reply);
+                final String encoding = CompressedVariants.negotiate(request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING));
+                final byte[] variant = (encoding != null) ? variants.get(request.getRequestLine().getUri(), etag, encoding, body) : null;
+                // each encoding is a distinct representation, with its own tag
+                final String variantTag = (variant != null) ? variantTag(etag, encoding) : etag;
+
+                response.setHeader(HttpHeaders.ETAG, variantTag);
+                response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl(gw_reply.headers().get(GW_CACHE_EXPIRATION)));
+                response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                final Header ifNoneMatch = request.getFirstHeader(HttpHeaders.IF_NONE_MATCH);
+                if (matches(ifNoneMatch, variantTag) || matches(ifNoneMatch, etag)) {
+                    response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+                    response.setEntity(null);
+                    return;
+                }
+                if (variant != null) {
+                    response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+                    body = variant;
                 }
             }
+
+            response.setEntity(new ByteArrayEntity(body));
+            fillHttpResponseHeaders(response, gw_reply.headers());
+        }
+
+        private static String variantTag(final String etag, final String encoding) {
+            return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+        }
+
+        /**
+         * @return the entity tag of the reply: its signature if any, or a hash of the payload.
+         */
+        static String entityTag(final GwReply gw_reply) {
+            final String signature = gw_reply.headers().get(GW_CACHE_SIGNATURE);
+            if (signature != null) {
+                // the signature may be already an entity tag, as the ETag of an upstream HTTP server
+                return signature.startsWith("\"") || signature.startsWith("W/\"")
+                        ? signature
+                        : "\"" + signature + "\"";
+            }
+            final byte[] payload = gw_reply.payload().asBytes();
+            final CRC32 crc = new CRC32();
+            crc.update(payload);
+            return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(payload.length) + "\"";
+        }
+
+        private static String cacheControl(final Date expiration) {
+            if (expiration == null) {
+                // cacheable, but revalidated on every use
+                return "no-cache";
+            }
+            final long maxAge = Math.max(0, expiration.getTime() - System.currentTimeMillis()) / 1000;
+            return "max-age=" + maxAge;
+        }
+
+        /**
+         * Weak comparison of {@code If-None-Match} with the entity tag, as required for GET.
+         */
+        private static boolean matches(final Header ifNoneMatch, final String etag) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            final String opaque = opaqueTag(etag);
+            for (final String tag : ifNoneMatch.getValue().split(",")) {
+                final String t = tag.trim();
+                if (t.equals("*") || opaqueTag(t).equals(opaque)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String opaqueTag(final String etag) {
+            return etag.startsWith("W/") ? etag.substring(2) : etag;
         }
 
-        private void fillHttpResponseHeaders(final HttpResponse response, final GwHeaders gwh) {
+        private static void fillHttpResponseHeaders(final HttpResponse response, final GwHeaders gwh) {
             addHttpHeader(response, "Content-Type", gwh.get(GW_CONTENT_TYPE));
         }
 
@@ -0,0 +1,133 @@
+package br.ufs.gothings.plugins.http;
+
+import br.ufs.gothings.core.util.Metrics;
+import org.apache.http.Header;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed variants of the replies, computed once per reply version and reused by the next requests.
+ * <p>
+ * The variants are kept by resource and entity tag in a bounded LRU map, as the tag of a reply may be the ETag or
+ * event id of an upstream server, which is only unique within its resource. Small bodies and bodies that don't shrink are sent
+ * as they are, which is also remembered, so they aren't compressed again.
+ *
+ * @author Wagner Macedo
+ */
+final class CompressedVariants {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final int MIN_SIZE = 256;
+    private static final int MAX_ENTRIES = 1024;
+    private static final byte[] NOT_SMALLER = new byte[0];
+
+    private final Map<String, byte[]> variants = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Choose the encoding of a response by the {@code Accept-Encoding} of the request, preferring gzip.
+     *
+     * @return the encoding, or null for the identity.
+     */
+    static String negotiate(final Header acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        // the quality of each coding, null if not listed
+        Double gzip = null, deflate = null, any = null;
+        for (final String item : acceptEncoding.getValue().split(",")) {
+            final String[] parts = item.trim().split(";");
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                final String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            switch (parts[0].trim().toLowerCase()) {
+                case GZIP:
+                    gzip = q;
+                    break;
+                case DEFLATE:
+                    deflate = q;
+                    break;
+                case "*":
+                    any = q;
+                    break;
+            }
+        }
+
+        final double fallback = (any != null) ? any : 0;
+        final double gzipQ = (gzip != null) ? gzip : fallback;
+        final double deflateQ = (deflate != null) ? deflate : fallback;
+        if (gzipQ > 0 && gzipQ >= deflateQ) {
+            return GZIP;
+        }
+        if (deflateQ > 0) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * Get the variant of a reply, compressing it if not done yet.
+     *
+     * @param uri         the requested resource
+     * @param etag        the entity tag of the reply
+     * @param encoding    the encoding of the variant
+     * @param body        the identity body
+     * @return the compressed body, or null if the body is better sent as it is.
+     */
+    byte[] get(final String uri, final String etag, final String encoding, final byte[] body) {
+        if (body.length < MIN_SIZE) {
+            return null;
+        }
+
+        final String key = encoding + ' ' + etag + ' ' + uri;
+        byte[] variant;
+        synchronized (variants) {
+            variant = variants.get(key);
+        }
+        if (variant == null) {
+            variant = compress(encoding, body);
+            if (variant.length >= body.length) {
+                variant = NOT_SMALLER;
+            }
+            synchronized (variants) {
+                variants.put(key, variant);
+            }
+        }
+
+        if (variant == NOT_SMALLER) {
+            return null;
+        }
+        Metrics.counter("http.compression.saved").add(body.length - variant.length);
+        return variant;
+    }
+
+    private static byte[] compress(final String encoding, final byte[] body) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+        try (OutputStream z = GZIP.equals(encoding) ? new GZIPOutputStream(out) : new DeflaterOutputStream(out)) {
+            z.write(body);
+        } catch (IOException e) {
+            // never happens writing to memory
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,108 @@
+package br.ufs.gothings.plugins.http;
+
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwMessage;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.plugin.ReplyListener;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response entity streaming the notifications of an observed resource as Server-Sent Events.
+ * <p>
+ * The entity is written by the server worker thread for as long as the client stays connected, and a comment is
+ * sent periodically while the resource is idle, to find out when the client is gone. The stream ends with an
+ * {@code error} event if the observe fails.
+ *
+ * @author Wagner Macedo
+ */
+final class EventStreamEntity extends AbstractHttpEntity implements ReplyListener {
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final byte[] HEARTBEAT = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final BlockingQueue<GwMessage> notifications = new LinkedBlockingQueue<>();
+    private final Runnable onClose;
+
+    /**
+     * @param onClose    called when the stream ends, to unobserve the resource
+     */
+    EventStreamEntity(final Runnable onClose) {
+        this.onClose = onClose;
+        setContentType(EventStreamReader.MIME_TYPE);
+        setChunked(true);
+    }
+
+    @Override
+    public void onReply(final GwReply reply) {
+        notifications.add(reply);
+    }
+
+    @Override
+    public void onError(final GwError error) {
+        notifications.add(error);
+    }
+
+    @Override
+    public void writeTo(final OutputStream out) throws IOException {
+        try {
+            while (true) {
+                final GwMessage msg = notifications.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                if (msg == null) {
+                    out.write(HEARTBEAT);
+                } else if (msg instanceof GwError) {
+                    writeEvent(out, "error", ((GwError) msg).getCode().name());
+                    out.flush();
+                    return;
+                } else {
+                    writeEvent(out, null, ((GwReply) msg).payload().asString(StandardCharsets.UTF_8));
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            onClose.run();
+        }
+    }
+
+    private static void writeEvent(final OutputStream out, final String event, final String data)
+            throws IOException
+    {
+        final StringBuilder sb = new StringBuilder();
+        if (event != null) {
+            sb.append("event: ").append(event).append('\n');
+        }
+        for (final String line : data.split("\r\n|\r|\n", -1)) {
+            sb.append("data: ").append(line).append('\n');
+        }
+        sb.append('\n');
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() {
+        throw new UnsupportedOperationException("event stream can only be written");
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+}
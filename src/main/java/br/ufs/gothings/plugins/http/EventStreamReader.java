@@ -0,0 +1,145 @@
+package br.ufs.gothings.plugins.http;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of the events of a {@code text/event-stream}, as of the Server-Sent Events specification.
+ * <p>
+ * Only the {@code data} and {@code id} fields matter to the gateway, the other fields and the comments are skipped.
+ * The lines and the data of an event are bounded by a max length, as a reply payload is.
+ *
+ * @author Wagner Macedo
+ */
+final class EventStreamReader implements Closeable {
+    static final String MIME_TYPE = "text/event-stream";
+
+    // room for the field name of a line, besides its value
+    private static final int FIELD_LENGTH = 16;
+
+    private final BufferedReader reader;
+    private final int maxLength;
+    private final StringBuilder line = new StringBuilder();
+    private boolean skipLF = false;
+    private String lastId;
+    private String eventId;
+
+    /**
+     * @param in           the stream
+     * @param maxLength    max chars of the data of an event, and of the value of a line
+     */
+    EventStreamReader(final InputStream in, final int maxLength) {
+        // event streams are always UTF-8
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Read the next event, blocking until it's complete.
+     *
+     * @return the data of the event, or null if the stream ended.
+     * @throws EventTooLargeException if a line or the data of the event is longer than the max length
+     * @throws IOException if the stream failed
+     */
+    String next() throws IOException {
+        eventId = null;
+        StringBuilder data = null;
+        String line;
+        while ((line = readLine()) != null) {
+            // a blank line dispatches the event, if it has data
+            if (line.isEmpty()) {
+                if (data != null) {
+                    return data.toString();
+                }
+                continue;
+            }
+            if (line.startsWith(":")) {
+                continue;
+            }
+
+            final int colon = line.indexOf(':');
+            final String field = (colon < 0) ? line : line.substring(0, colon);
+            String value = (colon < 0) ? "" : line.substring(colon + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+
+            switch (field) {
+                case "data":
+                    if ((data == null ? 0 : data.length() + 1) + value.length() > maxLength) {
+                        throw new EventTooLargeException(maxLength);
+                    }
+                    if (data == null) {
+                        data = new StringBuilder(value);
+                    } else {
+                        data.append('\n').append(value);
+                    }
+                    break;
+                case "id":
+                    lastId = value.isEmpty() ? null : value;
+                    eventId = lastId;
+                    break;
+            }
+        }
+        // an incomplete event at the end of the stream is discarded
+        return null;
+    }
+
+    /**
+     * Read a line ended by CR, LF or CRLF, up to the max length.
+     *
+     * @return the line, or null if the stream ended.
+     */
+    private String readLine() throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = reader.read()) >= 0) {
+            if (skipLF) {
+                skipLF = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (c == '\n' || c == '\r') {
+                skipLF = (c == '\r');
+                return line.toString();
+            }
+            if (line.length() >= maxLength + FIELD_LENGTH) {
+                throw new EventTooLargeException(maxLength);
+            }
+            line.append((char) c);
+        }
+        // an incomplete line at the end of the stream is discarded, as its event is
+        return null;
+    }
+
+    /**
+     * @return the last event id seen in the stream.
+     */
+    String getLastId() {
+        return lastId;
+    }
+
+    /**
+     * @return the id set by the event last read, or null if it didn't set one. Unlike the last event id, it isn't
+     * kept between events, so it identifies the data of that event only.
+     */
+    String getEventId() {
+        return eventId;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    static final class EventTooLargeException extends IOException {
+        EventTooLargeException(final int maxLength) {
+            super("event longer than " + maxLength + " chars");
+        }
+    }
+}
@@ -6,6 +6,7 @@ import br.ufs.gothings.core.plugin.PluginClient;
 import br.ufs.gothings.core.plugin.PluginServer;
 import br.ufs.gothings.core.plugin.ReplyLink;
 import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Polling;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -28,6 +29,10 @@ public class HttpPlugin implements PluginClient, PluginServer {
         client = new ApacheHCClient();
         server = new ApacheHCServer();
         settings = new Settings(started);
+        settings.registerKey(Polling.MIN_INTERVAL, Integer.class, seconds -> seconds > 0);
+        settings.registerKey(Polling.MAX_INTERVAL, Integer.class, seconds -> seconds > 0);
+        settings.registerKey(ApacheHCClient.MAX_PAYLOAD, Integer.class, size -> size > 0);
+        settings.registerKey(ApacheHCServer.MAX_STREAMS, Integer.class, max -> max > 0);
     }
 
     @Override
@@ -37,7 +42,7 @@ public class HttpPlugin implements PluginClient, PluginServer {
                 throw new NullPointerException("no RequestLink to start the server");
             }
             try {
-                client.start(replyLink);
+                client.start(replyLink, settings);
                 server.start(requestLink, settings);
             } catch (InterruptedException e) {
                 started.set(false);
@@ -73,6 +78,11 @@ public class HttpPlugin implements PluginClient, PluginServer {
         client.sendRequest(request);
     }
 
+    @Override
+    public void cancelRequest(final long sequence) {
+        client.cancelRequest(sequence);
+    }
+
     @Override
     public void setUp(final ReplyLink replyLink) {
         if (started.get()) {
@@ -54,7 +54,7 @@ public final class MqttPluginClient {
                     case REASON_CODE_CLIENT_TIMEOUT:
                     case REASON_CODE_CONNECTION_LOST:
                         replyLink.sendError(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
-                        break;
+                        return;
                 }
                 replyLink.sendError(new GwError(request, ErrorCode.OTHER));
             }
@@ -6,8 +6,10 @@ import br.ufs.gothings.core.message.headers.GwHeaders;
 import br.ufs.gothings.core.message.GwReply;
 import br.ufs.gothings.core.message.GwRequest;
 import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.FutureReply;
 import br.ufs.gothings.core.plugin.ReplyListener;
 import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.RetryPolicy;
 import io.moquette.interception.InterceptHandler;
 import io.moquette.interception.messages.*;
 import io.moquette.proto.messages.AbstractMessage;
@@ -89,7 +91,12 @@ public class MqttPluginServer {
         }
     }
 
-    public void receiveReply(final GwReply reply) {
+    private void receiveReply(final GwReply reply, final SubscriptionInfo si) {
+        // the topic is being observed successfully, so the next failure starts a new backoff
+        if (si != null) {
+            si.retries.set(0);
+        }
+
         final PublishMessage msg = new PublishMessage();
         msg.setMessageID(messageIdGen.incrementAndGet());
         msg.setRetainFlag(false);
@@ -101,7 +108,10 @@ public class MqttPluginServer {
         embeddedServer.internalPublish(msg);
     }
 
-    public void receiveError(final GwError error) {
+    private void receiveError(final GwError error, final SubscriptionInfo si) {
+        // The error headers were changed by the gateway, so the topic comes from the subscription when available
+        final String topic = (si != null) ? si.name : error.headers().get(GW_PATH);
+
         switch (error.getCode()) {
             // If target plugin is unavailable then, as we know the gateway cannot register another plugin dynamically,
             // silently remove all subscribed clients from this topic and avoid future clients to subscribe to it.
@@ -111,7 +121,6 @@ public class MqttPluginServer {
             case OTHER:
             case INTERNAL_ERROR:
                 // Instruct the authorizator to don't accept this topic anymore
-                final String topic = error.headers().get(GW_PATH);
                 shared.forbiddenTopics.add(topic);
                 // Remove the topics from all the clients
                 shared.clients.forEach((clientID, clientInfo) -> {
@@ -124,12 +133,38 @@ public class MqttPluginServer {
                     shared.processorProxy.removeSubscription(topic, clientID);
                 });
                 break;
+            // The gateway is shedding load, so a publish is dropped right away without any retry, which would only
+            // add to the overload. An observe is retried as below though, backing off, as nothing else would observe
+            // the topic again while it has subscribed clients.
+            case OVERLOADED:
+                if (si == null) {
+                    logger.debug("dropped request to topic %s: gateway overloaded", topic);
+                    break;
+                }
+                // fall through
             // The reasons target/path not found don't mean the topic won't be find on next observes, so try again on
-            // the future.
+            // the future, backing off while the errors repeat. When the retry budget is spent, the retry still
+            // happens, but with the longest delay, as there is no other way to recover the subscription.
             case TARGET_NOT_FOUND:
             case PATH_NOT_FOUND:
-                final GwRequest request = new GwRequest(error.headers(), null);
-                shared.delayer.schedule(() -> shared.sendRequest(request), 30, TimeUnit.SECONDS);
+                // nothing to do for publishes nor for observes already replaced by a retry
+                if (si == null || si.sequence.get() != error.getSequence()) {
+                    break;
+                }
+                final int attempt = si.retries.getAndIncrement();
+                long delay = shared.retryPolicy.nextDelay(attempt, TimeUnit.MILLISECONDS);
+                if (delay < 0) {
+                    // no jitter, which could make the delay as short as a retry within the budget
+                    delay = shared.retryPolicy.maxDelay(TimeUnit.MILLISECONDS);
+                }
+                final int qos = error.headers().get(GW_QOS, 0);
+                final String clientID = error.headers().get(GW_CLIENT_ID);
+                shared.delayer.schedule(() -> {
+                    // skip if all clients unsubscribed in the meantime
+                    if (si.getCounter() > 0) {
+                        shared.observe(si, qos, clientID);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
                 break;
         }
     }
@@ -268,15 +303,9 @@ public class MqttPluginServer {
 
                 // if subscribing counter == 1 then makes an internal request
                 if (counter == 1) {
-                    final GwRequest request = new GwRequest();
-                    final GwHeaders h = request.headers();
-                    h.set(GW_OPERATION, Operation.OBSERVE);
-                    h.set(GW_QOS, toUnsignedInt(msg.getRequestedQos().byteValue()));
-                    h.set(GW_PATH, msg.getTopicFilter());
-
-                    shared.sendRequest(request);
-
-                    subscription.sequence.set(request.getSequence());
+                    subscription.retries.set(0);
+                    shared.observe(subscription, toUnsignedInt(msg.getRequestedQos().byteValue()),
+                            msg.getClientID());
                 }
             }
         }
@@ -306,6 +335,7 @@ public class MqttPluginServer {
             final GwHeaders h = request.headers();
             h.set(GW_QOS, toUnsignedInt(msg.getQos().byteValue()));
             h.set(GW_PATH, msg.getTopicName());
+            h.set(GW_CLIENT_ID, msg.getClientID());
 
             // when retain=true request with UPDATE (if has payload) or DELETE (if empty payload)
             if (msg.isRetainFlag()) {
@@ -435,6 +465,8 @@ public class MqttPluginServer {
 
         private final AtomicInteger counter = new AtomicInteger(0);
         public final AtomicLong sequence = new AtomicLong();
+        // failed observes since the last reply
+        public final AtomicInteger retries = new AtomicInteger(0);
 
         public SubscriptionInfo(final String name) {
             this.name = name;
@@ -457,6 +489,7 @@ public class MqttPluginServer {
         private final MqttPluginServer pluginServer;
         private final RequestLink requestLink;
         private final ScheduledExecutorService delayer = Executors.newSingleThreadScheduledExecutor();
+        private final RetryPolicy retryPolicy = new RetryPolicy(5, 600, TimeUnit.SECONDS, 0, 5, 10);
 
         private ProtocolProcessorProxy processorProxy;
         private Set<String> forbiddenTopics;
@@ -473,19 +506,40 @@ public class MqttPluginServer {
             clients = null;
         }
 
+        private void observe(final SubscriptionInfo si, final int qos, final String clientID) {
+            final GwRequest request = new GwRequest();
+            final GwHeaders h = request.headers();
+            h.set(GW_OPERATION, Operation.OBSERVE);
+            h.set(GW_QOS, qos);
+            h.set(GW_PATH, si.name);
+            if (clientID != null) {
+                h.set(GW_CLIENT_ID, clientID);
+            }
+
+            sendRequest(request, si);
+        }
+
         private void sendRequest(final GwRequest request) {
-            requestLink.send(request)
-                .setListener(new ReplyListener() {
-                    @Override
-                    public void onReply(final GwReply reply) {
-                        pluginServer.receiveReply(reply);
-                    }
+            sendRequest(request, null);
+        }
 
-                    @Override
-                    public void onError(final GwError error) {
-                        pluginServer.receiveError(error);
-                    }
-                });
+        private void sendRequest(final GwRequest request, final SubscriptionInfo si) {
+            final FutureReply future = requestLink.send(request);
+            // the sequence is known before the listener is set, so an error sent right away finds it
+            if (si != null) {
+                si.sequence.set(request.getSequence());
+            }
+            future.setListener(new ReplyListener() {
+                @Override
+                public void onReply(final GwReply reply) {
+                    pluginServer.receiveReply(reply, si);
+                }
+
+                @Override
+                public void onError(final GwError error) {
+                    pluginServer.receiveError(error, si);
+                }
+            });
         }
     }
 }
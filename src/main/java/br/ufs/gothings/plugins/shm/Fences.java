@@ -0,0 +1,71 @@
+package br.ufs.gothings.plugins.shm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences ordering the accesses to the shared memory, as seen by other processes.
+ * <p>
+ * Java 8 has no public fences, so {@code sun.misc.Unsafe} is looked up at runtime. The method handles are constants,
+ * so the JIT inlines them as the fence instructions. Without {@code Unsafe}, a volatile write is used, which is a
+ * full fence in HotSpot.
+ *
+ * @author Wagner Macedo
+ */
+final class Fences {
+    private static final MethodHandle LOAD_FENCE;
+    private static final MethodHandle STORE_FENCE;
+
+    private static volatile int fallback;
+
+    static {
+        MethodHandle load = null, store = null;
+        try {
+            final Class<?> cls = Class.forName("sun.misc.Unsafe");
+            final Field field = cls.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            final Object unsafe = field.get(null);
+            final MethodType type = MethodType.methodType(void.class);
+            load = MethodHandles.lookup().findVirtual(cls, "loadFence", type).bindTo(unsafe);
+            store = MethodHandles.lookup().findVirtual(cls, "storeFence", type).bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+        }
+        LOAD_FENCE = load;
+        STORE_FENCE = store;
+    }
+
+    private Fences() {
+    }
+
+    /**
+     * Loads before the fence are not reordered with loads and stores after it.
+     */
+    static void loadFence() {
+        if (LOAD_FENCE == null) {
+            fallback = 0;
+            return;
+        }
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads and stores before the fence are not reordered with stores after it.
+     */
+    static void storeFence() {
+        if (STORE_FENCE == null) {
+            fallback = 0;
+            return;
+        }
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package br.ufs.gothings.plugins.shm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread polling the rings waits while there is no work: it spins first, as the next message usually comes
+ * within microseconds, then yields and at last parks for growing periods, so an idle connection doesn't burn a CPU.
+ * <p>
+ * A parked thread can be woken earlier with {@link LockSupport#unpark(Thread)}.
+ *
+ * @author Wagner Macedo
+ */
+final class IdleStrategy {
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int spins;
+    private final int yields;
+
+    private int idleCount = 0;
+    private long parkNanos = MIN_PARK_NANOS;
+
+    /**
+     * @param spins     times to spin before yielding
+     * @param yields    times to yield before parking
+     */
+    IdleStrategy(final int spins, final int yields) {
+        this.spins = spins;
+        this.yields = yields;
+    }
+
+    /**
+     * Wait a bit if no work was done.
+     *
+     * @param workCount    the work done since the last call
+     */
+    void idle(final int workCount) {
+        if (workCount > 0) {
+            idleCount = 0;
+            parkNanos = MIN_PARK_NANOS;
+        } else if (idleCount < spins) {
+            idleCount++;
+        } else if (idleCount < spins + yields) {
+            idleCount++;
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(parkNanos);
+            parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+        }
+    }
+}
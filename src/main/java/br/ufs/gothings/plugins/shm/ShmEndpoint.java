@@ -0,0 +1,328 @@
+package br.ufs.gothings.plugins.shm;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.common.GatewayException;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.ReplyListener;
+import br.ufs.gothings.plugins.gwnative.NativeFrame;
+import br.ufs.gothings.plugins.gwnative.NativeFrameCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_OPERATION;
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_PATH;
+
+/**
+ * Client library of the shared memory plugin, for processes running in the same host of the gateway.
+ * <p>
+ * The process sends requests to the gateway with {@link #send(GwRequest)} and {@link #observe(GwRequest,
+ * ReplyListener)}, and can also be a target of the gateway, named as the endpoint, answering the requests with the
+ * handler given to {@link #serve(Function)}.
+ * <p>
+ * The sends are serialized, as the rings have a single producer, and wait while the gateway is behind. A send
+ * waiting longer than the send timeout fails with {@link ErrorCode#UNAVAILABLE_PLUGIN}, as the gateway may be gone.
+ * The replies and the requests of the gateway are handled by a thread of the endpoint, so the listeners and the
+ * handler should return fast.
+ * <p>
+ * The rings outlive a restart of the gateway, which takes them again where it stopped. The requests waiting a reply
+ * at the time may never be answered, so the callers should use timeouts.
+ *
+ * @author Wagner Macedo
+ */
+public final class ShmEndpoint implements Closeable {
+    public static final Path DEFAULT_DIR = Paths.get("/dev/shm");
+    public static final int DEFAULT_CAPACITY = 1024 * 1024;
+    public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 10_000;
+
+    private static final int IDLE_SPINS = 10_000;
+    private static final int IDLE_YIELDS = 100;
+    private static final int POLL_LIMIT = 256;
+
+    private final Path dir;
+    private final String name;
+    private final ShmRing up;
+    private final ShmRing down;
+    private final Thread reader;
+    private final ByteBuf scratch = Unpooled.directBuffer();
+    private final IdleStrategy sendIdle = new IdleStrategy(IDLE_SPINS, IDLE_YIELDS);
+    private final long sendTimeout;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final ConcurrentMap<Long, CompletableFuture<GwReply>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Observe> observes = new ConcurrentHashMap<>();
+
+    private volatile Function<GwRequest, GwReply> handler;
+    private volatile boolean closed = false;
+
+    private ShmEndpoint(final Path dir, final String name, final int capacity, final long sendTimeoutMillis)
+            throws IOException
+    {
+        this.dir = dir;
+        this.name = name;
+        this.sendTimeout = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        // the down ring first, as the gateway opens the pair once the up ring exists
+        this.down = ShmRing.create(ShmNames.downFile(dir, name), capacity);
+        try {
+            this.up = ShmRing.create(ShmNames.upFile(dir, name), capacity);
+        } catch (IOException | RuntimeException e) {
+            down.close();
+            Files.deleteIfExists(ShmNames.downFile(dir, name));
+            throw e;
+        }
+        this.reader = new Thread(this::read, "shm-" + name);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Connect to the gateway in the default directory, with rings of the default capacity.
+     *
+     * @param name    the name of the endpoint, unique in the host, made of letters, digits, '.', '_' and '-'
+     */
+    public static ShmEndpoint connect(final String name) throws IOException {
+        return connect(DEFAULT_DIR, name, DEFAULT_CAPACITY, DEFAULT_SEND_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param dir         the directory of the rings, the same of the gateway setting {@code shm.dir}
+     * @param name        the name of the endpoint, unique in the host, made of letters, digits, '.', '_' and '-'
+     * @param capacity    the capacity of each ring in bytes, a power of two
+     */
+    public static ShmEndpoint connect(final Path dir, final String name, final int capacity) throws IOException {
+        return connect(dir, name, capacity, DEFAULT_SEND_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param dir                  the directory of the rings, the same of the gateway setting {@code shm.dir}
+     * @param name                 the name of the endpoint, unique in the host, made of letters, digits, '.', '_'
+     *                             and '-'
+     * @param capacity             the capacity of each ring in bytes, a power of two
+     * @param sendTimeoutMillis    max wait of a send for room in the ring
+     */
+    public static ShmEndpoint connect(final Path dir, final String name, final int capacity,
+                                      final long sendTimeoutMillis) throws IOException
+    {
+        if (!ShmNames.isValid(name)) {
+            throw new IllegalArgumentException("invalid endpoint name: " + name);
+        }
+        return new ShmEndpoint(dir, name, capacity, sendTimeoutMillis);
+    }
+
+    /**
+     * Send a request to the gateway. The request sequence is set by this method.
+     *
+     * @return the future reply, failing with {@link GatewayException} on errors.
+     */
+    public CompletableFuture<GwReply> send(final GwRequest request) {
+        final long id = ids.incrementAndGet();
+        request.setSequence(id);
+        final CompletableFuture<GwReply> future = new CompletableFuture<>();
+        pending.put(id, future);
+        // cancelling the future tells the gateway to stop waiting the reply
+        future.whenComplete((reply, throwable) -> {
+            if (pending.remove(id, future) && future.isCancelled()) {
+                write(NativeFrame.cancel(id));
+            }
+        });
+        final ErrorCode error = write(NativeFrame.request(id, request));
+        if (error != null) {
+            pending.remove(id);
+            future.completeExceptionally(new GatewayException(request, error));
+        }
+        return future;
+    }
+
+    /**
+     * Observe a resource through the gateway, until {@link #unobserve(long)} or an error. The request sequence is set
+     * by this method.
+     *
+     * @return the id of the observe.
+     */
+    public long observe(final GwRequest request, final ReplyListener listener) {
+        final long id = ids.incrementAndGet();
+        request.setSequence(id);
+        request.headers().set(GW_OPERATION, Operation.OBSERVE);
+        observes.put(id, new Observe(request, listener));
+        final ErrorCode error = write(NativeFrame.request(id, request));
+        if (error != null) {
+            observes.remove(id);
+            listener.onError(new GwError(request, error));
+        }
+        return id;
+    }
+
+    public void unobserve(final long id) {
+        if (observes.remove(id) != null) {
+            write(NativeFrame.cancel(id));
+        }
+    }
+
+    /**
+     * Answer the requests the gateway sends to this endpoint. Without a handler, the gateway gets
+     * {@link ErrorCode#PATH_NOT_FOUND}.
+     *
+     * @param handler    gives the reply of a request, or null if the path doesn't exist
+     */
+    public void serve(final Function<GwRequest, GwReply> handler) {
+        this.handler = handler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (up) {
+            up.markClosed();
+        }
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final IOException ex = new IOException("endpoint closed");
+        pending.values().forEach(future -> future.completeExceptionally(ex));
+        pending.clear();
+        observes.clear();
+        up.close();
+        down.close();
+        Files.deleteIfExists(ShmNames.upFile(dir, name));
+        Files.deleteIfExists(ShmNames.downFile(dir, name));
+    }
+
+    /**
+     * Write a frame, waiting for room in the ring up to the send timeout.
+     *
+     * @return null if written, or if the endpoint is closed; {@link ErrorCode#PAYLOAD_TOO_LARGE} if the frame doesn't
+     * fit in the ring; {@link ErrorCode#UNAVAILABLE_PLUGIN} if the gateway didn't make room in time.
+     */
+    private ErrorCode write(final NativeFrame frame) {
+        synchronized (up) {
+            if (closed) {
+                return null;
+            }
+            scratch.clear();
+            NativeFrameCodec.write(frame, scratch);
+            if (scratch.readableBytes() > up.maxRecordLength()) {
+                return ErrorCode.PAYLOAD_TOO_LARGE;
+            }
+            final long start = System.nanoTime();
+            while (!up.offer(scratch)) {
+                // the monitor is held, so a close waits for this loop to see it
+                if (closed) {
+                    return null;
+                }
+                if (System.nanoTime() - start > sendTimeout) {
+                    return ErrorCode.UNAVAILABLE_PLUGIN;
+                }
+                sendIdle.idle(0);
+            }
+            sendIdle.idle(1);
+            return null;
+        }
+    }
+
+    private void read() {
+        final IdleStrategy idle = new IdleStrategy(IDLE_SPINS, IDLE_YIELDS);
+        while (!closed) {
+            idle.idle(down.poll(record -> handle(NativeFrameCodec.read(record)), POLL_LIMIT));
+        }
+    }
+
+    private void handle(final NativeFrame frame) {
+        final long id = frame.getId();
+        switch (frame.getKind()) {
+            case REPLY: {
+                final Observe observe = observes.get(id);
+                final GwReply reply = new GwReply(frame.getHeaders(), frame.getPayload(), id);
+                if (observe != null) {
+                    observe.listener.onReply(reply);
+                } else {
+                    final CompletableFuture<GwReply> future = pending.remove(id);
+                    if (future != null) {
+                        future.complete(reply);
+                    }
+                }
+                break;
+            }
+            case ERROR: {
+                final Observe observe = observes.remove(id);
+                if (observe != null) {
+                    observe.listener.onError(new GwError(observe.request, frame.getCode()));
+                } else {
+                    final CompletableFuture<GwReply> future = pending.remove(id);
+                    if (future != null) {
+                        final GwRequest request = new GwRequest();
+                        request.setSequence(id);
+                        future.completeExceptionally(new GatewayException(request, frame.getCode()));
+                    }
+                }
+                break;
+            }
+            case REQUEST:
+                answer(frame);
+                break;
+            case CANCEL:
+                // the requests of the gateway are answered synchronously, nothing to cancel
+                break;
+        }
+    }
+
+    private void answer(final NativeFrame frame) {
+        final long id = frame.getId();
+        final GwHeaders h = frame.getHeaders();
+        final GwRequest request = new GwRequest(h, frame.getPayload());
+        request.setSequence(id);
+
+        final Function<GwRequest, GwReply> handler = this.handler;
+        GwReply reply;
+        try {
+            reply = (handler != null) ? handler.apply(request) : null;
+        } catch (RuntimeException e) {
+            write(NativeFrame.error(id, ErrorCode.INTERNAL_ERROR));
+            return;
+        }
+        if (reply == null) {
+            write(NativeFrame.error(id, ErrorCode.PATH_NOT_FOUND));
+            return;
+        }
+        reply.headers().setIfAbsent(GW_PATH, h.get(GW_PATH));
+        // a gateway not taking the reply won't take the error either
+        if (write(NativeFrame.reply(id, reply)) == ErrorCode.PAYLOAD_TOO_LARGE) {
+            write(NativeFrame.error(id, ErrorCode.PAYLOAD_TOO_LARGE));
+        }
+    }
+
+    private static final class Observe {
+        final GwRequest request;
+        final ReplyListener listener;
+
+        Observe(final GwRequest request, final ReplyListener listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+    }
+}
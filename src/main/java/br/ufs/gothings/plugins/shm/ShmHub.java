@@ -0,0 +1,191 @@
+package br.ufs.gothings.plugins.shm;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Metrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
+
+/**
+ * The gateway side of the shared memory transport: a single thread finds the processes connecting, by their ring
+ * files, and polls the rings of all of them.
+ * <p>
+ * A process is gone when it closes its up ring or when it isn't running anymore, in which case its files are
+ * deleted.
+ *
+ * @author Wagner Macedo
+ */
+class ShmHub {
+    private static final Logger logger = LogManager.getFormatterLogger(ShmHub.class);
+
+    private static final long SCAN_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final int IDLE_SPINS = 10_000;
+    private static final int IDLE_YIELDS = 100;
+
+    private final Map<String, ShmSession> sessions = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private Thread poller;
+
+    private Path dir;
+    private RequestLink requestLink;
+    private ReplyLink replyLink;
+
+    void start(final Path dir, final RequestLink requestLink, final ReplyLink replyLink) {
+        this.dir = dir;
+        this.requestLink = requestLink;
+        this.replyLink = replyLink;
+        this.running = true;
+        Metrics.gauge("shm.sessions", sessions::size);
+
+        poller = new Thread(this::poll, "gw-shm");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(poller);
+        poller.join();
+        poller = null;
+        Metrics.removeAll("shm.");
+    }
+
+    /**
+     * Send a request to the process named by the target.
+     */
+    void sendRequest(final GwRequest request) {
+        final String target = request.headers().get(GW_TARGET);
+        final ShmSession session = (target != null) ? sessions.get(target) : null;
+        if (session == null) {
+            replyLink.sendError(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
+            return;
+        }
+        session.send(request);
+    }
+
+    void cancelRequest(final long sequence) {
+        for (final ShmSession session : sessions.values()) {
+            if (session.cancelOutgoing(sequence)) {
+                return;
+            }
+        }
+    }
+
+    private void poll() {
+        final IdleStrategy idle = new IdleStrategy(IDLE_SPINS, IDLE_YIELDS);
+        long nextScan = System.nanoTime();
+        while (running) {
+            if (System.nanoTime() - nextScan >= 0) {
+                scan();
+                nextScan = System.nanoTime() + SCAN_PERIOD_NANOS;
+            }
+            int work = 0;
+            for (final ShmSession session : sessions.values()) {
+                try {
+                    work += session.doWork();
+                } catch (RuntimeException e) {
+                    logger.error("shared memory session %s failed, closing it", session.getName(), e);
+                    close(session);
+                }
+            }
+            idle.idle(work);
+        }
+
+        sessions.values().forEach(this::close);
+    }
+
+    /**
+     * Open the sessions of the new processes and close the ones of the processes gone.
+     */
+    private void scan() {
+        for (final ShmSession session : sessions.values()) {
+            if (session.isClosed()) {
+                close(session);
+            } else if (!isRunning(session.getCreatorPid())) {
+                close(session);
+                deleteFiles(session.getName());
+            }
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, ShmNames.GLOB_UP)) {
+            for (final Path up : files) {
+                final String name = ShmNames.nameOf(up);
+                if (name != null && !sessions.containsKey(name)) {
+                    open(name, up);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("could not scan %s for shared memory rings", dir, e);
+        }
+    }
+
+    private void open(final String name, final Path upFile) {
+        final Path downFile = ShmNames.downFile(dir, name);
+        ShmRing up = null;
+        try {
+            up = ShmRing.open(upFile);
+            if (up.isClosed() || !isRunning(up.getCreatorPid())) {
+                // left by a process that didn't close it
+                up.close();
+                deleteFiles(name);
+                return;
+            }
+            final ShmRing down = ShmRing.open(downFile);
+            sessions.put(name, new ShmSession(name, up, down, requestLink, replyLink, this::wakeUp));
+            logger.info("shared memory session %s opened", name);
+        } catch (IOException e) {
+            logger.error("could not open the shared memory rings of %s", name, e);
+            if (up != null) {
+                try {
+                    up.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void close(final ShmSession session) {
+        if (sessions.remove(session.getName(), session)) {
+            session.close();
+            logger.info("shared memory session %s closed", session.getName());
+        }
+    }
+
+    private void deleteFiles(final String name) {
+        try {
+            Files.deleteIfExists(ShmNames.upFile(dir, name));
+            Files.deleteIfExists(ShmNames.downFile(dir, name));
+        } catch (IOException e) {
+            logger.error("could not delete the shared memory rings of %s", name, e);
+        }
+    }
+
+    private void wakeUp() {
+        final Thread poller = this.poller;
+        if (poller != null) {
+            LockSupport.unpark(poller);
+        }
+    }
+
+    private static boolean isRunning(final int pid) {
+        // only known where /proc is available, otherwise the process is taken as running
+        final Path proc = Paths.get("/proc");
+        return pid == 0 || !Files.isDirectory(proc) || Files.exists(proc.resolve(Integer.toString(pid)));
+    }
+}
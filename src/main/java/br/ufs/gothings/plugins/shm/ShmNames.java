@@ -0,0 +1,46 @@
+package br.ufs.gothings.plugins.shm;
+
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Names of the ring files of the processes, {@code gothings-<name>.up} written by the process and
+ * {@code gothings-<name>.down} written by the gateway.
+ *
+ * @author Wagner Macedo
+ */
+final class ShmNames {
+    static final String GLOB_UP = "gothings-*.up";
+
+    private static final String PREFIX = "gothings-";
+    private static final String UP = ".up";
+    private static final String DOWN = ".down";
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private ShmNames() {
+    }
+
+    static boolean isValid(final String name) {
+        return name != null && VALID_NAME.matcher(name).matches();
+    }
+
+    static Path upFile(final Path dir, final String name) {
+        return dir.resolve(PREFIX + name + UP);
+    }
+
+    static Path downFile(final Path dir, final String name) {
+        return dir.resolve(PREFIX + name + DOWN);
+    }
+
+    /**
+     * @return the name of the process of an up file, or null if not a valid one.
+     */
+    static String nameOf(final Path upFile) {
+        final String file = upFile.getFileName().toString();
+        if (!file.startsWith(PREFIX) || !file.endsWith(UP)) {
+            return null;
+        }
+        final String name = file.substring(PREFIX.length(), file.length() - UP.length());
+        return isValid(name) ? name : null;
+    }
+}
@@ -0,0 +1,102 @@
+package br.ufs.gothings.plugins.shm;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.plugin.PluginClient;
+import br.ufs.gothings.core.plugin.PluginServer;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.plugin.RequestLink;
+
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plugin exchanging the gateway messages with processes of the same host through shared memory rings, avoiding
+ * the network stack. The processes use the {@link ShmEndpoint} library.
+ * <p>
+ * As a server, the plugin takes the requests of the processes. As a client, it sends requests to the processes,
+ * the target being the name of the endpoint.
+ *
+ * @author Wagner Macedo
+ */
+public class ShmPlugin implements PluginClient, PluginServer {
+
+    static final String GW_PROTOCOL = "shm";
+
+    // directory of the ring files, a plugin setting
+    static final String DIR = "shm.dir";
+
+    private final ShmHub hub;
+    private final Settings settings;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private ReplyLink replyLink;
+    private RequestLink requestLink;
+
+    public ShmPlugin() {
+        hub = new ShmHub();
+        settings = new Settings(started);
+        settings.registerKey(DIR, String.class, dir -> !dir.isEmpty());
+    }
+
+    @Override
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            if (requestLink == null) {
+                throw new NullPointerException("no RequestLink to start the server");
+            }
+            hub.start(Paths.get(settings.get(DIR, ShmEndpoint.DEFAULT_DIR.toString())), requestLink, replyLink);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (started.compareAndSet(true, false)) {
+            try {
+                hub.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String getProtocol() {
+        return GW_PROTOCOL;
+    }
+
+    @Override
+    public Settings settings() {
+        return settings;
+    }
+
+    /* Client implementation */
+
+    @Override
+    public void handleRequest(final GwRequest request) {
+        hub.sendRequest(request);
+    }
+
+    @Override
+    public void cancelRequest(final long sequence) {
+        hub.cancelRequest(sequence);
+    }
+
+    @Override
+    public void setUp(final ReplyLink replyLink) {
+        if (started.get()) {
+            throw new IllegalStateException("plugin already started");
+        }
+        this.replyLink = replyLink;
+    }
+
+    /* Server implementation */
+
+    @Override
+    public void setUp(final RequestLink requestLink) {
+        if (started.get()) {
+            throw new IllegalStateException("plugin already started");
+        }
+        this.requestLink = requestLink;
+    }
+}
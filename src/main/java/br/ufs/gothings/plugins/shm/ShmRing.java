@@ -0,0 +1,250 @@
+package br.ufs.gothings.plugins.shm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Single-producer single-consumer ring of records in a memory-mapped file, shared by two processes.
+ * <p>
+ * The producer and the consumer each own a position, increasing forever, and only read the position of the other
+ * one, so no locks are needed: the producer publishes a record by moving its position after writing it, and the
+ * consumer frees the space by moving its position after reading. The positions are on their own cache lines.
+ * <p>
+ * A record is its length (4 bytes) and its bytes, aligned to 8 bytes. A record not fitting before the end of the
+ * ring is written at the start, after a padding record with a negative length.
+ * <p>
+ * Each side of the ring must be used by one thread at a time.
+ *
+ * @author Wagner Macedo
+ */
+final class ShmRing implements Closeable {
+    private static final int MAGIC = 0x47575348;  // "GWSH"
+
+    // header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int CLOSED_OFFSET = 8;
+    private static final int PID_OFFSET = 12;
+    private static final int TAIL_OFFSET = 64;
+    private static final int HEAD_OFFSET = 128;
+    private static final int DATA_OFFSET = 192;
+
+    private static final int RECORD_HEADER = 4;
+    private static final int ALIGNMENT = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    // view of the records area, to copy the records without intermediate buffers
+    private final ByteBuf data;
+    private final int capacity;
+    private final int mask;
+
+    // own position of each side, and the cached position of the other one
+    private long tail;
+    private long headCache;
+    private long head;
+
+    private ShmRing(final FileChannel channel, final MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.buffer.order(ByteOrder.nativeOrder());
+        this.capacity = buffer.getInt(CAPACITY_OFFSET);
+        this.mask = capacity - 1;
+        this.buffer.position(DATA_OFFSET);
+        this.data = Unpooled.wrappedBuffer(buffer);
+        this.buffer.position(0);
+        this.tail = buffer.getLong(TAIL_OFFSET);
+        this.head = buffer.getLong(HEAD_OFFSET);
+        this.headCache = head;
+    }
+
+    /**
+     * Create a ring, replacing the file if it exists. The file appears complete to other processes.
+     *
+     * @param capacity    bytes for the records, a power of two
+     */
+    static ShmRing create(final Path file, final int capacity) throws IOException {
+        if (capacity < 1024 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two from 1024");
+        }
+        final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + capacity);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(PID_OFFSET, currentPid());
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new ShmRing(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Open a ring created by another process.
+     */
+    static ShmRing open(final Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long size = channel.size();
+            if (size <= DATA_OFFSET) {
+                throw new IOException("not a ring: " + file);
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            final int capacity = buffer.getInt(CAPACITY_OFFSET);
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC || capacity != size - DATA_OFFSET) {
+                throw new IOException("not a ring: " + file);
+            }
+            return new ShmRing(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the max length of a record.
+     */
+    int maxRecordLength() {
+        return capacity / 2 - RECORD_HEADER;
+    }
+
+    /**
+     * Write a record, if there is room. Producer side.
+     *
+     * @return true if written, false if the ring is full.
+     * @throws IllegalArgumentException if the record is longer than {@link #maxRecordLength()}
+     */
+    boolean offer(final ByteBuf record) {
+        final int length = record.readableBytes();
+        if (length > maxRecordLength()) {
+            throw new IllegalArgumentException("record too long for the ring");
+        }
+        final int size = align(RECORD_HEADER + length);
+        int index = (int) (tail & mask);
+        final int toEnd = capacity - index;
+        final int needed = (size > toEnd) ? toEnd + size : size;
+
+        if (tail + needed - headCache > capacity) {
+            headCache = buffer.getLong(HEAD_OFFSET);
+            Fences.loadFence();
+            if (tail + needed - headCache > capacity) {
+                return false;
+            }
+        }
+
+        long newTail = tail;
+        if (size > toEnd) {
+            buffer.putInt(DATA_OFFSET + index, -toEnd);
+            newTail += toEnd;
+            index = 0;
+        }
+        data.setBytes(index + RECORD_HEADER, record, record.readerIndex(), length);
+        buffer.putInt(DATA_OFFSET + index, length);
+        newTail += size;
+
+        // the record is visible before the new position
+        Fences.storeFence();
+        buffer.putLong(TAIL_OFFSET, newTail);
+        tail = newTail;
+        return true;
+    }
+
+    /**
+     * Read the available records. Consumer side.
+     * <p>
+     * The record given to the handler is a view of the shared memory, valid only until the handler returns.
+     *
+     * @param handler    the handler of each record
+     * @param limit      max records to read
+     * @return the number of records read.
+     */
+    int poll(final Consumer<ByteBuf> handler, final int limit) {
+        final long available = buffer.getLong(TAIL_OFFSET);
+        Fences.loadFence();
+        if (available == head) {
+            return 0;
+        }
+
+        int count = 0;
+        long newHead = head;
+        try {
+            while (newHead < available && count < limit) {
+                final int index = (int) (newHead & mask);
+                final int length = buffer.getInt(DATA_OFFSET + index);
+                if (length < 0) {
+                    newHead -= length;
+                    continue;
+                }
+                newHead += align(RECORD_HEADER + length);
+                count++;
+                handler.accept(data.slice(index + RECORD_HEADER, length));
+            }
+        } finally {
+            // the records are read before their space is given back
+            Fences.storeFence();
+            buffer.putLong(HEAD_OFFSET, newHead);
+            head = newHead;
+        }
+        return count;
+    }
+
+    /**
+     * Tell the consumer that the producer won't write anymore.
+     */
+    void markClosed() {
+        Fences.storeFence();
+        buffer.putInt(CLOSED_OFFSET, 1);
+    }
+
+    boolean isClosed() {
+        final boolean closed = buffer.getInt(CLOSED_OFFSET) != 0;
+        Fences.loadFence();
+        return closed;
+    }
+
+    /**
+     * @return the process id of the creator of the ring, or 0 if unknown.
+     */
+    int getCreatorPid() {
+        return buffer.getInt(PID_OFFSET);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping is released by the garbage collector, as Java 8 has no unmap
+        channel.close();
+    }
+
+    private static int align(final int size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    static int currentPid() {
+        // "pid@hostname" in the HotSpot and OpenJ9
+        final String name = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return Integer.parseInt(name.substring(0, name.indexOf('@')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+}
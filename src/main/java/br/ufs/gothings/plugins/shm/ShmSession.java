@@ -0,0 +1,271 @@
+package br.ufs.gothings.plugins.shm;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.FutureReply;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.plugin.ReplyListener;
+import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Metrics;
+import br.ufs.gothings.plugins.gwnative.NativeFrame;
+import br.ufs.gothings.plugins.gwnative.NativeFrameCodec;
+import br.ufs.gothings.plugins.gwnative.NativePlugin;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+
+/**
+ * The gateway side of a process connected by shared memory, exchanging {@link NativeFrame}s with it through a pair
+ * of rings: the process writes to the up ring and the gateway to the down ring.
+ * <p>
+ * The process can be both a client of the gateway, sending requests, and a target, receiving the requests sent to
+ * its name. The rings are only accessed by the polling thread, which is the single producer of the down ring: the
+ * frames from other threads are queued until the polling thread writes them.
+ *
+ * @author Wagner Macedo
+ */
+class ShmSession {
+    // max records read from the up ring in one round, so the sessions are served fairly
+    private static final int POLL_LIMIT = 256;
+
+    private final String name;
+    private final ShmRing up;
+    private final ShmRing down;
+    private final RequestLink requestLink;
+    private final ReplyLink replyLink;
+    private final Runnable wakeUp;
+
+    private final Queue<NativeFrame> outbox = new ConcurrentLinkedQueue<>();
+    private final ByteBuf scratch = Unpooled.directBuffer();
+
+    // requests from the process waiting the reply, and the unobserve of each of its observes, by id
+    private final ConcurrentMap<Long, FutureReply> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, GwRequest> observes = new ConcurrentHashMap<>();
+    // requests to the process waiting the reply, by gateway sequence
+    private final ConcurrentMap<Long, GwRequest> inFlight = new ConcurrentHashMap<>();
+
+    ShmSession(final String name, final ShmRing up, final ShmRing down,
+               final RequestLink requestLink, final ReplyLink replyLink, final Runnable wakeUp)
+    {
+        this.name = name;
+        this.up = up;
+        this.down = down;
+        this.requestLink = requestLink;
+        this.replyLink = replyLink;
+        this.wakeUp = wakeUp;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isClosed() {
+        return up.isClosed();
+    }
+
+    int getCreatorPid() {
+        return up.getCreatorPid();
+    }
+
+    /**
+     * Read the frames of the process and write the queued ones. Polling thread only.
+     *
+     * @return the number of frames read and written.
+     */
+    int doWork() {
+        int work = up.poll(record -> handle(NativeFrameCodec.read(record)), POLL_LIMIT);
+
+        NativeFrame frame;
+        while ((frame = outbox.peek()) != null) {
+            scratch.clear();
+            NativeFrameCodec.write(frame, scratch);
+            if (scratch.readableBytes() > down.maxRecordLength()) {
+                outbox.poll();
+                tooLarge(frame);
+                continue;
+            }
+            if (!down.offer(scratch)) {
+                // the process is behind, try again in the next round
+                break;
+            }
+            outbox.poll();
+            work++;
+        }
+        if (work > 0) {
+            Metrics.counter("shm.frames").add(work);
+        }
+        return work;
+    }
+
+    /**
+     * Send a request to the process, as a target.
+     */
+    void send(final GwRequest request) {
+        final long id = request.getSequence();
+        if (request.headers().get(GW_OPERATION) == Operation.UNOBSERVE) {
+            cancelOutgoing(id);
+            return;
+        }
+        inFlight.put(id, request);
+        enqueue(NativeFrame.request(id, request));
+    }
+
+    /**
+     * Stop waiting the reply of a request sent to the process.
+     *
+     * @return true if the request was sent to this process.
+     */
+    boolean cancelOutgoing(final long id) {
+        if (inFlight.remove(id) == null) {
+            return false;
+        }
+        enqueue(NativeFrame.cancel(id));
+        return true;
+    }
+
+    /**
+     * End the session, once the process is gone or the gateway stops. Polling thread only.
+     */
+    void close() {
+        for (final Long id : pending.keySet()) {
+            cancelIncoming(id);
+        }
+        for (final Long id : observes.keySet()) {
+            cancelIncoming(id);
+        }
+        for (final GwRequest request : inFlight.values()) {
+            if (inFlight.remove(request.getSequence(), request)) {
+                replyLink.sendError(new GwError(request, ErrorCode.TARGET_NOT_FOUND));
+            }
+        }
+        outbox.clear();
+        scratch.release();
+        try {
+            up.close();
+            down.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void handle(final NativeFrame frame) {
+        final long id = frame.getId();
+        switch (frame.getKind()) {
+            case REQUEST:
+                if (frame.getHeaders().get(GW_OPERATION) == Operation.UNOBSERVE) {
+                    cancelIncoming(id);
+                } else {
+                    request(frame);
+                }
+                break;
+            case CANCEL:
+                cancelIncoming(id);
+                break;
+            case REPLY: {
+                final GwRequest request = inFlight.get(id);
+                if (request == null) {
+                    return;
+                }
+                // observes keep waiting notifications
+                if (request.headers().get(GW_OPERATION) != Operation.OBSERVE) {
+                    inFlight.remove(id, request);
+                }
+                replyLink.send(new GwReply(frame.getHeaders(), frame.getPayload(), id));
+                break;
+            }
+            case ERROR: {
+                final GwRequest request = inFlight.remove(id);
+                if (request != null) {
+                    replyLink.sendError(new GwError(request, frame.getCode()));
+                }
+                break;
+            }
+        }
+    }
+
+    private void request(final NativeFrame frame) {
+        final long id = frame.getId();
+        final GwHeaders h = frame.getHeaders();
+        if (h.get(GW_OPERATION) == null || pending.containsKey(id) || observes.containsKey(id)) {
+            enqueue(NativeFrame.error(id, ErrorCode.OTHER));
+            return;
+        }
+        h.set(GW_CLIENT_ID, "shm:" + name);
+
+        final GwRequest request = new GwRequest(h, frame.getPayload());
+        final boolean observe = h.get(GW_OPERATION) == Operation.OBSERVE;
+        // the gateway rewrites the path of the request, so the unobserve is made before
+        final GwRequest unobserve = observe ? NativePlugin.newUnobserve(h.get(GW_PATH)) : null;
+        if (observe) {
+            observes.put(id, unobserve);
+        }
+        final FutureReply future = requestLink.send(request);
+        if (observe) {
+            unobserve.setSequence(request.getSequence());
+        } else {
+            pending.put(id, future);
+        }
+
+        future.setListener(new ReplyListener() {
+            @Override
+            public void onReply(final GwReply reply) {
+                if (observe ? observes.get(id) == unobserve : pending.remove(id, future)) {
+                    enqueue(NativeFrame.reply(id, reply));
+                }
+            }
+
+            @Override
+            public void onError(final GwError error) {
+                if (observe ? observes.remove(id, unobserve) : pending.remove(id, future)) {
+                    enqueue(NativeFrame.error(id, error.getCode()));
+                }
+            }
+        });
+    }
+
+    private void cancelIncoming(final long id) {
+        final FutureReply future = pending.remove(id);
+        if (future != null) {
+            future.cancel(true);
+            return;
+        }
+
+        final GwRequest unobserve = observes.remove(id);
+        if (unobserve != null) {
+            requestLink.send(unobserve);
+        }
+    }
+
+    private void tooLarge(final NativeFrame frame) {
+        Metrics.counter("shm.oversized").increment();
+        switch (frame.getKind()) {
+            case REQUEST:
+                final GwRequest request = inFlight.remove(frame.getId());
+                if (request != null) {
+                    replyLink.sendError(new GwError(request, ErrorCode.PAYLOAD_TOO_LARGE));
+                }
+                break;
+            case REPLY:
+                // a notification is just dropped, keeping the observe
+                if (!observes.containsKey(frame.getId())) {
+                    outbox.add(NativeFrame.error(frame.getId(), ErrorCode.PAYLOAD_TOO_LARGE));
+                }
+                break;
+        }
+    }
+
+    private void enqueue(final NativeFrame frame) {
+        outbox.add(frame);
+        wakeUp.run();
+    }
+}
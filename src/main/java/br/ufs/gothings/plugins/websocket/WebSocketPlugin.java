@@ -0,0 +1,68 @@
+package br.ufs.gothings.plugins.websocket;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.plugin.PluginServer;
+import br.ufs.gothings.core.plugin.RequestLink;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server plugin pushing the notifications of observed resources to WebSocket clients, such as browser dashboards.
+ *
+ * @author Wagner Macedo
+ */
+public class WebSocketPlugin implements PluginServer {
+
+    static final String GW_PROTOCOL = "websocket";
+
+    private final WebSocketServer server;
+    private final Settings settings;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private RequestLink requestLink;
+
+    public WebSocketPlugin() {
+        server = new WebSocketServer();
+        settings = new Settings(started);
+    }
+
+    @Override
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            if (requestLink == null) {
+                throw new NullPointerException("no RequestLink to start the server");
+            }
+            try {
+                server.start(requestLink, settings);
+            } catch (InterruptedException e) {
+                started.set(false);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (started.compareAndSet(true, false)) {
+            server.stop();
+        }
+    }
+
+    @Override
+    public String getProtocol() {
+        return GW_PROTOCOL;
+    }
+
+    @Override
+    public Settings settings() {
+        return settings;
+    }
+
+    @Override
+    public void setUp(final RequestLink requestLink) {
+        if (started.get()) {
+            throw new IllegalStateException("plugin already started");
+        }
+        this.requestLink = requestLink;
+    }
+}
@@ -0,0 +1,71 @@
+package br.ufs.gothings.plugins.websocket;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Metrics;
+import br.ufs.gothings.core.util.SharedEventLoop;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+/**
+ * Netty server of the WebSocket plugin, running on the {@link SharedEventLoop}.
+ * <p>
+ * The clients connect to the path {@value #WEBSOCKET_PATH} and talk with text frames, as described in
+ * {@link WebSocketSession}.
+ *
+ * @author Wagner Macedo
+ */
+class WebSocketServer {
+    static final String WEBSOCKET_PATH = "/";
+    private static final int MAX_HANDSHAKE_LENGTH = 65536;
+
+    private Channel serverChannel;
+    private ChannelGroup sessions;
+
+    void start(final RequestLink requestLink, final Settings settings) throws InterruptedException {
+        final EventLoopGroup group = SharedEventLoop.acquire();
+        sessions = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        Metrics.gauge("websocket.sessions", sessions::size);
+
+        final ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(final SocketChannel ch) {
+                        sessions.add(ch);
+                        ch.pipeline()
+                                .addLast(new HttpServerCodec())
+                                .addLast(new HttpObjectAggregator(MAX_HANDSHAKE_LENGTH))
+                                .addLast(new WebSocketServerProtocolHandler(WEBSOCKET_PATH))
+                                .addLast(new WebSocketSession(requestLink));
+                    }
+                });
+        try {
+            serverChannel = bootstrap.bind(settings.get(Settings.SERVER_PORT)).sync().channel();
+        } catch (InterruptedException | RuntimeException e) {
+            SharedEventLoop.release();
+            throw e;
+        }
+    }
+
+    void stop() {
+        serverChannel.close().awaitUninterruptibly();
+        // closing the sessions unobserves their subscriptions
+        sessions.close().awaitUninterruptibly();
+        Metrics.removeAll("websocket.");
+        SharedEventLoop.release();
+        serverChannel = null;
+        sessions = null;
+    }
+}
@@ -0,0 +1,184 @@
+package br.ufs.gothings.plugins.websocket;
+
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.FutureReply;
+import br.ufs.gothings.core.plugin.ReplyListener;
+import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.core.util.Metrics;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+
+/**
+ * A WebSocket connection, whose subscriptions are observe requests to the gateway.
+ * <p>
+ * The client sends the text frames {@code "SUBSCRIBE <path>"} and {@code "UNSUBSCRIBE <path>"}, and the gateway
+ * pushes the frames {@code "NOTIFY <path>\n<payload>"} and {@code "ERROR <path> <code>"}, the latter ending the
+ * subscription. All subscriptions are unsubscribed when the connection closes.
+ * <p>
+ * The notifications are batched: the ones arriving together are written with a single flush. While the client
+ * doesn't keep up, only the latest notification of each path is kept, so a slow consumer gets the current values
+ * instead of a growing backlog.
+ * <p>
+ * The state of the session is only accessed in the event loop of its channel.
+ *
+ * @author Wagner Macedo
+ */
+class WebSocketSession extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+    private final RequestLink requestLink;
+
+    // observe requests, by path
+    private final Map<String, GwRequest> subscriptions = new HashMap<>();
+    // frames waiting to be written, at most one per path
+    private final Map<String, String> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    private ChannelHandlerContext ctx;
+
+    WebSocketSession(final RequestLink requestLink) {
+        this.requestLink = requestLink;
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final TextWebSocketFrame frame) {
+        final String text = frame.text().trim();
+        final int space = text.indexOf(' ');
+        final String command = (space < 0) ? text : text.substring(0, space);
+        final String path = (space < 0) ? "" : text.substring(space + 1).trim();
+
+        switch (command.toUpperCase()) {
+            case "SUBSCRIBE":
+                subscribe(path);
+                break;
+            case "UNSUBSCRIBE":
+                unsubscribe(path);
+                break;
+            default:
+                ctx.writeAndFlush(new TextWebSocketFrame("ERROR " + path + " UNKNOWN_COMMAND"));
+        }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+        for (final String path : subscriptions.keySet().toArray(new String[0])) {
+            unsubscribe(path);
+        }
+        pending.clear();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            flush();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+        ctx.close();
+    }
+
+    private void subscribe(final String path) {
+        if (path.isEmpty() || subscriptions.containsKey(path)) {
+            return;
+        }
+
+        final GwRequest request = new GwRequest();
+        final GwHeaders h = request.headers();
+        h.set(GW_OPERATION, Operation.OBSERVE);
+        h.set(GW_PATH, path);
+        final SocketAddress address = ctx.channel().remoteAddress();
+        if (address instanceof InetSocketAddress) {
+            final InetSocketAddress remote = (InetSocketAddress) address;
+            h.set(GW_CLIENT_ID, remote.getAddress().getHostAddress() + ":" + remote.getPort());
+        }
+
+        subscriptions.put(path, request);
+        final FutureReply future = requestLink.send(request);
+        future.setListener(new ReplyListener() {
+            @Override
+            public void onReply(final GwReply reply) {
+                final String payload = reply.payload().asString(StandardCharsets.UTF_8);
+                ctx.executor().execute(() -> enqueue(path, request, "NOTIFY " + path + "\n" + payload));
+            }
+
+            @Override
+            public void onError(final GwError error) {
+                ctx.executor().execute(() -> {
+                    // the observe ended
+                    if (subscriptions.remove(path, request)) {
+                        enqueue(path, null, "ERROR " + path + " " + error.getCode());
+                    }
+                });
+            }
+        });
+    }
+
+    private void unsubscribe(final String path) {
+        final GwRequest observe = subscriptions.remove(path);
+        if (observe == null) {
+            return;
+        }
+        pending.remove(path);
+
+        final GwRequest request = new GwRequest();
+        request.setSequence(observe.getSequence());
+        final GwHeaders h = request.headers();
+        h.set(GW_OPERATION, Operation.UNOBSERVE);
+        h.set(GW_PATH, path);
+        requestLink.send(request);
+    }
+
+    /**
+     * Queue a frame of a path, replacing the one not written yet.
+     *
+     * @param request    the subscription of the frame, or null for the frame ending it
+     */
+    private void enqueue(final String path, final GwRequest request, final String frame) {
+        // a late notification of an unsubscribed path
+        if (request != null && subscriptions.get(path) != request) {
+            return;
+        }
+        if (pending.put(path, frame) != null) {
+            Metrics.counter("websocket.dropped").increment();
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            // run after the notifications already queued in the event loop, to write them together
+            ctx.executor().execute(() -> {
+                flushScheduled = false;
+                flush();
+            });
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty() || !ctx.channel().isWritable()) {
+            return;
+        }
+        pending.values().forEach(frame -> ctx.write(new TextWebSocketFrame(frame)));
+        Metrics.counter("websocket.frames").add(pending.size());
+        pending.clear();
+        ctx.flush();
+    }
+}
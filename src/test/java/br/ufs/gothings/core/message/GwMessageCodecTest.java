@@ -0,0 +1,135 @@
+package br.ufs.gothings.core.message;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.util.Deadline;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class GwMessageCodecTest {
+    @Test
+    public void testRequestRoundTrip() {
+        final GwRequest request = new GwRequest();
+        request.setSequence(-7);
+        final GwHeaders h = request.headers();
+        h.set(GW_OPERATION, Operation.OBSERVE);
+        h.set(GW_TARGET, "[::1]:5683");
+        h.set(GW_PATH, "/sala/temperatura/\u00e9\u4e2d\ud83d\ude00");
+        h.add(GW_EXPECTED_TYPES, "application/json");
+        h.add(GW_EXPECTED_TYPES, "text/plain");
+        h.set(GW_QOS, -1);
+        h.set(GW_DEADLINE, 1234567890123L);
+        h.set(GW_CACHE_EXPIRATION, new Date(1234567890000L));
+        h.set(GW_CACHE_MODIFIED, false);
+        request.payload().set("21.5", StandardCharsets.UTF_8);
+
+        final ByteBuf buf = Unpooled.buffer();
+        GwMessageCodec.encode(request, buf);
+        final GwRequest decoded = (GwRequest) GwMessageCodec.decode(buf);
+
+        assertEquals(0, buf.readableBytes());
+        assertEquals(-7, decoded.getSequence());
+        final GwHeaders dh = decoded.headers();
+        assertEquals(Operation.OBSERVE, dh.get(GW_OPERATION));
+        assertEquals("[::1]:5683", dh.get(GW_TARGET));
+        assertEquals(h.get(GW_PATH), dh.get(GW_PATH));
+        assertArrayEquals(new Object[]{"application/json", "text/plain"}, dh.getAll(GW_EXPECTED_TYPES).toArray());
+        assertEquals(-1, (int) dh.get(GW_QOS));
+        assertEquals(1234567890123L, (long) dh.get(GW_DEADLINE));
+        assertEquals(new Date(1234567890000L), dh.get(GW_CACHE_EXPIRATION));
+        assertFalse(dh.get(GW_CACHE_MODIFIED));
+        assertNull(dh.get(GW_CONTENT_TYPE));
+        assertNull(dh.get(GW_CLIENT_ID));
+        assertEquals("21.5", decoded.payload().asString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSharedPayloadIsCopiedOnWrite() {
+        final GwRequest request = new GwRequest();
+        request.payload().set("original", StandardCharsets.UTF_8);
+
+        final ByteBuf buf = Unpooled.buffer();
+        GwMessageCodec.encode(request, buf);
+        final GwRequest decoded = (GwRequest) GwMessageCodec.decode(buf.duplicate());
+        assertFalse(decoded.hasSequence());
+
+        decoded.payload().set("changed", StandardCharsets.UTF_8);
+        assertEquals("changed", decoded.payload().asString(StandardCharsets.UTF_8));
+        final GwRequest again = (GwRequest) GwMessageCodec.decode(buf);
+        assertEquals("the input is untouched", "original", again.payload().asString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReplyAndErrorInByteBuffer() {
+        final GwReply reply = new GwReply(new GwHeaders(), new Payload(), 1L << 40);
+        reply.headers().set(GW_PATH, "/a");
+        reply.payload().set(new byte[]{1, 2, 3});
+        final GwRequest request = new GwRequest();
+        request.setSequence(3);
+        request.headers().set(GW_PATH, "/b");
+        final GwError error = new GwError(request, ErrorCode.DEADLINE_EXCEEDED);
+
+        // two messages back to back, as in a journal
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        GwMessageCodec.encode(reply, buffer, false);
+        GwMessageCodec.encode(error, buffer, false);
+        buffer.flip();
+
+        final GwReply decodedReply = (GwReply) GwMessageCodec.decode(buffer);
+        assertEquals(1L << 40, decodedReply.getSequence());
+        assertEquals("/a", decodedReply.headers().get(GW_PATH));
+        assertArrayEquals(new byte[]{1, 2, 3}, decodedReply.payload().asBytes());
+
+        final GwError decodedError = (GwError) GwMessageCodec.decode(buffer);
+        assertEquals(3, decodedError.getSequence());
+        assertEquals(ErrorCode.DEADLINE_EXCEEDED, decodedError.getCode());
+        assertEquals("/b", decodedError.headers().get(GW_PATH));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testRelativeDeadline() {
+        final GwRequest request = new GwRequest();
+        Deadline.set(request.headers(), 10, TimeUnit.SECONDS);
+
+        final ByteBuf buf = Unpooled.buffer();
+        GwMessageCodec.encode(request, buf, true);
+        final GwMessage decoded = GwMessageCodec.decode(buf);
+
+        final long remaining = Deadline.remaining(decoded.headers(), TimeUnit.MILLISECONDS);
+        assertTrue(remaining > 9000 && remaining <= 10000);
+    }
+
+    @Test
+    public void testUnknownHeaderIsSkipped() {
+        final ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(GwMessageCodec.VERSION).writeByte(GwMessage.MessageType.REQUEST.ordinal());
+        // a string and a varint of a future key, then the path
+        buf.writeByte(14 << 3 | 2).writeByte(2).writeByte('x').writeByte('y');
+        buf.writeByte(15 << 3).writeByte(0x80).writeByte(0x01);
+        buf.writeByte(GW_PATH.index() << 3 | 2).writeByte(2).writeByte('/').writeByte('c');
+        buf.writeByte(0).writeByte(0);
+
+        final GwMessage decoded = GwMessageCodec.decode(buf);
+        assertEquals("/c", decoded.headers().get(GW_PATH));
+        assertEquals(0, buf.readableBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownVersion() {
+        GwMessageCodec.decode(Unpooled.wrappedBuffer(new byte[]{2, 0, 0, 0}));
+    }
+}
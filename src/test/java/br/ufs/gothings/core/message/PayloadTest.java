@@ -0,0 +1,27 @@
+package br.ufs.gothings.core.message;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class PayloadTest {
+    @Test
+    public void testSetFromStreamWithLimit() throws IOException {
+        final byte[] bytes = new byte[20000];
+        bytes[19999] = 42;
+
+        final Payload payload = new Payload();
+        assertEquals(20000, payload.set(new ByteArrayInputStream(bytes), -1, 20000));
+        assertArrayEquals(bytes, payload.asBytes());
+
+        assertEquals("too large", -1, payload.set(new ByteArrayInputStream(bytes), -1, 19999));
+        assertEquals(0, payload.asBytes().length);
+        assertEquals("too large by the hint", -1, payload.set(new ByteArrayInputStream(bytes), 20000, 100));
+    }
+}
@@ -0,0 +1,20 @@
+package br.ufs.gothings.core.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class PollingTest {
+    @Test
+    public void testAdaptInterval() {
+        assertEquals("halved on change", 50, Polling.adapt(100, true, 10, 1000));
+        assertEquals("grows by half otherwise", 150, Polling.adapt(100, false, 10, 1000));
+
+        // within the bounds
+        assertEquals(10, Polling.adapt(15, true, 10, 1000));
+        assertEquals(1000, Polling.adapt(900, false, 10, 1000));
+    }
+}
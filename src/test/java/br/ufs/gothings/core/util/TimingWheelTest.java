@@ -0,0 +1,60 @@
+package br.ufs.gothings.core.util;
+
+import br.ufs.gothings.core.util.TimingWheel.Timer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class TimingWheelTest {
+    @Test
+    public void testExpiresOnDueTick() {
+        final TimingWheel<String> wheel = new TimingWheel<>(8);
+        wheel.schedule("a", 3);
+        wheel.schedule("b", 5);
+
+        final List<String> expired = new ArrayList<>();
+        wheel.advance(2, t -> expired.add(t.getItem()));
+        assertTrue(expired.isEmpty());
+        wheel.advance(3, t -> expired.add(t.getItem()));
+        assertEquals("[a]", expired.toString());
+        wheel.advance(5, t -> expired.add(t.getItem()));
+        assertEquals("[a, b]", expired.toString());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testTimerBeyondOneRevolution() {
+        final TimingWheel<String> wheel = new TimingWheel<>(4);
+        wheel.schedule("far", 10);
+
+        final List<String> expired = new ArrayList<>();
+        for (long t = 1; t < 10; t++) {
+            wheel.advance(t, timer -> expired.add(timer.getItem()));
+        }
+        assertTrue("expired on round " + expired, expired.isEmpty());
+        wheel.advance(10, timer -> expired.add(timer.getItem()));
+        assertEquals("[far]", expired.toString());
+    }
+
+    @Test
+    public void testCancelAndLag() {
+        final TimingWheel<String> wheel = new TimingWheel<>(4);
+        final Timer<String> cancelled = wheel.schedule("cancelled", 1);
+        wheel.schedule("a", 2);
+        wheel.schedule("b", 7);
+        cancelled.cancel();
+
+        // a lagged advance expires everything due
+        final List<String> expired = new ArrayList<>();
+        wheel.advance(100, t -> expired.add(t.getItem()));
+        assertEquals(2, expired.size());
+        assertFalse(expired.contains("cancelled"));
+        assertEquals(0, wheel.size());
+    }
+}
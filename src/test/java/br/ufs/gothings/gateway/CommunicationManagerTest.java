@@ -0,0 +1,142 @@
+package br.ufs.gothings.gateway;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.PluginClient;
+import br.ufs.gothings.core.plugin.PluginServer;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.plugin.ReplyListener;
+import br.ufs.gothings.core.plugin.RequestLink;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class CommunicationManagerTest {
+    @Test
+    public void testSilentTargetOpensBreaker() throws Exception {
+        final CommunicationManager manager = new CommunicationManager();
+        manager.settings().put("timeout.min", 50);
+        manager.settings().put("timeout.max", 100);
+        manager.settings().put("breaker.failures", 2);
+        manager.settings().put("breaker.open-time", 60000);
+        final App app = new App();
+        final Silent silent = new Silent();
+        manager.register(app);
+        manager.register(silent);
+
+        manager.start();
+        try {
+            final BlockingQueue<String> errors = new LinkedBlockingQueue<>();
+            // the target not answering within its timeout is a failure of the target
+            for (int i = 0; i < 2; i++) {
+                app.requestLink.send(newRead()).setListener(collect(errors));
+                assertEquals("TARGET_NOT_FOUND", errors.poll(5, TimeUnit.SECONDS));
+            }
+            assertEquals(2, silent.requests.get());
+
+            // the breaker is open, so the next request fails without reaching the target
+            app.requestLink.send(newRead()).setListener(collect(errors));
+            assertEquals("TARGET_NOT_FOUND", errors.poll(5, TimeUnit.SECONDS));
+            assertEquals(2, silent.requests.get());
+        } finally {
+            manager.stop(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static GwRequest newRead() {
+        final GwRequest request = new GwRequest();
+        request.headers().set(GW_OPERATION, Operation.READ);
+        request.headers().set(GW_PATH, "/silent/sensor.local/temperature");
+        return request;
+    }
+
+    private static ReplyListener collect(final BlockingQueue<String> queue) {
+        return new ReplyListener() {
+            @Override
+            public void onReply(final GwReply reply) {
+                queue.add("REPLY");
+            }
+
+            @Override
+            public void onError(final GwError error) {
+                queue.add(error.getCode().name());
+            }
+        };
+    }
+
+    private static final class App implements PluginServer {
+        private final Settings settings = new Settings(new AtomicBoolean(false));
+        private RequestLink requestLink;
+
+        @Override
+        public void setUp(final RequestLink requestLink) {
+            this.requestLink = requestLink;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public String getProtocol() {
+            return "app";
+        }
+
+        @Override
+        public Settings settings() {
+            return settings;
+        }
+    }
+
+    /**
+     * A target which never answers.
+     */
+    private static final class Silent implements PluginClient {
+        private final Settings settings = new Settings(new AtomicBoolean(false));
+        private final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public void handleRequest(final GwRequest request) {
+            requests.incrementAndGet();
+        }
+
+        @Override
+        public void setUp(final ReplyLink replyLink) {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public String getProtocol() {
+            return "silent";
+        }
+
+        @Override
+        public Settings settings() {
+            return settings;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package br.ufs.gothings.gateway;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.FutureReply;
+import br.ufs.gothings.core.plugin.PluginClient;
+import br.ufs.gothings.core.plugin.PluginServer;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.plugin.ReplyListener;
+import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.plugins.federation.FederationPlugin;
+import br.ufs.gothings.plugins.gwnative.NativePlugin;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+import static org.junit.Assert.*;
+
+/**
+ * Two gateways on loopback: the gateway A reaches the devices of the gateway B through a federation link.
+ *
+ * @author Wagner Macedo
+ */
+public class FederationTest {
+    @Test
+    public void testRequestsAndSharedObserve() throws Exception {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        final CommunicationManager a = new CommunicationManager();
+        final App app = new App();
+        a.register(new FederationPlugin());
+        a.register(app);
+
+        final CommunicationManager b = new CommunicationManager();
+        final NativePlugin nativePlugin = new NativePlugin();
+        nativePlugin.settings().put(Settings.SERVER_PORT, port);
+        final Devices devices = new Devices();
+        b.register(nativePlugin, nativePlugin);
+        b.register(devices);
+
+        a.start();
+        b.start();
+        try {
+            awaitListening(port);
+            final String path = "/gw/127.0.0.1:" + port + "/dev/sensor/temperature";
+
+            final GwRequest read = newRequest(Operation.READ, path);
+            final GwReply reply = app.requestLink.send(read).get(5, TimeUnit.SECONDS);
+            assertEquals("21.5", reply.payload().asString(StandardCharsets.UTF_8));
+
+            // two local subscribers, a single remote observe
+            final BlockingQueue<String> first = new LinkedBlockingQueue<>();
+            final BlockingQueue<String> second = new LinkedBlockingQueue<>();
+            final GwRequest observe1 = newRequest(Operation.OBSERVE, path);
+            app.requestLink.send(observe1).setListener(collect(first));
+            assertEquals("21.5", first.poll(5, TimeUnit.SECONDS));
+            final GwRequest observe2 = newRequest(Operation.OBSERVE, path);
+            app.requestLink.send(observe2).setListener(collect(second));
+
+            // the second subscriber is answered at once with the current state, which the first gets again
+            assertEquals("21.5", second.poll(5, TimeUnit.SECONDS));
+            assertEquals("21.5", first.poll(5, TimeUnit.SECONDS));
+            assertEquals(1, devices.observes.size());
+
+            devices.notify("22.0");
+            assertEquals("22.0", first.poll(5, TimeUnit.SECONDS));
+            assertEquals("22.0", second.poll(5, TimeUnit.SECONDS));
+            assertEquals(1, devices.observes.size());
+
+            // the remote observe lasts while there are subscribers
+            app.requestLink.send(unobserve(observe1, path));
+            devices.notify("22.5");
+            assertEquals("22.5", second.poll(5, TimeUnit.SECONDS));
+            assertEquals(0, devices.unobserves.get());
+            assertTrue(first.isEmpty());
+
+            app.requestLink.send(unobserve(observe2, path));
+            awaitTrue(() -> devices.unobserves.get() == 1);
+        } finally {
+            a.stop(1, TimeUnit.SECONDS);
+            b.stop(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static GwRequest newRequest(final Operation operation, final String path) {
+        final GwRequest request = new GwRequest();
+        request.headers().set(GW_OPERATION, operation);
+        request.headers().set(GW_PATH, path);
+        return request;
+    }
+
+    private static GwRequest unobserve(final GwRequest observe, final String path) {
+        final GwRequest request = newRequest(Operation.UNOBSERVE, path);
+        request.setSequence(observe.getSequence());
+        return request;
+    }
+
+    private static ReplyListener collect(final BlockingQueue<String> queue) {
+        return new ReplyListener() {
+            @Override
+            public void onReply(final GwReply reply) {
+                queue.add(reply.payload().asString(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void onError(final GwError error) {
+                queue.add(error.getCode().name());
+            }
+        };
+    }
+
+    private static void awaitListening(final int port) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try (Socket ignored = new Socket("127.0.0.1", port)) {
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() - deadline > 0) {
+                    fail("gateway B not listening");
+                }
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static void awaitTrue(final java.util.function.BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * The requesters of the gateway A.
+     */
+    private static final class App implements PluginServer {
+        private final Settings settings = new Settings(new AtomicBoolean(false));
+        private RequestLink requestLink;
+
+        @Override
+        public void setUp(final RequestLink requestLink) {
+            this.requestLink = requestLink;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public String getProtocol() {
+            return "app";
+        }
+
+        @Override
+        public Settings settings() {
+            return settings;
+        }
+    }
+
+    /**
+     * The devices of the gateway B, answering reads and observes, and keeping the observes.
+     */
+    private static final class Devices implements PluginClient {
+        private final Settings settings = new Settings(new AtomicBoolean(false));
+        private final List<GwRequest> observes = new CopyOnWriteArrayList<>();
+        private final AtomicInteger unobserves = new AtomicInteger();
+        private ReplyLink replyLink;
+
+        @Override
+        public void handleRequest(final GwRequest request) {
+            switch (request.headers().get(GW_OPERATION)) {
+                case UNOBSERVE:
+                    unobserves.incrementAndGet();
+                    break;
+                case OBSERVE:
+                    observes.add(request);
+                    // fall through, the observe is answered with the current state
+                default:
+                    final GwReply reply = new GwReply(request);
+                    reply.payload().set("21.5", StandardCharsets.UTF_8);
+                    replyLink.send(reply);
+            }
+        }
+
+        void notify(final String value) {
+            final GwReply reply = new GwReply(observes.get(0));
+            reply.payload().set(value, StandardCharsets.UTF_8);
+            replyLink.send(reply);
+        }
+
+        @Override
+        public void setUp(final ReplyLink replyLink) {
+            this.replyLink = replyLink;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public String getProtocol() {
+            return "dev";
+        }
+
+        @Override
+        public Settings settings() {
+            return settings;
+        }
+    }
+}
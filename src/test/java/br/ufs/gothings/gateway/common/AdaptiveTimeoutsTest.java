@@ -0,0 +1,61 @@
+package br.ufs.gothings.gateway.common;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class AdaptiveTimeoutsTest {
+    @Test
+    public void testMaxTimeoutWithoutEnoughSamples() {
+        final AdaptiveTimeouts timeouts = new AdaptiveTimeouts();
+        timeouts.configure(3, 10, 5000, TimeUnit.MILLISECONDS);
+        assertEquals(5000, timeouts.timeout("unknown", TimeUnit.MILLISECONDS));
+
+        timeouts.dispatched(1, "few");
+        timeouts.completed(1);
+        assertEquals(5000, timeouts.timeout("few", TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTimeoutFollowsLatency() throws InterruptedException {
+        final AdaptiveTimeouts timeouts = new AdaptiveTimeouts();
+        timeouts.configure(3, 10, 5000, TimeUnit.MILLISECONDS);
+        record(timeouts, "fast", 20);
+
+        final long timeout = timeouts.timeout("fast", TimeUnit.MILLISECONDS);
+        assertTrue("timeout was " + timeout, timeout >= 60 && timeout < 5000);
+
+        // clamped by the minimum
+        timeouts.configure(3, 2000, 5000, TimeUnit.MILLISECONDS);
+        assertEquals(2000, timeouts.timeout("fast", TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testAbandonedIsNotRecorded() throws InterruptedException {
+        final AdaptiveTimeouts timeouts = new AdaptiveTimeouts();
+        timeouts.configure(3, 10, 5000, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+            timeouts.dispatched(i, "lost");
+            timeouts.abandoned(i);
+            timeouts.completed(i);
+        }
+        assertEquals(5000, timeouts.timeout("lost", TimeUnit.MILLISECONDS));
+    }
+
+    private static void record(final AdaptiveTimeouts timeouts, final String target, final long millis)
+            throws InterruptedException
+    {
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+            timeouts.dispatched(i, target);
+        }
+        Thread.sleep(millis);
+        for (int i = 0; i < AdaptiveTimeouts.MIN_SAMPLES; i++) {
+            timeouts.completed(i);
+        }
+    }
+}
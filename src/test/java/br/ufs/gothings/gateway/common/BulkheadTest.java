@@ -0,0 +1,42 @@
+package br.ufs.gothings.gateway.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class BulkheadTest {
+    @Test
+    public void testQueueQuotas() {
+        final Bulkhead bulkhead = new Bulkhead("test-queue", 0, 3, 2);
+
+        assertTrue(bulkhead.tryEnqueue("a"));
+        assertTrue(bulkhead.tryEnqueue("a"));
+        assertFalse(bulkhead.tryEnqueue("a"));   // client quota
+        assertTrue(bulkhead.tryEnqueue("b"));
+        assertFalse(bulkhead.tryEnqueue("c"));   // tenant quota
+        assertEquals(1.0, bulkhead.saturation(), 0.001);
+
+        bulkhead.dequeued("a");
+        assertTrue(bulkhead.tryEnqueue("a"));
+        assertFalse(bulkhead.tryEnqueue(null));
+    }
+
+    @Test
+    public void testConcurrencyQuota() {
+        final Bulkhead bulkhead = new Bulkhead("test-concurrency", 2, 0, 0);
+
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+
+        // no queue limits
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bulkhead.tryEnqueue("a"));
+        }
+    }
+}
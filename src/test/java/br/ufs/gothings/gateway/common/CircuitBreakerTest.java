@@ -0,0 +1,53 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.gateway.common.CircuitBreaker.State;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class CircuitBreakerTest {
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        final CircuitBreaker breaker = new CircuitBreaker(3, 1, TimeUnit.MINUTES);
+
+        breaker.onFailure(ErrorCode.TARGET_NOT_FOUND);
+        breaker.onFailure(ErrorCode.TARGET_NOT_FOUND);
+        breaker.onSuccess();
+        breaker.onFailure(ErrorCode.TARGET_NOT_FOUND);
+        breaker.onFailure(ErrorCode.TARGET_NOT_FOUND);
+        assertTrue(breaker.allow());
+
+        breaker.onFailure(ErrorCode.TARGET_NOT_FOUND);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.allow());
+        assertEquals(ErrorCode.TARGET_NOT_FOUND, breaker.getLastError());
+    }
+
+    @Test
+    public void testHalfOpenProbe() throws InterruptedException {
+        final CircuitBreaker breaker = new CircuitBreaker(1, 20, TimeUnit.MILLISECONDS);
+        breaker.onFailure(ErrorCode.TARGET_NOT_FOUND);
+        assertFalse(breaker.allow());
+
+        Thread.sleep(25);
+        assertTrue(breaker.allow());     // the probe
+        assertFalse(breaker.allow());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+
+        // failed probe opens again
+        breaker.onFailure(ErrorCode.TARGET_NOT_FOUND);
+        assertFalse(breaker.allow());
+
+        Thread.sleep(25);
+        assertTrue(breaker.allow());
+        breaker.onSuccess();
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.allow());
+    }
+}
@@ -0,0 +1,62 @@
+package br.ufs.gothings.gateway.common;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class CoDelAdmissionTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testStandingQueueIsShed() throws InterruptedException {
+        final CoDelAdmission admission = new CoDelAdmission(5, 20, TimeUnit.MILLISECONDS);
+        assertTrue(admission.admit(10));
+
+        // a whole interval with sojourns above target
+        assertTrue(admission.onDequeue(8 * MS));
+        Thread.sleep(25);
+        assertTrue(admission.onDequeue(9 * MS));
+
+        assertTrue(admission.isOverloaded());
+        assertFalse(admission.admit(10));
+        assertFalse(admission.onDequeue(11 * MS));
+        assertTrue(admission.onDequeue(9 * MS));
+
+        // an empty queue ends the overload
+        assertTrue(admission.admit(0));
+        assertFalse(admission.isOverloaded());
+    }
+
+    @Test
+    public void testShortSojournEndsOverload() throws InterruptedException {
+        final CoDelAdmission admission = new CoDelAdmission(5, 20, TimeUnit.MILLISECONDS);
+        Thread.sleep(25);
+        admission.onDequeue(50 * MS);
+        assertTrue(admission.isOverloaded());
+
+        admission.onDequeue(MS);
+        Thread.sleep(25);
+        admission.onDequeue(50 * MS);
+        assertFalse(admission.isOverloaded());
+    }
+
+    @Test
+    public void testStuckQueueIsOverloaded() throws InterruptedException {
+        final CoDelAdmission admission = new CoDelAdmission(5, 20, TimeUnit.MILLISECONDS);
+        assertTrue(admission.admit(0));
+        assertTrue(admission.admit(1));
+
+        // nothing left the queue for a whole interval
+        Thread.sleep(25);
+        assertFalse(admission.admit(2));
+        assertTrue(admission.isOverloaded());
+
+        // the tasks leaving after it are shed
+        assertFalse(admission.onDequeue(25 * MS));
+    }
+}
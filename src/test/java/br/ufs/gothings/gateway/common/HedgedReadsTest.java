@@ -0,0 +1,72 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.gateway.common.HedgedReads.Hedge;
+import br.ufs.gothings.gateway.common.HedgedReads.Outcome;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class HedgedReadsTest {
+    @Test
+    public void testFirstReplyWins() {
+        final HedgedReads hedgedReads = new HedgedReads();
+        final Hedge hedge = hedgedReads.start(newRead(1), "group", "replica", "coap", "http");
+
+        final GwRequest copy = hedgedReads.copy(hedge, 2);
+        assertEquals("replica", copy.headers().get(GW_TARGET));
+        assertEquals(2, copy.getSequence());
+        assertNull("only one copy is sent", hedgedReads.copy(hedge, 3));
+
+        hedgedReads.replied(2);
+        assertNull(hedgedReads.get(1));
+        assertNull(hedgedReads.get(2));
+        assertTrue("the primary lost", hedgedReads.isLost(1));
+        assertFalse(hedgedReads.isLost(1));
+    }
+
+    @Test
+    public void testFailsOnlyWhenBothCopiesFail() {
+        final HedgedReads hedgedReads = new HedgedReads();
+
+        // the copy is sent right away when the primary fails first
+        final Hedge first = hedgedReads.start(newRead(1), "group", "replica", "coap", "http");
+        assertEquals(Outcome.HEDGE_NOW, hedgedReads.failed(first, 1));
+        hedgedReads.copy(first, 2);
+        assertEquals(Outcome.FAIL, hedgedReads.failed(first, 2));
+        assertNull(hedgedReads.get(1));
+
+        // the error is swallowed while the other copy may answer
+        final Hedge second = hedgedReads.start(newRead(3), "group", "replica", "coap", "http");
+        hedgedReads.copy(second, 4);
+        assertEquals(Outcome.WAIT, hedgedReads.failed(second, 4));
+        hedgedReads.replied(3);
+        assertNull(hedgedReads.get(3));
+    }
+
+    @Test
+    public void testDefaultDelayWithoutEnoughSamples() {
+        final HedgedReads hedgedReads = new HedgedReads();
+        hedgedReads.configure(95, 250, TimeUnit.MILLISECONDS);
+        assertEquals(250, hedgedReads.delay("group", TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < HedgedReads.MIN_SAMPLES; i++) {
+            hedgedReads.start(newRead(i + 1), "group", "replica", "coap", "http");
+            hedgedReads.replied(i + 1);
+        }
+        assertTrue(hedgedReads.delay("group", TimeUnit.MILLISECONDS) < 250);
+    }
+
+    private static GwRequest newRead(final long sequence) {
+        final GwRequest request = new GwRequest();
+        request.headers().set(GW_TARGET, "primary");
+        request.setSequence(sequence);
+        return request;
+    }
+}
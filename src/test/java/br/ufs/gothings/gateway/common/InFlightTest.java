@@ -0,0 +1,42 @@
+package br.ufs.gothings.gateway.common;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class InFlightTest {
+    @Test
+    public void testCancelQueued() {
+        final InFlight<String> inFlight = new InFlight<>();
+        assertNull(inFlight.cancel(1));
+        assertFalse("cancelled request is not dispatched", inFlight.dispatching(1, "coap"));
+        assertTrue("the mark is used only once", inFlight.dispatching(1, "coap"));
+    }
+
+    @Test
+    public void testCancelDispatched() {
+        final InFlight<String> inFlight = new InFlight<>();
+        assertTrue(inFlight.dispatching(1, "coap"));
+        assertEquals("coap", inFlight.cancel(1));
+        inFlight.dispatched(1);
+
+        // a finished dispatch is only marked
+        assertTrue(inFlight.dispatching(2, "http"));
+        inFlight.dispatched(2);
+        assertNull(inFlight.cancel(2));
+    }
+
+    @Test
+    public void testPurge() throws InterruptedException {
+        final InFlight<String> inFlight = new InFlight<>();
+        inFlight.cancel(1);
+        Thread.sleep(5);
+        inFlight.purge(1, TimeUnit.MILLISECONDS);
+        assertTrue(inFlight.dispatching(1, "coap"));
+    }
+}
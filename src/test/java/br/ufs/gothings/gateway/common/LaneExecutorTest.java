@@ -0,0 +1,62 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.gateway.common.LaneExecutor.Lane;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class LaneExecutorTest {
+    @Test
+    public void testControlOvertakesBulkWithoutStarving() throws InterruptedException {
+        final LaneExecutor executor = new LaneExecutor("test-lanes", 2);
+        final List<String> order = new CopyOnWriteArrayList<>();
+
+        // hold the worker while the lanes are filled
+        final CountDownLatch holding = new CountDownLatch(1);
+        final CountDownLatch hold = new CountDownLatch(1);
+        executor.execute(Lane.BULK, () -> {
+            holding.countDown();
+            try {
+                hold.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        holding.await();
+
+        executor.execute(Lane.BULK, () -> order.add("b1"));
+        executor.execute(Lane.BULK, () -> order.add("b2"));
+        for (int i = 1; i <= 5; i++) {
+            final String name = "c" + i;
+            executor.execute(Lane.CONTROL, () -> order.add(name));
+        }
+        hold.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(asList("c1", "c2", "b1", "c3", "c4", "b2", "c5"), order);
+    }
+
+    @Test
+    public void testWorkerSurvivesErrors() throws InterruptedException {
+        final LaneExecutor executor = new LaneExecutor("test-errors", 2);
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            throw new StackOverflowError();
+        });
+        executor.execute(ran::countDown);
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,73 @@
+package br.ufs.gothings.gateway.common;
+
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_OPERATION;
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_PATH;
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_TARGET;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class RateLimiterTest {
+    @Test
+    public void testUnlimitedTarget() {
+        final RateLimiter limiter = new RateLimiter();
+        limiter.setLimit("limited", 1, 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.acquire(newRequest(i, "other", Operation.UPDATE)));
+        }
+    }
+
+    @Test
+    public void testExcessIsDelayedThenRejected() {
+        final RateLimiter limiter = new RateLimiter();
+        limiter.setLimit("node", 1, 2);
+        limiter.setMaxDelay(1500, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, limiter.acquire(newRequest(1, "node", Operation.UPDATE)));
+        assertEquals(0, limiter.acquire(newRequest(2, "node", Operation.UPDATE)));
+
+        final long delay = limiter.acquire(newRequest(3, "node", Operation.UPDATE));
+        assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(500) && delay <= TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(RateLimiter.REJECTED, limiter.acquire(newRequest(4, "node", Operation.UPDATE)));
+    }
+
+    @Test
+    public void testDelayedReadsAreCoalesced() {
+        final RateLimiter limiter = new RateLimiter();
+        limiter.setLimit("node", 1, 1);
+
+        final GwRequest first = newRequest(1, "node", Operation.READ);
+        final GwRequest delayed = newRequest(2, "node", Operation.READ);
+        final GwRequest follower = newRequest(3, "node", Operation.READ);
+
+        assertEquals(0, limiter.acquire(first));
+        assertTrue(limiter.acquire(delayed) > 0);
+        assertEquals(RateLimiter.COALESCED, limiter.acquire(follower));
+
+        limiter.dispatched(delayed);
+        final List<GwRequest> followers = limiter.completed(2);
+        assertEquals(1, followers.size());
+        assertSame(follower, followers.get(0));
+        assertTrue(limiter.completed(2).isEmpty());
+    }
+
+    private static GwRequest newRequest(final long sequence, final String target, final Operation operation) {
+        final GwRequest request = new GwRequest();
+        final GwHeaders h = request.headers();
+        h.set(GW_TARGET, target);
+        h.set(GW_PATH, "/sensor");
+        h.set(GW_OPERATION, operation);
+        request.setSequence(sequence);
+        return request;
+    }
+}
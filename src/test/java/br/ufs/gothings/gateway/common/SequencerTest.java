@@ -0,0 +1,58 @@
+package br.ufs.gothings.gateway.common;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class SequencerTest {
+    @Test
+    public void testPartitions() {
+        final Sequencer sequencer = new Sequencer();
+        for (int i = 0; i < 5000; i++) {
+            assertFalse(Sequencer.isObserve(sequencer.nextNormal()));
+            assertTrue(Sequencer.isObserve(sequencer.nextObserve()));
+        }
+    }
+
+    @Test
+    public void testWraparound() {
+        final Sequencer sequencer = new Sequencer(Long.MAX_VALUE - 2, (1L << 32) - 2);
+
+        assertEquals(Long.MAX_VALUE - 2, sequencer.nextNormal());
+        assertEquals(Long.MAX_VALUE - 1, sequencer.nextNormal());
+        assertEquals(Long.MAX_VALUE, sequencer.nextNormal());
+        assertEquals(1L << 32, sequencer.nextNormal());
+
+        assertEquals((1L << 32) - 2, sequencer.nextObserve());
+        assertEquals((1L << 32) - 1, sequencer.nextObserve());
+        assertEquals(1, sequencer.nextObserve());
+    }
+
+    @Test
+    public void testUniqueAcrossThreads() throws InterruptedException {
+        final Sequencer sequencer = new Sequencer();
+        final Set<Long> seen = ConcurrentHashMap.newKeySet();
+
+        final int nThreads = 8;
+        final int perThread = Sequencer.NORMAL_BLOCK_SIZE * 3 + 7;
+        final CountDownLatch done = new CountDownLatch(nThreads);
+        for (int t = 0; t < nThreads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    seen.add(sequencer.nextNormal());
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        assertEquals(nThreads * perThread, seen.size());
+    }
+}
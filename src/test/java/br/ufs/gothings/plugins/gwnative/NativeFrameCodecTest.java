@@ -0,0 +1,91 @@
+package br.ufs.gothings.plugins.gwnative;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.GwHeaders;
+import br.ufs.gothings.core.message.headers.Operation;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class NativeFrameCodecTest {
+    @Test
+    public void testRequestRoundTrip() {
+        final GwRequest request = new GwRequest();
+        final GwHeaders h = request.headers();
+        h.set(GW_OPERATION, Operation.UPDATE);
+        h.set(GW_PATH, "/coap/sensor/temperature");
+        h.add(GW_EXPECTED_TYPES, "application/json");
+        h.add(GW_EXPECTED_TYPES, "text/plain");
+        h.set(GW_QOS, 2);
+        h.set(GW_CACHE_EXPIRATION, new Date(1234567890000L));
+        h.set(GW_CACHE_MODIFIED, true);
+        request.payload().set("21.5", StandardCharsets.UTF_8);
+
+        final ByteBuf buf = Unpooled.buffer();
+        NativeFrameCodec.write(NativeFrame.request(42, request), buf);
+        final NativeFrame frame = NativeFrameCodec.read(buf);
+
+        assertEquals(NativeFrame.Kind.REQUEST, frame.getKind());
+        assertEquals(42, frame.getId());
+        final GwHeaders rh = frame.getHeaders();
+        assertEquals(Operation.UPDATE, rh.get(GW_OPERATION));
+        assertEquals("/coap/sensor/temperature", rh.get(GW_PATH));
+        assertArrayEquals(new Object[]{"application/json", "text/plain"}, rh.getAll(GW_EXPECTED_TYPES).toArray());
+        assertEquals(2, (int) rh.get(GW_QOS));
+        assertEquals(new Date(1234567890000L), rh.get(GW_CACHE_EXPIRATION));
+        assertTrue(rh.get(GW_CACHE_MODIFIED));
+        assertNull(rh.get(GW_TARGET));
+        assertNull(rh.get(GW_DEADLINE));
+        assertEquals("21.5", frame.getPayload().asString(StandardCharsets.UTF_8));
+        assertEquals(0, buf.readableBytes());
+    }
+
+    @Test
+    public void testPipelinedFrames() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel ch) {
+                NativeFrameCodec.initPipeline(ch.pipeline(), 1024);
+            }
+        });
+
+        final GwRequest request = new GwRequest();
+        request.headers().set(GW_OPERATION, Operation.READ);
+        request.headers().set(GW_PATH, "/a");
+        channel.writeOutbound(NativeFrame.request(1, request), NativeFrame.error(2, ErrorCode.PATH_NOT_FOUND),
+                NativeFrame.cancel(3));
+
+        // the frames written together arrive in one read
+        final ByteBuf wire = Unpooled.buffer();
+        ByteBuf out;
+        while ((out = (ByteBuf) channel.readOutbound()) != null) {
+            wire.writeBytes(out);
+            out.release();
+        }
+        channel.writeInbound(wire);
+
+        final NativeFrame first = (NativeFrame) channel.readInbound();
+        assertEquals(1, first.getId());
+        assertEquals("/a", first.getHeaders().get(GW_PATH));
+        final NativeFrame second = (NativeFrame) channel.readInbound();
+        assertEquals(NativeFrame.Kind.ERROR, second.getKind());
+        assertEquals(ErrorCode.PATH_NOT_FOUND, second.getCode());
+        final NativeFrame third = (NativeFrame) channel.readInbound();
+        assertEquals(NativeFrame.Kind.CANCEL, third.getKind());
+        assertEquals(3, third.getId());
+        assertNull(channel.readInbound());
+    }
+}
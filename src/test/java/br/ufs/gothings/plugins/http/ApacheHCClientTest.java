@@ -0,0 +1,108 @@
+package br.ufs.gothings.plugins.http;
+
+import br.ufs.gothings.core.Settings;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class ApacheHCClientTest {
+    @Test
+    public void testOversizedContentLength() throws Exception {
+        // the body is never sent, so the client only returns if it doesn't read the body
+        assertOversized("HTTP/1.1 200 OK\r\nContent-Length: 1073741824\r\n\r\n");
+    }
+
+    @Test
+    public void testOversizedChunkedBody() throws Exception {
+        final char[] chunk = new char[2048];
+        Arrays.fill(chunk, 'x');
+        // the body never ends, so the client only returns if it doesn't read the body until its end
+        assertOversized("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n800\r\n" + new String(chunk) + "\r\n");
+    }
+
+    private static void assertOversized(final String response) throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(0)) {
+            executor.execute(() -> {
+                try (Socket socket = server.accept()) {
+                    readHead(socket.getInputStream());
+                    final OutputStream out = socket.getOutputStream();
+                    out.write(response.getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    // the connection is kept open, as if the rest of the body was slow to come
+                    socket.getInputStream().read();
+                } catch (IOException ignored) {
+                }
+            });
+
+            final Settings settings = new Settings(new AtomicBoolean(false));
+            settings.registerKey(ApacheHCClient.MAX_PAYLOAD, Integer.class, size -> size > 0);
+            settings.put(ApacheHCClient.MAX_PAYLOAD, 1024);
+            final QueueReplyLink replyLink = new QueueReplyLink();
+            final ApacheHCClient client = new ApacheHCClient();
+            client.start(replyLink, settings);
+            try {
+                final GwRequest request = new GwRequest();
+                request.headers().set(GW_OPERATION, Operation.READ);
+                request.headers().set(GW_TARGET, "127.0.0.1:" + server.getLocalPort());
+                request.headers().set(GW_PATH, "/big");
+                executor.execute(() -> client.sendRequest(request));
+
+                assertEquals("PAYLOAD_TOO_LARGE", replyLink.outcomes.poll(5, TimeUnit.SECONDS));
+            } finally {
+                client.stop();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void readHead(final InputStream in) throws IOException {
+        int matched = 0;
+        int c;
+        while (matched < 4 && (c = in.read()) >= 0) {
+            matched = (c == "\r\n\r\n".charAt(matched)) ? matched + 1 : (c == '\r' ? 1 : 0);
+        }
+    }
+
+    private static final class QueueReplyLink implements ReplyLink {
+        private final BlockingQueue<String> outcomes = new LinkedBlockingQueue<>();
+
+        @Override
+        public void ack(final long sequence) {
+        }
+
+        @Override
+        public void send(final GwReply reply) {
+            outcomes.add("REPLY");
+        }
+
+        @Override
+        public void sendError(final GwError error) {
+            outcomes.add(error.getCode().name());
+        }
+    }
+}
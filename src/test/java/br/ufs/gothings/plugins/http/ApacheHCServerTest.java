@@ -1,7 +1,10 @@
 package br.ufs.gothings.plugins.http;
 
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.message.GwError;
 import br.ufs.gothings.core.message.headers.GwHeaders;
 import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
 import br.ufs.gothings.core.message.Payload;
 import br.ufs.gothings.core.message.headers.Operation;
 import br.ufs.gothings.core.plugin.RequestLink;
@@ -13,13 +16,20 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.message.BasicHttpRequest;
 import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_CACHE_SIGNATURE;
 import static br.ufs.gothings.core.message.headers.HeaderNames.GW_CONTENT_TYPE;
+import static br.ufs.gothings.core.message.headers.HeaderNames.GW_EXPECTED_TYPES;
 import static br.ufs.gothings.core.message.headers.HeaderNames.GW_OPERATION;
 import static br.ufs.gothings.core.message.headers.HeaderNames.GW_PATH;
 import static org.junit.Assert.*;
@@ -105,6 +115,199 @@ public class ApacheHCServerTest {
         assertEquals("application/json", response.getFirstHeader("Content-Type").getValue());
     }
 
+    @Test
+    public void testConditionalGet() throws HttpException {
+        final RequestLink requestLink = msg -> {
+            final GwReply reply = new GwReply(msg.headers(), msg.payload(), 1L);
+            reply.payload().set("21.5", Charset.defaultCharset());
+            return Utils.constantReply(reply);
+        };
+
+        final ApacheHCServer.ServerRequestHandler serverHandler = new ApacheHCServer.ServerRequestHandler(requestLink);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(newRequest("GET", "/temperature"), response, null);
+        final String etag = response.getFirstHeader("ETag").getValue();
+        assertEquals("no-cache", response.getFirstHeader("Cache-Control").getValue());
+
+        final HttpRequest conditional = newRequest("GET", "/temperature");
+        conditional.addHeader("If-None-Match", "\"other\", W/" + etag);
+        response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(conditional, response, null);
+        assertEquals(304, response.getStatusLine().getStatusCode());
+        assertNull(response.getEntity());
+    }
+
+    @Test
+    public void testCompressedVariant() throws HttpException, IOException {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            json.append("{\"temperature\":21.5},");
+        }
+        final String body = json.append("{}]").toString();
+        final RequestLink requestLink = msg -> {
+            final GwReply reply = new GwReply(msg.headers(), msg.payload(), 1L);
+            reply.payload().set(body, Charset.defaultCharset());
+            return Utils.constantReply(reply);
+        };
+
+        final ApacheHCServer.ServerRequestHandler serverHandler = new ApacheHCServer.ServerRequestHandler(requestLink);
+        final HttpRequest request = newRequest("GET", "/temperature");
+        request.addHeader("Accept-Encoding", "deflate;q=0.5, gzip");
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(request, response, null);
+
+        assertEquals("gzip", response.getFirstHeader("Content-Encoding").getValue());
+        assertTrue(response.getFirstHeader("ETag").getValue().endsWith("-gzip\""));
+        final Payload payload = new Payload();
+        payload.set(new GZIPInputStream(response.getEntity().getContent()), false);
+        assertEquals(body, payload.asString(Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testCompressedVariantsOfSameSignature() throws HttpException, IOException {
+        final RequestLink requestLink = msg -> {
+            // both resources have the upstream ETag "1", but different bodies
+            final StringBuilder body = new StringBuilder(msg.headers().get(GW_PATH));
+            while (body.length() < 1024) {
+                body.append(' ').append(msg.headers().get(GW_PATH));
+            }
+            final GwReply reply = new GwReply(msg.headers(), msg.payload(), 1L);
+            reply.payload().set(body.toString(), Charset.defaultCharset());
+            reply.headers().set(GW_CACHE_SIGNATURE, "\"1\"");
+            return Utils.constantReply(reply);
+        };
+
+        final ApacheHCServer.ServerRequestHandler serverHandler = new ApacheHCServer.ServerRequestHandler(requestLink);
+        for (final String path : new String[]{"/sensor-a", "/sensor-b"}) {
+            final HttpRequest request = newRequest("GET", path);
+            request.addHeader("Accept-Encoding", "gzip");
+            final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+            serverHandler.handle(request, response, null);
+
+            assertEquals("gzip", response.getFirstHeader("Content-Encoding").getValue());
+            final Payload payload = new Payload();
+            payload.set(new GZIPInputStream(response.getEntity().getContent()), false);
+            assertTrue(payload.asString(Charset.defaultCharset()).startsWith(path + " " + path));
+        }
+    }
+
+    @Test
+    public void testUnobservePathIsTheRequestPath() throws HttpException {
+        final List<GwRequest> sent = new ArrayList<>();
+        final RequestLink requestLink = msg -> {
+            sent.add(msg);
+            if (msg.headers().get(GW_OPERATION) == Operation.UNOBSERVE) {
+                return Utils.constantReply(new GwReply(msg));
+            }
+            // the gateway assigns the sequence and rewrites the path to the target one
+            msg.setSequence(42);
+            msg.headers().set(GW_PATH, "/temperature");
+            final GwReply current = new GwReply(msg);
+            final GwReply change = new GwReply(msg);
+            change.payload().set("22.0", Charset.defaultCharset());
+            return Utils.observeReplies(current, change);
+        };
+
+        final ApacheHCServer.ServerRequestHandler serverHandler = new ApacheHCServer.ServerRequestHandler(requestLink);
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(newRequest("GET", "/http/device/temperature?longpoll"), response, null);
+
+        assertEquals(2, sent.size());
+        final GwRequest unobserve = sent.get(1);
+        assertEquals(Operation.UNOBSERVE, unobserve.headers().get(GW_OPERATION));
+        assertEquals("/http/device/temperature", unobserve.headers().get(GW_PATH));
+        assertEquals(42, unobserve.getSequence());
+    }
+
+    @Test
+    public void testLongPoll() throws HttpException, IOException {
+        final List<GwRequest> sent = new ArrayList<>();
+        final RequestLink requestLink = msg -> {
+            sent.add(msg);
+            final GwReply current = new GwReply(msg);
+            current.payload().set("21.5", Charset.defaultCharset());
+            final GwReply change = new GwReply(msg);
+            change.payload().set("22.0", Charset.defaultCharset());
+            return Utils.observeReplies(current, change);
+        };
+
+        final ApacheHCServer.ServerRequestHandler serverHandler = new ApacheHCServer.ServerRequestHandler(requestLink);
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(newRequest("GET", "/temperature?unit=c&longpoll=1"), response, null);
+
+        final GwRequest observe = sent.get(0);
+        assertEquals(Operation.OBSERVE, observe.headers().get(GW_OPERATION));
+        assertEquals("/temperature?unit=c", observe.headers().get(GW_PATH));
+        // the current state is skipped, the change is the reply
+        assertEquals(200, response.getStatusLine().getStatusCode());
+        assertEquals("22.0", EntityUtils.toString(response.getEntity()));
+        assertEquals(Operation.UNOBSERVE, sent.get(1).headers().get(GW_OPERATION));
+    }
+
+    @Test
+    public void testLongPollTimeout() throws HttpException {
+        final List<GwRequest> sent = new ArrayList<>();
+        final RequestLink requestLink = msg -> {
+            sent.add(msg);
+            return Utils.observeReplies(new GwReply(msg));
+        };
+
+        final ApacheHCServer.ServerRequestHandler serverHandler =
+                new ApacheHCServer.ServerRequestHandler(requestLink, 1, 100);
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(newRequest("GET", "/temperature?longpoll"), response, null);
+        assertEquals(204, response.getStatusLine().getStatusCode());
+        assertEquals("/temperature", sent.get(0).headers().get(GW_PATH));
+        assertEquals(Operation.UNOBSERVE, sent.get(1).headers().get(GW_OPERATION));
+
+        // the slot of the finished long-poll is free again
+        response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(newRequest("GET", "/temperature?longpoll"), response, null);
+        assertEquals(204, response.getStatusLine().getStatusCode());
+    }
+
+    @Test
+    public void testEventStream() throws HttpException, IOException {
+        final List<GwRequest> sent = new ArrayList<>();
+        final RequestLink requestLink = msg -> {
+            sent.add(msg);
+            final GwReply current = new GwReply(msg);
+            current.payload().set("21.5", Charset.defaultCharset());
+            return Utils.observeReplies(current);
+        };
+
+        final ApacheHCServer.ServerRequestHandler serverHandler =
+                new ApacheHCServer.ServerRequestHandler(requestLink, 1, 100);
+        final HttpRequest request = newRequest("GET", "/temperature");
+        request.addHeader("Accept", "text/event-stream");
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(request, response, null);
+
+        final GwRequest observe = sent.get(0);
+        assertEquals(Operation.OBSERVE, observe.headers().get(GW_OPERATION));
+        assertFalse(observe.headers().getAll(GW_EXPECTED_TYPES).contains("text/event-stream"));
+        final EventStreamEntity entity = (EventStreamEntity) response.getEntity();
+        assertEquals("text/event-stream", entity.getContentType().getValue());
+
+        // no stream slot is left while this one is open
+        final HttpResponse refused = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(request, refused, null);
+        assertEquals(503, refused.getStatusLine().getStatusCode());
+        assertEquals(1, sent.size());
+
+        // an error ends the stream, which unobserves the resource
+        entity.onError(new GwError(observe, ErrorCode.OTHER));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        assertEquals("data: 21.5\n\nevent: error\ndata: OTHER\n\n", out.toString("UTF-8"));
+        assertEquals(Operation.UNOBSERVE, sent.get(1).headers().get(GW_OPERATION));
+        assertEquals("/temperature", sent.get(1).headers().get(GW_PATH));
+
+        response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, null);
+        serverHandler.handle(request, response, null);
+        assertTrue(response.getEntity() instanceof EventStreamEntity);
+    }
+
     private static HttpRequest newRequest(final String method, final String uri) {
         return new BasicHttpRequest(method, uri, HttpVersion.HTTP_1_1);
     }
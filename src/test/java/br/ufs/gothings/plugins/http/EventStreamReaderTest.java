@@ -0,0 +1,47 @@
+package br.ufs.gothings.plugins.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class EventStreamReaderTest {
+    @Test
+    public void testReadEvents() throws IOException {
+        final String stream = ": keep-alive\n\n" +
+                "event: temperature\nid: 1\ndata: 21.5\n\n" +
+                "data:first line\ndata: second line\n\n" +
+                "data: incomplete";
+        final EventStreamReader events = new EventStreamReader(
+                new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)), 1024);
+
+        assertEquals("21.5", events.next());
+        assertEquals("1", events.getLastId());
+        assertEquals("1", events.getEventId());
+        assertEquals("first line\nsecond line", events.next());
+        assertEquals("the id is kept between events", "1", events.getLastId());
+        assertNull("the event didn't set an id", events.getEventId());
+        assertNull(events.next());
+    }
+
+    @Test
+    public void testMaxLength() throws IOException {
+        final String stream = "data: 21.5\r\n\r\n" +
+                "data: 0123456789\ndata: 0123456789\n\n";
+        final EventStreamReader events = new EventStreamReader(
+                new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)), 16);
+
+        assertEquals("21.5", events.next());
+        try {
+            events.next();
+            fail("the data of the event is longer than the max length");
+        } catch (EventStreamReader.EventTooLargeException ignored) {
+        }
+    }
+}
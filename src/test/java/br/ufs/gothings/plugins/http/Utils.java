@@ -16,11 +16,20 @@ public class Utils {
         return new ConstantReply(reply);
     }
 
+    /**
+     * @return a future of an observe, whose listener receives the first reply and then the notifications.
+     */
+    public static FutureReply observeReplies(final GwReply reply, final GwReply... notifications) {
+        return new ConstantReply(reply, notifications);
+    }
+
     private static class ConstantReply implements FutureReply {
         private final GwReply value;
+        private final GwReply[] notifications;
 
-        public ConstantReply(final GwReply value) {
+        public ConstantReply(final GwReply value, final GwReply... notifications) {
             this.value = value;
+            this.notifications = notifications;
         }
 
         @Override
@@ -50,7 +59,10 @@ public class Utils {
 
         @Override
         public void setListener(final ReplyListener replyListener) {
-            throw new UnsupportedOperationException();
+            replyListener.onReply(value);
+            for (final GwReply notification : notifications) {
+                replyListener.onReply(notification);
+            }
         }
     }
 }
@@ -0,0 +1,148 @@
+package br.ufs.gothings.plugins.shm;
+
+import br.ufs.gothings.core.common.ErrorCode;
+import br.ufs.gothings.core.common.GatewayException;
+import br.ufs.gothings.core.message.GwError;
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.ReplyLink;
+import br.ufs.gothings.core.plugin.RequestLink;
+import br.ufs.gothings.plugins.http.Utils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class ShmEndpointTest {
+    @Test
+    public void testRequestsBothWays() throws Exception {
+        final Path dir = Files.createTempDirectory("shm-endpoint");
+
+        // the gateway answers with the path and the client id
+        final RequestLink requestLink = request -> {
+            final GwReply reply = new GwReply(request.headers(), null, 0);
+            reply.payload().set(request.headers().get(GW_PATH) + " " + request.headers().get(GW_CLIENT_ID),
+                    StandardCharsets.UTF_8);
+            return Utils.constantReply(reply);
+        };
+        final CompletableFuture<GwReply> targetReply = new CompletableFuture<>();
+        final ReplyLink replyLink = new ReplyLink() {
+            @Override
+            public void ack(final long sequence) {
+            }
+
+            @Override
+            public void send(final GwReply reply) {
+                targetReply.complete(reply);
+            }
+
+            @Override
+            public void sendError(final GwError error) {
+                targetReply.completeExceptionally(new AssertionError(error.getCode()));
+            }
+        };
+
+        final ShmHub hub = new ShmHub();
+        hub.start(dir, requestLink, replyLink);
+        try (ShmEndpoint endpoint = ShmEndpoint.connect(dir, "analytics", 64 * 1024)) {
+            endpoint.serve(request -> {
+                final GwReply reply = new GwReply(request);
+                reply.payload().set("value of " + request.headers().get(GW_PATH), StandardCharsets.UTF_8);
+                return reply;
+            });
+
+            // from the process to the gateway
+            final GwRequest request = new GwRequest();
+            request.headers().set(GW_OPERATION, Operation.READ);
+            request.headers().set(GW_PATH, "/coap/sensor/temperature");
+            final GwReply reply = endpoint.send(request).get(5, TimeUnit.SECONDS);
+            assertEquals("/coap/sensor/temperature shm:analytics", reply.payload().asString(StandardCharsets.UTF_8));
+
+            // from the gateway to the process, once its session is open
+            final GwRequest toTarget = new GwRequest();
+            toTarget.setSequence(7);
+            toTarget.headers().set(GW_OPERATION, Operation.READ);
+            toTarget.headers().set(GW_TARGET, "analytics");
+            toTarget.headers().set(GW_PATH, "/load");
+            hub.sendRequest(toTarget);
+            final GwReply fromTarget = targetReply.get(5, TimeUnit.SECONDS);
+            assertEquals(7, fromTarget.getSequence());
+            assertEquals("value of /load", fromTarget.payload().asString(StandardCharsets.UTF_8));
+        } finally {
+            hub.stop();
+        }
+
+        // the endpoint deletes its rings on close
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testGatewayGone() throws Exception {
+        final Path dir = Files.createTempDirectory("shm-endpoint");
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            // nobody reads the rings, so the sends fail once the ring is full
+            try (ShmEndpoint endpoint = ShmEndpoint.connect(dir, "orphan", 1024, 100)) {
+                CompletableFuture<GwReply> future;
+                int sends = 0;
+                do {
+                    future = endpoint.send(newRequest());
+                    assertTrue("the ring was never full", ++sends < 100);
+                } while (!future.isDone());
+                try {
+                    future.get();
+                    fail("the gateway didn't take the request");
+                } catch (ExecutionException e) {
+                    final GatewayException cause = (GatewayException) e.getCause();
+                    assertEquals(ErrorCode.UNAVAILABLE_PLUGIN, cause.getErrorMessage().getCode());
+                }
+            }
+
+            // a send waiting for room doesn't hold the close
+            final ShmEndpoint endpoint = ShmEndpoint.connect(dir, "waiting", 1024);
+            final Future<?> sends = executor.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    endpoint.send(newRequest());
+                }
+            });
+            Thread.sleep(200);
+            assertFalse(sends.isDone());
+            executor.submit(() -> {
+                endpoint.close();
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+            sends.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(dir);
+    }
+
+    private static GwRequest newRequest() {
+        final GwRequest request = new GwRequest();
+        request.headers().set(GW_OPERATION, Operation.READ);
+        request.headers().set(GW_PATH, "/coap/sensor/temperature");
+        return request;
+    }
+}
@@ -0,0 +1,103 @@
+package br.ufs.gothings.plugins.shm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class ShmRingTest {
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("shm-ring");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (final Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testFullAndWrapAround() throws IOException {
+        final Path file = dir.resolve("ring");
+        try (ShmRing producer = ShmRing.create(file, 1024);
+             ShmRing consumer = ShmRing.open(file))
+        {
+            // 100 bytes records take 104 bytes, so 9 fit
+            int written = 0;
+            while (producer.offer(record(written, 100))) {
+                written++;
+            }
+            assertEquals(9, written);
+
+            // after reading some, the next records wrap around the end of the ring
+            final List<Integer> read = new ArrayList<>();
+            assertEquals(5, consumer.poll(r -> read.add(r.getInt(0)), 5));
+            for (int i = 0; i < 4; i++) {
+                assertTrue(producer.offer(record(written++, 100)));
+            }
+            while (consumer.poll(r -> read.add(r.getInt(0)), 3) > 0) {
+                // reads all
+            }
+            assertEquals(13, read.size());
+            for (int i = 0; i < read.size(); i++) {
+                assertEquals(i, (int) read.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentProducerAndConsumer() throws Exception {
+        final Path file = dir.resolve("ring");
+        final int count = 100_000;
+        try (ShmRing producer = ShmRing.create(file, 4096);
+             ShmRing consumer = ShmRing.open(file))
+        {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    final ByteBuf record = record(i, 1 + i % 50);
+                    while (!producer.offer(record)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+
+            final int[] next = {0};
+            while (next[0] < count) {
+                final int polled = consumer.poll(r -> {
+                    assertEquals(next[0], r.getInt(0));
+                    assertEquals(Math.max(4, 1 + next[0] % 50), r.readableBytes());
+                    next[0]++;
+                }, 64);
+                if (polled == 0) {
+                    Thread.yield();
+                }
+            }
+            thread.join();
+            assertEquals(0, consumer.poll(r -> fail(), 64));
+        }
+    }
+
+    private static ByteBuf record(final int n, final int length) {
+        final ByteBuf buf = Unpooled.buffer(length).writeInt(n);
+        buf.writerIndex(Math.max(4, length));
+        return buf;
+    }
+}
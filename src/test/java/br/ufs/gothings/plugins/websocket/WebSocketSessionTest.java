@@ -0,0 +1,166 @@
+package br.ufs.gothings.plugins.websocket;
+
+import br.ufs.gothings.core.message.GwReply;
+import br.ufs.gothings.core.message.GwRequest;
+import br.ufs.gothings.core.message.headers.Operation;
+import br.ufs.gothings.core.plugin.FutureReply;
+import br.ufs.gothings.core.plugin.ReplyListener;
+import br.ufs.gothings.core.plugin.RequestLink;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static br.ufs.gothings.core.message.headers.HeaderNames.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Wagner Macedo
+ */
+public class WebSocketSessionTest {
+    @Test
+    public void testSubscriptions() {
+        final Gateway gateway = new Gateway();
+        final EmbeddedChannel channel = new EmbeddedChannel(new WebSocketSession(gateway));
+
+        channel.writeInbound(new TextWebSocketFrame("SUBSCRIBE /coap/sensor/temperature"));
+        final GwRequest observe = gateway.requests.get(0);
+        assertEquals(Operation.OBSERVE, observe.headers().get(GW_OPERATION));
+        assertEquals("/coap/sensor/temperature", observe.headers().get(GW_PATH));
+
+        gateway.notify("/coap/sensor/temperature", "21.5");
+        channel.runPendingTasks();
+        assertEquals("NOTIFY /coap/sensor/temperature\n21.5", readText(channel));
+
+        channel.writeInbound(new TextWebSocketFrame("UNSUBSCRIBE /coap/sensor/temperature"));
+        final GwRequest unobserve = gateway.requests.get(1);
+        assertEquals(Operation.UNOBSERVE, unobserve.headers().get(GW_OPERATION));
+        assertEquals("/coap/sensor/temperature", unobserve.headers().get(GW_PATH));
+        assertEquals(observe.getSequence(), unobserve.getSequence());
+
+        // a late notification is not written
+        gateway.notify("/coap/sensor/temperature", "22.0");
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+
+        // the subscriptions left end with the connection
+        channel.writeInbound(new TextWebSocketFrame("SUBSCRIBE /coap/sensor/humidity"));
+        final GwRequest observe2 = gateway.requests.get(2);
+        channel.close();
+        channel.runPendingTasks();
+        final GwRequest unobserve2 = gateway.requests.get(3);
+        assertEquals(Operation.UNOBSERVE, unobserve2.headers().get(GW_OPERATION));
+        assertEquals("/coap/sensor/humidity", unobserve2.headers().get(GW_PATH));
+        assertEquals(observe2.getSequence(), unobserve2.getSequence());
+        assertEquals(4, gateway.requests.size());
+    }
+
+    @Test
+    public void testSlowConsumer() {
+        final Gateway gateway = new Gateway();
+        final EmbeddedChannel channel = new EmbeddedChannel(new WebSocketSession(gateway));
+        channel.writeInbound(new TextWebSocketFrame("SUBSCRIBE /a"));
+        channel.writeInbound(new TextWebSocketFrame("SUBSCRIBE /b"));
+
+        // a frame not flushed over the high water mark makes the channel not writable
+        channel.config().setWriteBufferLowWaterMark(1);
+        channel.config().setWriteBufferHighWaterMark(2);
+        channel.write(new TextWebSocketFrame("filler"));
+        assertFalse(channel.isWritable());
+
+        gateway.notify("/a", "1");
+        gateway.notify("/b", "1");
+        gateway.notify("/a", "2");
+        gateway.notify("/a", "3");
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+
+        // once writable, only the latest frame of each path is written
+        channel.flush();
+        channel.runPendingTasks();
+        channel.flush();
+        assertTrue(channel.isWritable());
+        assertEquals("filler", readText(channel));
+        assertEquals("NOTIFY /a\n3", readText(channel));
+        assertEquals("NOTIFY /b\n1", readText(channel));
+        assertNull(channel.readOutbound());
+    }
+
+    private static String readText(final EmbeddedChannel channel) {
+        final TextWebSocketFrame frame = (TextWebSocketFrame) channel.readOutbound();
+        assertNotNull(frame);
+        try {
+            return frame.text();
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Keeps the requests sent by the session, and the listeners of its observes.
+     */
+    private static final class Gateway implements RequestLink {
+        private final List<GwRequest> requests = new ArrayList<>();
+        private final Map<String, ListenedReply> observes = new HashMap<>();
+        private long sequence = 0;
+
+        @Override
+        public FutureReply send(final GwRequest request) {
+            requests.add(request);
+            final ListenedReply future = new ListenedReply();
+            if (request.headers().get(GW_OPERATION) == Operation.OBSERVE) {
+                request.setSequence(++sequence);
+                observes.put(request.headers().get(GW_PATH), future);
+            }
+            return future;
+        }
+
+        void notify(final String path, final String value) {
+            final GwReply reply = new GwReply(requests.stream()
+                    .filter(r -> path.equals(r.headers().get(GW_PATH)))
+                    .findFirst().get());
+            reply.payload().set(value, StandardCharsets.UTF_8);
+            observes.get(path).listener.onReply(reply);
+        }
+    }
+
+    private static final class ListenedReply implements FutureReply {
+        private ReplyListener listener;
+
+        @Override
+        public void setListener(final ReplyListener replyListener) {
+            this.listener = replyListener;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public GwReply get() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public GwReply get(final long timeout, final TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}